@@ -0,0 +1,25 @@
+package nl.wetgos.starthosting.metrics.jfr.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.wetgos.starthosting.DomainUpdate")
+@Label("Domain Update")
+@Category({"StartHosting", "Update"})
+class JfrDomainUpdateEvent extends Event {
+
+    @Label("Cycle ID")
+    long cycleId;
+
+    @Label("Domain")
+    String domain;
+
+    @Label("Changed Records")
+    int changedRecords;
+
+    @Label("Success")
+    boolean success;
+
+}
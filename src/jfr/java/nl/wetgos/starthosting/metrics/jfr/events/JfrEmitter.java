@@ -0,0 +1,104 @@
+package nl.wetgos.starthosting.metrics.jfr.events;
+
+import jdk.jfr.Event;
+import nl.wetgos.starthosting.metrics.jfr.DomainUpdateEvent;
+import nl.wetgos.starthosting.metrics.jfr.FlightEvent;
+import nl.wetgos.starthosting.metrics.jfr.PanelRequestEvent;
+import nl.wetgos.starthosting.metrics.jfr.PublicIPLookupEvent;
+import nl.wetgos.starthosting.metrics.jfr.UpdateCycleEvent;
+
+/**
+ * Records the events of the tool as Flight Recorder events. Loaded by {@link FlightEvent} when {@code jdk.jfr} is
+ * available.
+ */
+public class JfrEmitter implements FlightEvent.Emitter {
+
+    @Override
+    public Object begin(FlightEvent event) {
+        Event recording = create(event);
+        recording.begin();
+        return recording;
+    }
+
+    @Override
+    public void end(Object recording) {
+        if (recording != null) {
+            ((Event) recording).end();
+        }
+    }
+
+    @Override
+    public boolean shouldCommit(Object recording) {
+        return recording != null && ((Event) recording).shouldCommit();
+    }
+
+    @Override
+    public void commit(FlightEvent event, Object recording) {
+        // events that were not started take place at the time of the commit
+        Event jfrEvent = recording != null ? (Event) recording : create(event);
+
+        if (!jfrEvent.shouldCommit()) {
+            return;
+        }
+
+        if (event instanceof PanelRequestEvent) {
+            copy((PanelRequestEvent) event, (JfrPanelRequestEvent) jfrEvent);
+        } else if (event instanceof PublicIPLookupEvent) {
+            copy((PublicIPLookupEvent) event, (JfrPublicIPLookupEvent) jfrEvent);
+        } else if (event instanceof DomainUpdateEvent) {
+            copy((DomainUpdateEvent) event, (JfrDomainUpdateEvent) jfrEvent);
+        } else if (event instanceof UpdateCycleEvent) {
+            copy((UpdateCycleEvent) event, (JfrUpdateCycleEvent) jfrEvent);
+        }
+
+        jfrEvent.commit();
+    }
+
+    private static Event create(FlightEvent event) {
+        if (event instanceof PanelRequestEvent) {
+            return new JfrPanelRequestEvent();
+        } else if (event instanceof PublicIPLookupEvent) {
+            return new JfrPublicIPLookupEvent();
+        } else if (event instanceof DomainUpdateEvent) {
+            return new JfrDomainUpdateEvent();
+        } else if (event instanceof UpdateCycleEvent) {
+            return new JfrUpdateCycleEvent();
+        }
+
+        throw new IllegalArgumentException("Unknown event: " + event.getClass().getName());
+    }
+
+    private static void copy(PanelRequestEvent event, JfrPanelRequestEvent jfrEvent) {
+        jfrEvent.cycleId = event.getCycleId();
+        jfrEvent.operation = event.getOperation();
+        jfrEvent.domain = event.getDomain();
+        jfrEvent.recordId = event.getRecordId();
+        jfrEvent.bytesRead = event.getBytesRead();
+        jfrEvent.networkTime = event.getNetworkTime();
+        jfrEvent.parseTime = event.getParseTime();
+        jfrEvent.success = event.isSuccess();
+    }
+
+    private static void copy(PublicIPLookupEvent event, JfrPublicIPLookupEvent jfrEvent) {
+        jfrEvent.cycleId = event.getCycleId();
+        jfrEvent.publicIPAddress = event.getPublicIPAddress();
+        jfrEvent.changed = event.isChanged();
+        jfrEvent.pushed = event.isPushed();
+        jfrEvent.success = event.isSuccess();
+    }
+
+    private static void copy(DomainUpdateEvent event, JfrDomainUpdateEvent jfrEvent) {
+        jfrEvent.cycleId = event.getCycleId();
+        jfrEvent.domain = event.getDomain();
+        jfrEvent.changedRecords = event.getChangedRecords();
+        jfrEvent.success = event.isSuccess();
+    }
+
+    private static void copy(UpdateCycleEvent event, JfrUpdateCycleEvent jfrEvent) {
+        jfrEvent.cycleId = event.getCycleId();
+        jfrEvent.publicIPAddress = event.getPublicIPAddress();
+        jfrEvent.domains = event.getDomains();
+        jfrEvent.failedDomains = event.getFailedDomains();
+        jfrEvent.skippedDomains = event.getSkippedDomains();
+    }
+}
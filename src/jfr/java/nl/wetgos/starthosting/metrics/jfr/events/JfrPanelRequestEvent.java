@@ -0,0 +1,45 @@
+package nl.wetgos.starthosting.metrics.jfr.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("nl.wetgos.starthosting.PanelRequest")
+@Label("Panel Request")
+@Category({"StartHosting", "Panel"})
+@Description("A request to the panel, split in time spent on the network and time spent parsing the page")
+class JfrPanelRequestEvent extends Event {
+
+    @Label("Cycle ID")
+    long cycleId;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Domain")
+    String domain;
+
+    @Label("Record ID")
+    String recordId;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Network Time")
+    @Description("Time spent sending the request and waiting for and reading the response")
+    @Timespan
+    long networkTime;
+
+    @Label("Parse Time")
+    @Timespan
+    long parseTime;
+
+    @Label("Success")
+    boolean success;
+
+}
@@ -0,0 +1,30 @@
+package nl.wetgos.starthosting.metrics.jfr.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.wetgos.starthosting.PublicIPLookup")
+@Label("Public IP Lookup")
+@Category({"StartHosting", "Public IP"})
+@Description("A check of the public IP address, or an address pushed by a router")
+class JfrPublicIPLookupEvent extends Event {
+
+    @Label("Cycle ID")
+    long cycleId;
+
+    @Label("Public IP Address")
+    String publicIPAddress;
+
+    @Label("Changed")
+    boolean changed;
+
+    @Label("Pushed")
+    boolean pushed;
+
+    @Label("Success")
+    boolean success;
+
+}
@@ -0,0 +1,30 @@
+package nl.wetgos.starthosting.metrics.jfr.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("nl.wetgos.starthosting.UpdateCycle")
+@Label("Update Cycle")
+@Category({"StartHosting", "Update"})
+@Description("The update of all domains to a new public IP address")
+class JfrUpdateCycleEvent extends Event {
+
+    @Label("Cycle ID")
+    long cycleId;
+
+    @Label("Public IP Address")
+    String publicIPAddress;
+
+    @Label("Domains")
+    int domains;
+
+    @Label("Failed Domains")
+    int failedDomains;
+
+    @Label("Skipped Domains")
+    int skippedDomains;
+
+}
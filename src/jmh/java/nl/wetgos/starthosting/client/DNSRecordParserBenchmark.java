@@ -0,0 +1,37 @@
+package nl.wetgos.starthosting.client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class DNSRecordParserBenchmark {
+
+    private static final String DOMAIN = "example.com";
+
+    @Param({"10", "100", "1000"})
+    private int records;
+
+    @Param({"streaming", "jsoup"})
+    private String parser;
+
+    private byte[] page;
+    private DNSRecordParser dnsRecordParser;
+
+    @Setup
+    public void setup() {
+        page = FfdnsPage.generate(DOMAIN, records);
+        dnsRecordParser = DNSRecordParser.forName(parser);
+    }
+
+    @Benchmark
+    public List<DNSRecord> parse() throws IOException {
+        return dnsRecordParser.parse(new ByteArrayInputStream(page), DOMAIN);
+    }
+}
@@ -0,0 +1,66 @@
+package nl.wetgos.starthosting.client;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds ffdns edit pages in the layout the panel serves, with a given number of records.
+ */
+public class FfdnsPage {
+
+    private static final String[] TYPES = {"A", "A", "A", "CNAME", "MX", "TXT", "AAAA"};
+
+    public static byte[] generate(String domain, int records) {
+        StringBuilder page = new StringBuilder(1024 + records * 320);
+
+        page.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\" \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd\">\n")
+                .append("<html>\n<head>\n<title>DNS beheer - ").append(domain).append("</title>\n")
+                .append("<link rel=\"stylesheet\" type=\"text/css\" href=\"/server8/style/main.css\" />\n")
+                .append("<script type=\"text/javascript\">function confirmDelete(id) { return id < 0 || confirm('Weet u het zeker?'); }</script>\n")
+                .append("</head>\n<body>\n<div id=\"menu\"><ul><li><a href=\"/server8/ffstart/\">Start</a></li>")
+                .append("<li><a href=\"/server8/modules/ffdns/?action=edit\">DNS</a></li></ul></div>\n")
+                .append("<div class=\"content\">\n<h1>DNS records van ").append(domain).append("</h1>\n")
+                .append("<table class=\"list\" cellspacing=\"0\">\n")
+                .append("<tr><th>Type</th><th>Naam</th><th>TTL</th><th>Inhoud</th><th>&nbsp;</th></tr>\n");
+
+        for (int i = 0; i < records; i++) {
+            String type = TYPES[i % TYPES.length];
+            String name = i == 0 ? domain : "host" + i + "." + domain;
+            String content = content(type, i, domain);
+
+            page.append("<tr class=\"dnsrecord ").append(i % 2 == 0 ? "even" : "odd").append("\">\n")
+                    .append("  <td>").append(type).append("</td>\n")
+                    .append("  <td>").append(name).append("</td>\n")
+                    .append("  <td>3600</td>\n")
+                    .append("  <td>").append(content).append("</td>\n")
+                    .append("  <td>");
+
+            // every tenth record is virtual and cannot be edited
+            if (i % 10 != 9) {
+                page.append("<a href=\"?action=edit&amp;record=").append(100000 + i).append("\"><img src=\"/server8/img/edit.png\" alt=\"wijzig\" /></a> ")
+                        .append("<a href=\"?action=delete&amp;record=").append(100000 + i)
+                        .append("\" onclick=\"return confirmDelete(").append(i).append(");\"><img src=\"/server8/img/delete.png\" alt=\"verwijder\" /></a>");
+            }
+
+            page.append("</td>\n</tr>\n");
+        }
+
+        page.append("</table>\n</div>\n</body>\n</html>\n");
+
+        return page.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String content(String type, int i, String domain) {
+        switch (type) {
+            case "CNAME":
+                return "www." + domain;
+            case "MX":
+                return "10 mail." + domain;
+            case "TXT":
+                return "&quot;v=spf1 a mx -all&quot;";
+            case "AAAA":
+                return "2001:db8::" + Integer.toHexString(i);
+            default:
+                return "192.0.2." + (i % 254 + 1);
+        }
+    }
+}
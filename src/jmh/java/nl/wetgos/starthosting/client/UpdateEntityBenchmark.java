@@ -0,0 +1,19 @@
+package nl.wetgos.starthosting.client;
+
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.UnsupportedEncodingException;
+
+@State(Scope.Benchmark)
+public class UpdateEntityBenchmark {
+
+    private final DNSRecord dnsRecord = new DNSRecord("100042", "A", "www", "203.0.113.42");
+
+    @Benchmark
+    public UrlEncodedFormEntity createUpdateEntity() throws UnsupportedEncodingException {
+        return StartHostingClient.createUpdateEntity(dnsRecord);
+    }
+}
@@ -0,0 +1,50 @@
+package nl.wetgos.starthosting.commands;
+
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.client.FfdnsPage;
+import nl.wetgos.starthosting.client.StreamingDNSRecordParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Matches the records of a zone against a type and name, as the dns and dynamic commands do.
+ */
+@State(Scope.Benchmark)
+public class UpdatePlanBenchmark {
+
+    private static final String DOMAIN = "example.com";
+
+    @Param({"10", "100", "1000"})
+    private int records;
+
+    private List<DNSRecord> dnsRecords;
+
+    private final RecordSelector namesAndGlob = RecordSelector.compile("A,AAAA", "@,host1,glob:host2*");
+
+    @Setup
+    public void setup() throws IOException {
+        dnsRecords = new StreamingDNSRecordParser().parse(new ByteArrayInputStream(FfdnsPage.generate(DOMAIN, records)), DOMAIN);
+    }
+
+    @Benchmark
+    public UpdatePlan matchByType() {
+        return UpdatePlan.create(DOMAIN, dnsRecords, "A", null, "198.51.100.1");
+    }
+
+    @Benchmark
+    public UpdatePlan matchByTypeAndName() {
+        return UpdatePlan.create(DOMAIN, dnsRecords, "A", "host7", "198.51.100.1");
+    }
+
+    @Benchmark
+    public UpdatePlan matchByTypesNamesAndGlob() {
+        return UpdatePlan.create(DOMAIN, dnsRecords, namesAndGlob, "198.51.100.1");
+    }
+}
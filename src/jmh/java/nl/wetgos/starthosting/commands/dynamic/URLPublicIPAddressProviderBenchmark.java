@@ -0,0 +1,62 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import nl.wetgos.starthosting.http.HttpTransport;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares decoding a response to a string with reading it into the reused buffer of the provider. Run with
+ * {@code -prof gc}: reading the same address again should allocate close to nothing.
+ */
+@State(Scope.Benchmark)
+public class URLPublicIPAddressProviderBenchmark {
+
+    @Param({"203.0.113.42\n", "2001:db8:85a3::8a2e:370:7334\n"})
+    private String response;
+
+    private ByteArrayEntity entity;
+    private ByteArrayInputStream content;
+
+    private HttpTransport transport;
+    private URLPublicIPAddressProvider provider;
+
+    @Setup
+    public void setup() {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+
+        entity = new ByteArrayEntity(bytes);
+        content = new ByteArrayInputStream(bytes);
+
+        transport = new HttpTransport();
+        provider = new URLPublicIPAddressProvider("http://localhost/", transport);
+    }
+
+    @TearDown
+    public void tearDown() {
+        transport.close();
+    }
+
+    /**
+     * How responses were read before: decoded to a new, trimmed string on every lookup.
+     */
+    @Benchmark
+    public String decode() throws IOException {
+        return EntityUtils.toString(entity, StandardCharsets.UTF_8).trim();
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        content.reset();
+        return provider.read(content);
+    }
+}
@@ -1,11 +1,18 @@
 package nl.wetgos.starthosting;
 
 import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.DNSRecordCache;
+import nl.wetgos.starthosting.client.DNSRecordParser;
 import nl.wetgos.starthosting.client.StartHostingClientFactory;
 import nl.wetgos.starthosting.commands.Command;
 import nl.wetgos.starthosting.commands.CommandContext;
 import nl.wetgos.starthosting.commands.DNSCommand;
+import nl.wetgos.starthosting.commands.bulk.BulkCommand;
+import nl.wetgos.starthosting.commands.dynamic.DaemonCommand;
 import nl.wetgos.starthosting.commands.dynamic.DynamicDNSCommand;
+import nl.wetgos.starthosting.commands.zone.ExportCommand;
+import nl.wetgos.starthosting.commands.zone.ReconcileCommand;
+import nl.wetgos.starthosting.http.HttpTransport;
 import org.apache.commons.cli.*;
 
 import java.util.HashMap;
@@ -16,11 +23,20 @@ public class StartHostingTool {
 
     private static final String DEFAULT_BASE_URL = "http://hostingmanager.starthosting.nl/server8";
 
+    /**
+     * Time a command gets to stop when the JVM shuts down (milliseconds).
+     */
+    static final long SHUTDOWN_TIMEOUT = 10000;
+
     private final Map<String, Command> commands = new HashMap();
 
     public StartHostingTool() {
         commands.put("dns", new DNSCommand());
         commands.put("dynamic", new DynamicDNSCommand());
+        commands.put("daemon", new DaemonCommand());
+        commands.put("bulk", new BulkCommand());
+        commands.put("export", new ExportCommand());
+        commands.put("reconcile", new ReconcileCommand());
     }
 
     private void run(String[] args) {
@@ -28,21 +44,17 @@ public class StartHostingTool {
 
         Options defaultOptions = new Options();
 
-        configureDefaultOptions(defaultOptions);
+        Command command = args.length > 0 ? commands.get(args[0]) : null;
 
-        CommandLine commandLine;
+        configureDefaultOptions(defaultOptions, command == null || command.isAccountRequired());
 
         try {
             if (args.length == 0) {
                 throw new ParseException("command required");
             }
 
-            String commandName = args[0];
-
-            Command command = commands.get(commandName);
-
             if (command == null) {
-                throw new ParseException("command unknown: " + commandName);
+                throw new ParseException("command unknown: " + args[0]);
             }
 
             runCommand(args, commandLineParser, defaultOptions, command);
@@ -52,8 +64,8 @@ public class StartHostingTool {
             StringBuilder header = new StringBuilder();
 
             header.append("\nAvailable commands:\n");
-            for (Map.Entry<String, Command> command : commands.entrySet()) {
-                header.append(String.format("    %s%40s\n", command.getKey(), command.getValue().getDescription()));
+            for (Map.Entry<String, Command> entry : commands.entrySet()) {
+                header.append(String.format("    %s%40s\n", entry.getKey(), entry.getValue().getDescription()));
             }
             header.append("\nOptions:\n");
 
@@ -71,24 +83,105 @@ public class StartHostingTool {
 
         CommandContext commandContext = createCommandContext(commandLine);
 
-        command.run(commandContext);
+        StartHostingClientFactory clientFactory = commandContext.getClientFactory();
+        HttpTransport httpTransport = commandContext.getHttpTransport();
+
+        Thread shutdownHook = createShutdownHook(Thread.currentThread(), () -> {
+            if (clientFactory != null) {
+                clientFactory.close();
+            }
+            httpTransport.close();
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        try {
+            command.run(commandContext);
+        } finally {
+            if (clientFactory != null) {
+                clientFactory.close();
+            }
+            httpTransport.close();
+
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down
+            }
+        }
+    }
+
+    /**
+     * Creates a shutdown hook that interrupts the command and waits for it to stop, so a long running command releases
+     * its lease and closes its state journal before the given resources are closed.
+     *
+     * @param commandThread thread that runs the command
+     * @param close         closes the resources of the command
+     * @return
+     */
+    static Thread createShutdownHook(Thread commandThread, Runnable close) {
+        return new Thread(() -> {
+            commandThread.interrupt();
+
+            try {
+                commandThread.join(SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (commandThread.isAlive()) {
+                log.warn("Command did not stop within {} ms", SHUTDOWN_TIMEOUT);
+            }
+
+            close.run();
+        }, "shutdown");
     }
 
     private CommandContext createCommandContext(CommandLine commandLine) {
-        StartHostingClientFactory clientFactory = createClientFactory(commandLine);
-        return new CommandContext(commandLine, clientFactory);
+        HttpTransport httpTransport = createHttpTransport(commandLine);
+
+        StartHostingClientFactory clientFactory = commandLine.hasOption("user")
+                ? createClientFactory(commandLine, httpTransport, commandLine.getOptionValue("user"), commandLine.getOptionValue("password"))
+                : null;
+
+        return new CommandContext(commandLine, clientFactory, httpTransport,
+                (user, password) -> createClientFactory(commandLine, httpTransport, user, password));
+    }
+
+    private HttpTransport createHttpTransport(CommandLine commandLine) {
+        int timeout = Integer.parseInt(commandLine.getOptionValue("timeout", String.valueOf(HttpTransport.DEFAULT_TIMEOUT)));
+        int maxConnections = Integer.parseInt(commandLine.getOptionValue("maxconnections", String.valueOf(HttpTransport.DEFAULT_MAX_PER_ROUTE)));
+
+        return new HttpTransport(timeout, maxConnections, Math.max(maxConnections, HttpTransport.DEFAULT_MAX_TOTAL));
     }
 
-    private StartHostingClientFactory createClientFactory(CommandLine commandLine) {
-        String user = commandLine.getOptionValue("user");
-        String password = commandLine.getOptionValue("password");
+    private StartHostingClientFactory createClientFactory(CommandLine commandLine, HttpTransport httpTransport, String user, String password) {
+        String baseUrl = commandLine.getOptionValue("baseurl", DEFAULT_BASE_URL);
+
+        StartHostingClientFactory clientFactory = new StartHostingClientFactory(baseUrl, user, password, httpTransport);
+
+        if (commandLine.hasOption("parser")) {
+            clientFactory.setDnsRecordParser(DNSRecordParser.forName(commandLine.getOptionValue("parser")));
+        }
+
+        long cacheTTL = Long.parseLong(commandLine.getOptionValue("cachettl", String.valueOf(DNSRecordCache.DEFAULT_TTL)));
+        int cacheSize = Integer.parseInt(commandLine.getOptionValue("cachesize", String.valueOf(DNSRecordCache.DEFAULT_MAX_SIZE)));
+
+        if (cacheTTL > 0) {
+            clientFactory.setRecordCache(new DNSRecordCache(cacheTTL, cacheSize));
+        }
 
-        return new StartHostingClientFactory(DEFAULT_BASE_URL, user, password);
+        return clientFactory;
     }
 
-    private void configureDefaultOptions(Options options) {
-        options.addOption(Option.builder("user").desc("User name").hasArg().required().build());
-        options.addOption(Option.builder("password").desc("Password").hasArg().required().build());
+    private void configureDefaultOptions(Options options, boolean accountRequired) {
+        options.addOption(Option.builder("user").desc("User name").hasArg().required(accountRequired).build());
+        options.addOption(Option.builder("password").desc("Password").hasArg().required(accountRequired).build());
+        options.addOption(Option.builder("baseurl").desc("Base URL of the panel (default " + DEFAULT_BASE_URL + ")").hasArg().build());
+        options.addOption(Option.builder("timeout").desc("HTTP connect and read timeout (milliseconds, default " + HttpTransport.DEFAULT_TIMEOUT + ")").hasArg().build());
+        options.addOption(Option.builder("maxconnections").desc("Maximum number of HTTP connections per host (default " + HttpTransport.DEFAULT_MAX_PER_ROUTE + ")").hasArg().build());
+        options.addOption(Option.builder("parser").desc("DNS record parser: streaming (default) or jsoup").hasArg().build());
+        options.addOption(Option.builder("cachettl").desc("Time DNS records are cached (milliseconds, default " + DNSRecordCache.DEFAULT_TTL + ", 0 disables the cache)").hasArg().build());
+        options.addOption(Option.builder("cachesize").desc("Maximum number of domains whose DNS records are cached (default " + DNSRecordCache.DEFAULT_MAX_SIZE + ")").hasArg().build());
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,345 @@
+package nl.wetgos.starthosting.client;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.http.AsyncHttpTransport;
+import nl.wetgos.starthosting.metrics.Metrics;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+import static nl.wetgos.starthosting.client.StartHostingClient.LOGON_PATH;
+import static nl.wetgos.starthosting.client.StartHostingClient.createLoginEntity;
+import static nl.wetgos.starthosting.client.StartHostingClient.createUpdateEntity;
+import static nl.wetgos.starthosting.client.StartHostingClient.ensureResponseStatus;
+import static nl.wetgos.starthosting.client.StartHostingClient.ensureUpdated;
+import static nl.wetgos.starthosting.client.StartHostingClient.getStartPageLocation;
+import static nl.wetgos.starthosting.client.StartHostingClient.isLogonRedirect;
+import static nl.wetgos.starthosting.client.StartHostingClient.record;
+
+/**
+ * Non-blocking variant of {@link StartHostingClient}, for one panel session.
+ * <p>
+ * Every method returns immediately with a future. Because the active domain is state of the panel session, the
+ * operations of one client run one after another in the order they were called, also when an earlier one failed.
+ * Different clients run independently, so a few I/O threads of the {@link AsyncHttpTransport} can drive many
+ * sessions at the same time. Futures complete on the I/O threads, so callers must not block in their callbacks.
+ * <p>
+ * Failed operations complete exceptionally with a {@link StartHostingClientException}.
+ */
+@Slf4j
+public class AsyncStartHostingClient implements Closeable {
+
+    private final String baseUrl;
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    /**
+     * Holds the session cookie.
+     */
+    private final HttpClientContext context;
+
+    private final DNSRecordParser dnsRecordParser;
+
+    private volatile boolean loggedIn;
+    private volatile String activeDomain;
+
+    private volatile String username;
+    private volatile String password;
+    private volatile boolean renewing;
+
+    /**
+     * Last operation of this session, which must finish before the next one starts.
+     */
+    private CompletableFuture<?> tail = CompletableFuture.completedFuture(null);
+
+    public AsyncStartHostingClient(String baseUrl, AsyncHttpTransport transport) {
+        this(baseUrl, transport, new StreamingDNSRecordParser());
+    }
+
+    public AsyncStartHostingClient(String baseUrl, AsyncHttpTransport transport, DNSRecordParser dnsRecordParser) {
+        this.baseUrl = baseUrl;
+        this.dnsRecordParser = dnsRecordParser;
+
+        httpClient = transport.getHttpClient();
+        context = transport.createSessionContext();
+    }
+
+    public CompletableFuture<Void> login(String username, String password) {
+        return enqueue(() -> doLogin(username, password));
+    }
+
+    public CompletableFuture<Void> changeDomain(String domain) {
+        return enqueue(() -> doChangeDomain(domain));
+    }
+
+    public CompletableFuture<List<DNSRecord>> getDNSRecords() {
+        return enqueue(this::doGetDNSRecords);
+    }
+
+    /**
+     * Updates a DNS record of the active domain.
+     *
+     * @param dnsRecord
+     * @return the records of the active domain as shown by the panel after the update
+     */
+    public CompletableFuture<List<DNSRecord>> updateDNSRecord(DNSRecord dnsRecord) {
+        if (dnsRecord == null) {
+            throw new IllegalArgumentException("DNS record must not be null");
+        }
+
+        if (dnsRecord.getId() == null || "".equals(dnsRecord.getId())) {
+            throw new IllegalArgumentException("DNS record must have an ID");
+        }
+
+        return enqueue(() -> doUpdateDNSRecord(dnsRecord));
+    }
+
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+
+    /**
+     * Runs an operation after all operations that were enqueued before it.
+     */
+    private synchronized <T> CompletableFuture<T> enqueue(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = tail
+                .handle((value, e) -> null)
+                .thenCompose(ignored -> operation.get());
+
+        tail = result;
+
+        return result;
+    }
+
+    private CompletableFuture<Void> doLogin(String username, String password) {
+        log.info("Logging in as {}", username);
+
+        HttpPost request = new HttpPost(baseUrl + LOGON_PATH);
+
+        long start = System.nanoTime();
+
+        try {
+            request.setEntity(createLoginEntity(username, password));
+        } catch (IOException e) {
+            return failed(new StartHostingClientException("Could not login as " + username, e));
+        }
+
+        return wrap(send(request).thenAccept(response -> {
+            ensureResponseStatus(response, 302);
+            getStartPageLocation(response);
+
+            log.debug("Successfully logged in as {}", username);
+
+            this.username = username;
+            this.password = password;
+
+            loggedIn = true;
+        }), Metrics.LOGIN, start, "Could not login as " + username);
+    }
+
+    private CompletableFuture<Void> doChangeDomain(String domain) {
+        if (!loggedIn) {
+            return failed(new StartHostingClientException("Not logged in"));
+        }
+
+        log.info("Changing active domain to: {}", domain);
+
+        HttpGet request = new HttpGet(baseUrl + "/services/domainchanger/?domain=" + domain);
+
+        long start = System.nanoTime();
+
+        return wrap(execute(request).thenAccept(response -> {
+            ensureResponseStatus(response, 302);
+
+            log.debug("Successfully changed active domain to: {}", domain);
+
+            activeDomain = domain;
+        }), Metrics.CHANGE_DOMAIN, start, "Could not change active domain to: " + domain);
+    }
+
+    private CompletableFuture<List<DNSRecord>> doGetDNSRecords() {
+        if (!loggedIn || activeDomain == null) {
+            return failed(new StartHostingClientException(loggedIn ? "No domain active" : "Not logged in"));
+        }
+
+        log.info("Getting DNS records for domain {}", activeDomain);
+
+        HttpGet request = new HttpGet(baseUrl + "/modules/ffdns/?action=edit");
+
+        long start = System.nanoTime();
+
+        return wrap(execute(request).thenApply(response -> {
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IllegalStateException("Unexpected response status: " + response.getStatusLine());
+            }
+
+            try {
+                return dnsRecordParser.parse(response.getEntity().getContent(), activeDomain);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), Metrics.GET_DNS_RECORDS, start, "Could not get DNS records");
+    }
+
+    private CompletableFuture<List<DNSRecord>> doUpdateDNSRecord(DNSRecord dnsRecord) {
+        if (!loggedIn || activeDomain == null) {
+            return failed(new StartHostingClientException(loggedIn ? "No domain active" : "Not logged in"));
+        }
+
+        log.info("Updating DNS record: {}", dnsRecord);
+
+        HttpPost request = new HttpPost(baseUrl + "/modules/ffdns/?action=edit");
+
+        long start = System.nanoTime();
+
+        try {
+            request.setEntity(createUpdateEntity(dnsRecord));
+        } catch (IOException e) {
+            return failed(new StartHostingClientException("Could not update DNS record " + dnsRecord, e));
+        }
+
+        return wrap(execute(request).thenApply(response -> {
+            ensureResponseStatus(response, 200);
+
+            try {
+                byte[] page = EntityUtils.toByteArray(response.getEntity());
+
+                List<DNSRecord> records = dnsRecordParser.parse(new ByteArrayInputStream(page), activeDomain);
+
+                ensureUpdated(dnsRecord, records, page);
+
+                log.debug("Successfully updated DNS record {}", dnsRecord.getId());
+
+                return records;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }), Metrics.UPDATE_DNS_RECORD, start, "Could not update DNS record " + dnsRecord);
+    }
+
+    /**
+     * Logs in again with the last used credentials and reactivates the active domain. Only called from within an
+     * operation, so it does not wait for the queue.
+     */
+    private CompletableFuture<Void> renewSession() {
+        String domain = activeDomain;
+
+        loggedIn = false;
+        activeDomain = null;
+
+        renewing = true;
+
+        CompletableFuture<Void> renewed = doLogin(username, password);
+
+        if (domain != null) {
+            renewed = renewed.thenCompose(ignored -> doChangeDomain(domain));
+        }
+
+        return renewed.whenComplete((value, e) -> renewing = false);
+    }
+
+    /**
+     * Sends a request and, when the panel redirects to the logon page because the session expired, logs in again
+     * and sends the request once more.
+     */
+    private CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+        return send(request).thenCompose(response -> {
+            if (renewing || !isLogonRedirect(response)) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            log.info("Session of {} expired, logging in again", username);
+
+            return renewSession()
+                    .thenCompose(ignored -> send(request))
+                    .thenApply(retried -> {
+                        if (isLogonRedirect(retried)) {
+                            throw new IllegalStateException("Session expired and could not be renewed");
+                        }
+                        return retried;
+                    });
+        });
+    }
+
+    private CompletableFuture<HttpResponse> send(HttpUriRequest request) {
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+
+        // the response is read completely before the callback, so the connection is already released
+        httpClient.execute(request, context, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.completeExceptionally(new CancellationException("Request cancelled: " + request.getURI()));
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Records the metrics of an operation and wraps its failure in a {@link StartHostingClientException}.
+     */
+    private static <T> CompletableFuture<T> wrap(CompletableFuture<T> future, String operation, long start, String message) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        future.whenComplete((value, e) -> {
+            record(operation, start, e == null);
+
+            if (e == null) {
+                result.complete(value);
+                return;
+            }
+
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+            if (cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+
+            result.completeExceptionally(new StartHostingClientException(message, cause));
+        });
+
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Forgets the session. The transport stays open, because it is shared.
+     */
+    @Override
+    public void close() {
+        loggedIn = false;
+        activeDomain = null;
+
+        context.getCookieStore().clear();
+    }
+}
@@ -0,0 +1,54 @@
+package nl.wetgos.starthosting.client;
+
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of updating a number of DNS records of one domain.
+ */
+public class BatchUpdateResult {
+
+    private final List<RecordResult> results = new ArrayList<>();
+
+    /**
+     * Records of the domain as shown by the panel after the last successful update, or null if no update succeeded.
+     */
+    @Getter
+    private List<DNSRecord> records;
+
+    void success(DNSRecord dnsRecord, List<DNSRecord> records) {
+        results.add(new RecordResult(dnsRecord, null));
+        this.records = records;
+    }
+
+    void failure(DNSRecord dnsRecord, Exception error) {
+        results.add(new RecordResult(dnsRecord, error));
+    }
+
+    public List<RecordResult> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public int getSucceeded() {
+        return (int) results.stream().filter(RecordResult::isSuccess).count();
+    }
+
+    public int getFailed() {
+        return results.size() - getSucceeded();
+    }
+
+    @Value
+    public static class RecordResult {
+
+        private final DNSRecord record;
+        private final Exception error;
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package nl.wetgos.starthosting.client;
+
+import lombok.Value;
+import nl.wetgos.starthosting.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recently read DNS records per domain, shared by the clients of an account.
+ * <p>
+ * Entries expire after a fixed time, and the least recently used domains are evicted when the cache is full. The
+ * records the panel shows after our own updates replace the cached records, so reading a domain again after
+ * updating it needs no request. Records are copied in and out, so callers cannot change cached records.
+ */
+public class DNSRecordCache {
+
+    public static final long DEFAULT_TTL = 60 * 1000;
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final long ttlNanos;
+    private final int maxSize;
+
+    private final Map<String, CacheEntry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public DNSRecordCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param ttl     time (milliseconds) records are kept
+     * @param maxSize maximum number of domains
+     */
+    public DNSRecordCache(long ttl, int maxSize) {
+        if (ttl <= 0 || maxSize < 1) {
+            throw new IllegalArgumentException("TTL and size must be positive");
+        }
+
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+        this.maxSize = maxSize;
+
+        entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > DNSRecordCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the records of a domain.
+     *
+     * @param domain
+     * @return the records, or null if they are not cached or expired
+     */
+    public synchronized List<DNSRecord> get(String domain) {
+        String key = domain.toLowerCase(Locale.ROOT);
+
+        CacheEntry entry = entries.get(key);
+
+        if (entry != null && System.nanoTime() - entry.getCreated() > ttlNanos) {
+            entries.remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses++;
+            Metrics.getDefault().recordCacheMiss();
+            return null;
+        }
+
+        hits++;
+        Metrics.getDefault().recordCacheHit();
+
+        return copy(entry.getRecords());
+    }
+
+    public synchronized void put(String domain, List<DNSRecord> records) {
+        entries.put(domain.toLowerCase(Locale.ROOT), new CacheEntry(copy(records), System.nanoTime()));
+    }
+
+    /**
+     * Removes the records of a domain, i.e. when an update failed and its state at the panel is unknown.
+     *
+     * @param domain
+     */
+    public synchronized void invalidate(String domain) {
+        entries.remove(domain.toLowerCase(Locale.ROOT));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits, misses, evictions, entries.size());
+    }
+
+    private static List<DNSRecord> copy(List<DNSRecord> records) {
+        List<DNSRecord> copy = new ArrayList<>(records.size());
+
+        for (DNSRecord dnsRecord : records) {
+            copy.add(new DNSRecord(dnsRecord.getId(), dnsRecord.getType(), dnsRecord.getName(), dnsRecord.getContent()));
+        }
+
+        return copy;
+    }
+
+    @Value
+    private static class CacheEntry {
+
+        List<DNSRecord> records;
+        long created;
+
+    }
+
+    @Value
+    public static class Statistics {
+
+        long hits;
+        long misses;
+        long evictions;
+        int size;
+
+        @Override
+        public String toString() {
+            long lookups = hits + misses;
+            return String.format("%d hit(s), %d miss(es) (%.0f%% hits), %d eviction(s), %d domain(s) cached",
+                    hits, misses, lookups > 0 ? hits * 100.0 / lookups : 0.0, evictions, size);
+        }
+    }
+}
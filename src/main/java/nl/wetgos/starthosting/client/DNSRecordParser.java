@@ -0,0 +1,57 @@
+package nl.wetgos.starthosting.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Extracts the DNS records from an ffdns page of the panel.
+ */
+public interface DNSRecordParser {
+
+    /**
+     * Parses the DNS records from the given page and passes them to the consumer in page order.
+     *
+     * @param content  page content (UTF-8)
+     * @param domain   domain the page belongs to, which is stripped from the record names
+     * @param consumer
+     * @throws IOException
+     */
+    void parse(InputStream content, String domain, Consumer<DNSRecord> consumer) throws IOException;
+
+    /**
+     * Parses the DNS records from the given page.
+     *
+     * @param content page content (UTF-8)
+     * @param domain  domain the page belongs to, which is stripped from the record names
+     * @return
+     * @throws IOException
+     */
+    default List<DNSRecord> parse(InputStream content, String domain) throws IOException {
+        List<DNSRecord> records = new ArrayList<>();
+
+        parse(content, domain, records::add);
+
+        return records;
+    }
+
+    /**
+     * Gets the parser for the given name ("streaming" or "jsoup").
+     *
+     * @param name
+     * @return
+     */
+    static DNSRecordParser forName(String name) {
+        switch (name.toLowerCase()) {
+            case "streaming":
+                return new StreamingDNSRecordParser();
+            case "jsoup":
+                return new JsoupDNSRecordParser();
+            default:
+                throw new IllegalArgumentException("Unknown DNS record parser: " + name);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package nl.wetgos.starthosting.client;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses DNS records by building the full Jsoup document of the page.
+ */
+public class JsoupDNSRecordParser implements DNSRecordParser {
+
+    private static final Pattern RECORD_ID_PATTERN = Pattern.compile("record=(\\d+)");
+
+    @Override
+    public void parse(InputStream content, String domain, Consumer<DNSRecord> consumer) throws IOException {
+        Document document = Jsoup.parse(content, "UTF-8", "");
+
+        Elements rows = document.getElementsByClass("dnsrecord");
+
+        for (Element row : rows) {
+            String type = row.child(0).ownText().toUpperCase();
+
+            String name = row.child(1).ownText();
+            name = name.toLowerCase().replace("." + domain, "");
+            name = name.replace(domain, "");
+
+            String ownText = row.child(3).ownText();
+
+            String id = null;
+
+            Elements actions = row.getElementsByTag("a");
+
+            for (Element action : actions) {
+                String href = action.attr("href");
+
+                Matcher matcher = RECORD_ID_PATTERN.matcher(href);
+                if (matcher.find()) {
+                    id = matcher.group(1);
+                    break;
+                }
+            }
+
+            consumer.accept(new DNSRecord(id, type, name, ownText));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package nl.wetgos.starthosting.client;
+
+import java.util.Arrays;
+
+/**
+ * IPv4 or IPv6 address in binary form, parsed from ASCII text without allocating.
+ * <p>
+ * Instances are mutable, so a provider can parse every response into the same instance and compare it with the
+ * last address.
+ */
+public final class PackedIPAddress {
+
+    private final byte[] bytes = new byte[16];
+
+    /**
+     * 4 for IPv4, 16 for IPv6, 0 if no address was parsed.
+     */
+    private int length;
+
+    /**
+     * Parses an address, i.e. {@code 203.0.113.42} or {@code 2001:db8::1}.
+     *
+     * @param text
+     * @param from index of the first character
+     * @param to   index after the last character
+     * @return false if the text is not an address, in which case this instance holds no address
+     */
+    public boolean parse(byte[] text, int from, int to) {
+        length = 0;
+
+        if (from >= to) {
+            return false;
+        }
+
+        boolean ipv6 = false;
+        for (int i = from; i < to; i++) {
+            if (text[i] == ':') {
+                ipv6 = true;
+                break;
+            }
+        }
+
+        if (ipv6 ? parseIPv6(text, from, to) : parseIPv4(text, from, to, bytes, 0)) {
+            length = ipv6 ? 16 : 4;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets the address from binary form, i.e. the data of a DNS A or AAAA record.
+     *
+     * @param source
+     * @param offset
+     * @param length 4 or 16
+     */
+    public void set(byte[] source, int offset, int length) {
+        if (length != 4 && length != 16) {
+            throw new IllegalArgumentException("Not an IPv4 or IPv6 address: " + length + " bytes");
+        }
+
+        System.arraycopy(source, offset, bytes, 0, length);
+        this.length = length;
+    }
+
+    /**
+     * Formats the address, IPv6 addresses in the short form of RFC 5952.
+     *
+     * @return
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder(39);
+
+        if (length == 4) {
+            for (int i = 0; i < 4; i++) {
+                text.append(i > 0 ? "." : "").append(bytes[i] & 0xff);
+            }
+            return text.toString();
+        }
+
+        if (length != 16) {
+            throw new IllegalStateException("No address");
+        }
+
+        // the longest run of at least two zero groups is replaced by ::
+        int zerosStart = -1;
+        int zerosLength = 1;
+
+        for (int group = 0; group < 8; ) {
+            int run = 0;
+            while (group + run < 8 && group(group + run) == 0) {
+                run++;
+            }
+
+            if (run > zerosLength) {
+                zerosStart = group;
+                zerosLength = run;
+            }
+
+            group += Math.max(run, 1);
+        }
+
+        for (int group = 0; group < 8; group++) {
+            if (group == zerosStart) {
+                text.append("::");
+                group += zerosLength - 1;
+                continue;
+            }
+
+            if (text.length() > 0 && text.charAt(text.length() - 1) != ':') {
+                text.append(':');
+            }
+
+            text.append(Integer.toHexString(group(group)));
+        }
+
+        return text.toString();
+    }
+
+    private int group(int group) {
+        return (bytes[group * 2] & 0xff) << 8 | bytes[group * 2 + 1] & 0xff;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public boolean sameAs(PackedIPAddress other) {
+        if (length != other.length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != other.bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public void copyFrom(PackedIPAddress other) {
+        System.arraycopy(other.bytes, 0, bytes, 0, other.length);
+        length = other.length;
+    }
+
+    private static boolean parseIPv4(byte[] text, int from, int to, byte[] target, int offset) {
+        int octets = 0;
+        int i = from;
+
+        while (true) {
+            int start = i;
+            int value = 0;
+
+            while (i < to && i - start < 3 && text[i] >= '0' && text[i] <= '9') {
+                value = value * 10 + text[i] - '0';
+                i++;
+            }
+
+            int digits = i - start;
+
+            // no leading zeros, they are read as octal by some resolvers
+            if (digits == 0 || value > 255 || (digits > 1 && text[start] == '0')) {
+                return false;
+            }
+
+            target[offset + octets++] = (byte) value;
+
+            if (octets == 4) {
+                return i == to;
+            }
+
+            if (i == to || text[i] != '.') {
+                return false;
+            }
+
+            i++;
+        }
+    }
+
+    private boolean parseIPv6(byte[] text, int from, int to) {
+        int groups = 0;
+        int compressAt = -1;
+        int i = from;
+
+        if (text[i] == ':') {
+            if (i + 1 >= to || text[i + 1] != ':') {
+                return false;
+            }
+
+            compressAt = 0;
+            i += 2;
+        }
+
+        while (i < to) {
+            if (groups == 8) {
+                return false;
+            }
+
+            int start = i;
+            int value = 0;
+
+            while (i < to && i - start < 5 && hex(text[i]) >= 0) {
+                value = (value << 4) | hex(text[i]);
+                i++;
+            }
+
+            if (i < to && text[i] == '.') {
+                // embedded IPv4 address in the last two groups
+                if (groups > 6 || !parseIPv4(text, start, to, bytes, groups * 2)) {
+                    return false;
+                }
+
+                groups += 2;
+                break;
+            }
+
+            int digits = i - start;
+
+            if (digits == 0 || digits > 4) {
+                return false;
+            }
+
+            bytes[groups * 2] = (byte) (value >> 8);
+            bytes[groups * 2 + 1] = (byte) value;
+            groups++;
+
+            if (i == to) {
+                break;
+            }
+
+            if (text[i] != ':') {
+                return false;
+            }
+
+            i++;
+
+            if (i < to && text[i] == ':') {
+                if (compressAt >= 0) {
+                    return false;
+                }
+
+                compressAt = groups;
+                i++;
+            } else if (i == to) {
+                return false;
+            }
+        }
+
+        if (compressAt < 0) {
+            return groups == 8;
+        }
+
+        if (groups == 8) {
+            return false;
+        }
+
+        // move the groups after :: to the end and fill the gap with zeros
+        int tail = (groups - compressAt) * 2;
+
+        System.arraycopy(bytes, compressAt * 2, bytes, 16 - tail, tail);
+        Arrays.fill(bytes, compressAt * 2, 16 - tail, (byte) 0);
+
+        return true;
+    }
+
+    private static int hex(byte c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
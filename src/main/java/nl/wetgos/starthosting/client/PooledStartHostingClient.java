@@ -0,0 +1,41 @@
+package nl.wetgos.starthosting.client;
+
+import nl.wetgos.starthosting.http.HttpTransport;
+
+import java.io.IOException;
+
+/**
+ * Client that is handed out by a {@link StartHostingClientFactory} and goes back to its pool when closed.
+ */
+class PooledStartHostingClient extends StartHostingClient {
+
+    private final StartHostingClientFactory factory;
+
+    private long idleSince;
+
+    PooledStartHostingClient(String baseUrl, HttpTransport transport, DNSRecordParser dnsRecordParser, StartHostingClientFactory factory) {
+        super(baseUrl, transport, dnsRecordParser);
+
+        this.factory = factory;
+    }
+
+    long getIdleSince() {
+        return idleSince;
+    }
+
+    void setIdleSince(long idleSince) {
+        this.idleSince = idleSince;
+    }
+
+    @Override
+    public void close() throws IOException {
+        factory.release(this);
+    }
+
+    /**
+     * Actually closes this client and ends its session.
+     */
+    void destroy() throws IOException {
+        super.close();
+    }
+}
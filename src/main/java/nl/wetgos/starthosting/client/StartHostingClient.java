@@ -1,87 +1,265 @@
 package nl.wetgos.starthosting.client;
 
 import lombok.Cleanup;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.http.HttpTransport;
+import nl.wetgos.starthosting.http.TokenBucket;
+import nl.wetgos.starthosting.metrics.Metrics;
+import nl.wetgos.starthosting.metrics.jfr.PanelRequestEvent;
+import nl.wetgos.starthosting.metrics.jfr.Tracing;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.LinkedList;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
 @Slf4j
 public class StartHostingClient implements Closeable {
 
     public static final String LOCATION_HEADER = "Location";
+    static final String LOGON_PATH = "/services/logon/";
+
     private final String baseUrl;
 
-    private final HttpClient httpClient;
+    private final HttpTransport transport;
+    private final boolean ownsTransport;
+
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * Holds the session cookie, so clients sharing a transport keep their own session.
+     */
+    private final HttpClientContext context;
+
+    private final DNSRecordParser dnsRecordParser;
+
+    /**
+     * Limits the rate of requests to the panel, or null for no limit.
+     */
+    @Setter
+    private TokenBucket rateLimiter;
+
+    /**
+     * Cache of the records of recently read domains, or null to always read them from the panel.
+     */
+    @Setter
+    private DNSRecordCache recordCache;
 
     private boolean loggedIn;
     private String activeDomain;
 
+    private String username;
+    private String password;
+    private String startPage;
+    private boolean renewing;
+
     public StartHostingClient(String baseUrl) {
+        this(baseUrl, new StreamingDNSRecordParser());
+    }
+
+    /**
+     * Creates a client with its own transport, which is closed with this client.
+     *
+     * @param baseUrl
+     * @param dnsRecordParser
+     */
+    public StartHostingClient(String baseUrl, DNSRecordParser dnsRecordParser) {
+        this(baseUrl, new HttpTransport(), true, dnsRecordParser);
+    }
+
+    /**
+     * Creates a client that sends its requests over a shared transport. The transport is not closed with this
+     * client.
+     *
+     * @param baseUrl
+     * @param transport
+     * @param dnsRecordParser
+     */
+    public StartHostingClient(String baseUrl, HttpTransport transport, DNSRecordParser dnsRecordParser) {
+        this(baseUrl, transport, false, dnsRecordParser);
+    }
+
+    private StartHostingClient(String baseUrl, HttpTransport transport, boolean ownsTransport, DNSRecordParser dnsRecordParser) {
         this.baseUrl = baseUrl;
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
+        this.dnsRecordParser = dnsRecordParser;
 
-        httpClient = HttpClientBuilder.create()
-                .disableRedirectHandling()
-                .build();
+        httpClient = transport.getHttpClient();
+        context = transport.createSessionContext();
     }
 
     public void login(String username, String password) throws StartHostingClientException {
         log.info("Logging in as {}", username);
 
         @Cleanup("releaseConnection")
-        HttpPost request = new HttpPost(baseUrl + "/services/logon/");
-
-        List<NameValuePair> params = new LinkedList();
+        HttpPost request = new HttpPost(baseUrl + LOGON_PATH);
 
-        params.add(new BasicNameValuePair("login", "1"));
-        params.add(new BasicNameValuePair("username", username));
-        params.add(new BasicNameValuePair("password", password));
+        PanelRequestEvent event = beginRequest(Metrics.LOGIN, null);
+        long start = System.nanoTime();
 
         try {
-            request.setEntity(new UrlEncodedFormEntity(params));
+            request.setEntity(createLoginEntity(username, password));
+
+            HttpResponse response = send(request);
 
-            HttpResponse response = httpClient.execute(request);
+            consume(response);
 
             ensureResponseStatus(response, 302);
 
-            String location = getLocationHeader(response);
-            if (!location.contains("/ffstart")) {
-                throw new IllegalStateException("Unexpected Location header: " + location);
-            }
+            String location = getStartPageLocation(response);
 
             log.debug("Successfully logged in as {}", username);
 
+            this.username = username;
+            this.password = password;
+            this.startPage = URI.create(baseUrl + LOGON_PATH).resolve(location).toString();
+
             loggedIn = true;
+
+            record(Metrics.LOGIN, start, true, event);
         } catch (Exception e) {
+            record(Metrics.LOGIN, start, false, event);
+
             throw new StartHostingClientException("Could not login as " + username, e);
         }
     }
 
-    private void ensureResponseStatus(HttpResponse response, int expectedStatusCode) {
+    /**
+     * Checks whether the session is still logged in at the panel, by requesting the page the panel redirected to
+     * after logging in.
+     *
+     * @return
+     */
+    public boolean checkSession() {
+        if (!loggedIn) {
+            return false;
+        }
+
+        @Cleanup("releaseConnection")
+        HttpGet request = new HttpGet(startPage);
+
+        try {
+            HttpResponse response = send(request);
+
+            consume(response);
+
+            return response.getStatusLine().getStatusCode() == 200 && !isLogonRedirect(response);
+        } catch (IOException e) {
+            log.debug("Could not check session", e);
+            return false;
+        }
+    }
+
+    /**
+     * Logs in again with the last used credentials and reactivates the active domain, because both are lost when
+     * the session at the panel expires.
+     */
+    public void renewSession() throws StartHostingClientException {
+        if (username == null) {
+            throw new StartHostingClientException("Not logged in");
+        }
+
+        String domain = activeDomain;
+
+        loggedIn = false;
+        activeDomain = null;
+
+        renewing = true;
+        try {
+            login(username, password);
+
+            if (domain != null) {
+                changeDomain(domain);
+            }
+        } finally {
+            renewing = false;
+        }
+    }
+
+    /**
+     * Executes a request and, when the panel redirects to the logon page because the session expired, logs in
+     * again and retries the request once.
+     */
+    private HttpResponse execute(HttpRequestBase request) throws IOException {
+        HttpResponse response = send(request);
+
+        if (!renewing && isLogonRedirect(response)) {
+            log.info("Session of {} expired, logging in again", username);
+
+            consume(response);
+            request.releaseConnection();
+
+            renewSession();
+
+            response = send(request);
+
+            if (isLogonRedirect(response)) {
+                throw new IllegalStateException("Session expired and could not be renewed");
+            }
+        }
+
+        return response;
+    }
+
+    private HttpResponse send(HttpRequestBase request) throws IOException {
+        if (rateLimiter != null) {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+            }
+        }
+
+        return httpClient.execute(request, context);
+    }
+
+    /**
+     * Reads the rest of the response, so the connection can be reused instead of being closed on release.
+     */
+    private static void consume(HttpResponse response) throws IOException {
+        EntityUtils.consume(response.getEntity());
+    }
+
+    static boolean isLogonRedirect(HttpResponse response) {
+        if (response.getStatusLine().getStatusCode() != 302) {
+            return false;
+        }
+
+        Header header = response.getFirstHeader(LOCATION_HEADER);
+
+        return header != null && header.getValue().contains(LOGON_PATH);
+    }
+
+    static void ensureResponseStatus(HttpResponse response, int expectedStatusCode) {
         if (response.getStatusLine().getStatusCode() != expectedStatusCode) {
             throw new IllegalStateException("Expected response status " + expectedStatusCode + ", but got: " + response.getStatusLine());
         }
     }
 
-    private String getLocationHeader(HttpResponse response) {
+    private static String getLocationHeader(HttpResponse response) {
         Header header = response.getFirstHeader(LOCATION_HEADER);
 
         if (header == null) {
@@ -91,6 +269,17 @@ public class StartHostingClient implements Closeable {
         return header.getValue();
     }
 
+    /**
+     * Gets the location of the start page from the response to a successful login.
+     */
+    static String getStartPageLocation(HttpResponse response) {
+        String location = getLocationHeader(response);
+        if (!location.contains("/ffstart")) {
+            throw new IllegalStateException("Unexpected Location header: " + location);
+        }
+        return location;
+    }
+
     public void changeDomain(String domain) throws StartHostingClientException {
         ensureLoggedIn();
 
@@ -103,15 +292,24 @@ public class StartHostingClient implements Closeable {
         @Cleanup("releaseConnection")
         HttpGet request = new HttpGet(baseUrl + "/services/domainchanger/?domain=" + domain);
 
+        PanelRequestEvent event = beginRequest(Metrics.CHANGE_DOMAIN, domain);
+        long start = System.nanoTime();
+
         try {
-            HttpResponse response = httpClient.execute(request);
+            HttpResponse response = execute(request);
+
+            consume(response);
 
             ensureResponseStatus(response, 302);
 
             log.debug("Successfully changed active domain to: {}", domain);
 
             activeDomain = domain;
+
+            record(Metrics.CHANGE_DOMAIN, start, true, event);
         } catch (Exception e) {
+            record(Metrics.CHANGE_DOMAIN, start, false, event);
+
             throw new StartHostingClientException("Could not change active domain to: " + domain, e);
         }
     }
@@ -123,6 +321,47 @@ public class StartHostingClient implements Closeable {
     }
 
     public List<DNSRecord> getDNSRecords() throws StartHostingClientException {
+        return getDNSRecords(false);
+    }
+
+    /**
+     * Gets the DNS records of the active domain, from the record cache if it holds them.
+     *
+     * @param fresh whether to read the records from the panel even when they are cached
+     * @return
+     * @throws StartHostingClientException
+     */
+    public List<DNSRecord> getDNSRecords(boolean fresh) throws StartHostingClientException {
+        ensureDomainActive();
+
+        if (recordCache != null && !fresh) {
+            List<DNSRecord> records = recordCache.get(activeDomain);
+
+            if (records != null) {
+                log.debug("Using cached DNS records for domain {}", activeDomain);
+                return records;
+            }
+        }
+
+        List<DNSRecord> records = new ArrayList<>();
+
+        getDNSRecords(records::add);
+
+        if (recordCache != null) {
+            recordCache.put(activeDomain, records);
+        }
+
+        return records;
+    }
+
+    /**
+     * Gets the DNS records of the active domain and passes them to the consumer while the page is being read,
+     * without collecting them first. The records are always read from the panel.
+     *
+     * @param consumer
+     * @throws StartHostingClientException
+     */
+    public void getDNSRecords(Consumer<DNSRecord> consumer) throws StartHostingClientException {
         ensureDomainActive();
 
         log.info("Getting DNS records for domain {}", activeDomain);
@@ -130,55 +369,37 @@ public class StartHostingClient implements Closeable {
         @Cleanup("releaseConnection")
         HttpGet request = new HttpGet(baseUrl + "/modules/ffdns/?action=edit");
 
+        PanelRequestEvent event = beginRequest(Metrics.GET_DNS_RECORDS, activeDomain);
+        long start = System.nanoTime();
+
         try {
-            HttpResponse response = httpClient.execute(request);
+            HttpResponse response = execute(request);
 
             if (response.getStatusLine().getStatusCode() != 200) {
                 throw new IllegalStateException("Unexpected response status: " + response.getStatusLine());
             }
 
-            InputStream content = response.getEntity().getContent();
+            TimedInputStream content = new TimedInputStream(response.getEntity().getContent());
 
-            return parseDNSRecords(content);
-        } catch (Exception e) {
-            throw new StartHostingClientException("Could not get DNS records", e);
-        }
-    }
-
-    private List<DNSRecord> parseDNSRecords(InputStream content) throws IOException {
-        Document document = Jsoup.parse(content, "UTF-8", "");
-
-        Elements rows = document.getElementsByClass("dnsrecord");
-
-        List<DNSRecord> records = new LinkedList();
-
-        for (Element row : rows) {
-            String type = row.child(0).ownText().toUpperCase();
+            long parseStart = System.nanoTime();
 
-            String name = row.child(1).ownText();
-            name = name.toLowerCase().replace("." + activeDomain, "");
-            name = name.replace(activeDomain, "");
+            dnsRecordParser.parse(content, activeDomain, consumer);
 
-            String ownText = row.child(3).ownText();
+            // the parser reads the page while it arrives, the time it waited for the page is network time
+            long parseNanos = System.nanoTime() - parseStart;
 
-            String id = null;
+            event.setBytesRead(content.getBytesRead());
+            event.setNetworkTime(parseStart - start + content.getReadNanos());
+            event.setParseTime(parseNanos - content.getReadNanos());
 
-            Elements actions = row.getElementsByTag("a");
+            consume(response);
 
-            for (Element action : actions) {
-                String href = action.attr("href");
-
-                Matcher matcher = Pattern.compile("record=(\\d+)").matcher(href);
-                if (matcher.find()) {
-                    id = matcher.group(1);
-                    break;
-                }
-            }
+            record(Metrics.GET_DNS_RECORDS, start, true, event);
+        } catch (Exception e) {
+            record(Metrics.GET_DNS_RECORDS, start, false, event);
 
-            records.add(new DNSRecord(id, type, name, ownText));
+            throw new StartHostingClientException("Could not get DNS records", e);
         }
-
-        return records;
     }
 
     private void ensureDomainActive() {
@@ -189,7 +410,14 @@ public class StartHostingClient implements Closeable {
         }
     }
 
-    public void updateDNSRecord(DNSRecord dnsRecord) throws StartHostingClientException {
+    /**
+     * Updates a DNS record of the active domain.
+     *
+     * @param dnsRecord
+     * @return the records of the active domain as shown by the panel after the update
+     * @throws StartHostingClientException
+     */
+    public List<DNSRecord> updateDNSRecord(DNSRecord dnsRecord) throws StartHostingClientException {
         ensureDomainActive();
 
         if (dnsRecord == null) {
@@ -205,38 +433,221 @@ public class StartHostingClient implements Closeable {
         @Cleanup("releaseConnection")
         HttpPost request = new HttpPost(baseUrl + "/modules/ffdns/?action=edit");
 
-        List<NameValuePair> params = new LinkedList();
+        PanelRequestEvent event = beginRequest(Metrics.UPDATE_DNS_RECORD, activeDomain);
+        event.setRecordId(dnsRecord.getId());
 
-        params.add(new BasicNameValuePair("process", "edit_record"));
-        params.add(new BasicNameValuePair("record", dnsRecord.getId()));
-        params.add(new BasicNameValuePair("type", dnsRecord.getType()));
-        params.add(new BasicNameValuePair("name", dnsRecord.getName()));
-        params.add(new BasicNameValuePair("content", dnsRecord.getContent()));
+        long start = System.nanoTime();
 
         try {
-            request.setEntity(new UrlEncodedFormEntity(params));
+            request.setEntity(createUpdateEntity(dnsRecord));
 
-            HttpResponse response = httpClient.execute(request);
+            HttpResponse response = execute(request);
 
             ensureResponseStatus(response, 200);
 
-            Document document = Jsoup.parse(response.getEntity().getContent(), "UTF-8", "");
+            byte[] page = EntityUtils.toByteArray(response.getEntity());
 
-            Elements rows = document.getElementsByClass("dnsrecord");
+            long parseStart = System.nanoTime();
 
-            if (rows.size() == 0) {
-                String contentText = document.getElementsByClass("content").text();
-                throw new IllegalStateException("Could not update DNS record " + dnsRecord + ": " + contentText);
+            List<DNSRecord> records = dnsRecordParser.parse(new ByteArrayInputStream(page), activeDomain);
+
+            ensureUpdated(dnsRecord, records, page);
+
+            event.setBytesRead(page.length);
+            event.setNetworkTime(parseStart - start);
+            event.setParseTime(System.nanoTime() - parseStart);
+
+            if (recordCache != null) {
+                recordCache.put(activeDomain, records);
             }
 
             log.debug("Successfully updated DNS record {}", dnsRecord.getId());
+
+            record(Metrics.UPDATE_DNS_RECORD, start, true, event);
+
+            return records;
         } catch (Exception e) {
+            record(Metrics.UPDATE_DNS_RECORD, start, false, event);
+
+            if (recordCache != null) {
+                recordCache.invalidate(activeDomain);
+            }
+
             throw new StartHostingClientException("Could not update DNS record " + dnsRecord, e);
         }
     }
 
+    /**
+     * Updates a number of DNS records of the active domain, one after another over the same connection.
+     * <p>
+     * A failing record does not stop the others. The records shown by the panel after each update are checked for
+     * the new content, and the last of them are returned as the new state of the domain, so there is no need to get
+     * the records again.
+     *
+     * @param dnsRecords
+     * @return
+     */
+    public BatchUpdateResult updateDNSRecords(Collection<DNSRecord> dnsRecords) {
+        ensureDomainActive();
+
+        BatchUpdateResult result = new BatchUpdateResult();
+
+        for (DNSRecord dnsRecord : dnsRecords) {
+            try {
+                List<DNSRecord> records = updateDNSRecord(dnsRecord);
+
+                DNSRecord updated = records.stream()
+                        .filter(record -> dnsRecord.getId().equals(record.getId()))
+                        .findFirst()
+                        .orElse(null);
+
+                if (updated == null) {
+                    result.failure(dnsRecord, new IllegalStateException("Panel does not show the record after update"));
+                } else if (!isSameContent(dnsRecord.getType(), dnsRecord.getContent(), updated.getContent())) {
+                    result.failure(dnsRecord, new IllegalStateException("Panel shows " + updated.getContent() + " after update"));
+                } else {
+                    result.success(dnsRecord, records);
+                }
+            } catch (StartHostingClientException | IllegalArgumentException e) {
+                log.warn(e.getMessage(), e);
+
+                result.failure(dnsRecord, e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks whether the content the panel shows is the content that was written, allowing for the way the panel
+     * normalises it: addresses of A and AAAA records are compared in binary form, TXT records without surrounding
+     * quotes, and other records ignoring case and a trailing dot.
+     *
+     * @param type     record type
+     * @param expected content that was written
+     * @param actual   content the panel shows
+     * @return
+     */
+    public static boolean isSameContent(String type, String expected, String actual) {
+        if (expected == null || actual == null) {
+            return expected == null && actual == null;
+        }
+
+        expected = expected.trim();
+        actual = actual.trim();
+
+        if ("A".equalsIgnoreCase(type) || "AAAA".equalsIgnoreCase(type)) {
+            PackedIPAddress expectedAddress = parseAddress(expected);
+            PackedIPAddress actualAddress = parseAddress(actual);
+
+            if (expectedAddress != null && actualAddress != null) {
+                return expectedAddress.sameAs(actualAddress);
+            }
+        }
+
+        if ("TXT".equalsIgnoreCase(type)) {
+            return unquote(expected).equals(unquote(actual));
+        }
+
+        return stripDot(expected).equalsIgnoreCase(stripDot(actual));
+    }
+
+    private static PackedIPAddress parseAddress(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+
+        PackedIPAddress address = new PackedIPAddress();
+
+        return address.parse(bytes, 0, bytes.length) ? address : null;
+    }
+
+    private static String unquote(String text) {
+        return text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"") ? text.substring(1, text.length() - 1) : text;
+    }
+
+    private static String stripDot(String text) {
+        return text.endsWith(".") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * Checks the page the panel shows after an update: the record list after a successful update, otherwise an
+     * error message.
+     */
+    static void ensureUpdated(DNSRecord dnsRecord, List<DNSRecord> records, byte[] page) throws IOException {
+        if (records.isEmpty()) {
+            Document document = Jsoup.parse(new ByteArrayInputStream(page), "UTF-8", "");
+            String contentText = document.getElementsByClass("content").text();
+            throw new IllegalStateException("Could not update DNS record " + dnsRecord + ": " + contentText);
+        }
+    }
+
+    /**
+     * Starts the Flight Recorder event of a request, in the current update cycle.
+     */
+    private static PanelRequestEvent beginRequest(String operation, String domain) {
+        PanelRequestEvent event = new PanelRequestEvent();
+        event.begin();
+
+        event.setCycleId(Tracing.getCycle());
+        event.setOperation(operation);
+        event.setDomain(domain);
+
+        return event;
+    }
+
+    static void record(String operation, long start, boolean success) {
+        Metrics.getDefault().operation(operation).record(start, success);
+    }
+
+    /**
+     * Records the metrics and commits the event of a request.
+     */
+    static void record(String operation, long start, boolean success, PanelRequestEvent event) {
+        record(operation, start, success);
+
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.setSuccess(success);
+            event.setUnsplitNetworkTime(System.nanoTime() - start);
+            event.commit();
+        }
+    }
+
+    static UrlEncodedFormEntity createLoginEntity(String username, String password) throws UnsupportedEncodingException {
+        List<NameValuePair> params = new ArrayList<>(3);
+
+        params.add(new BasicNameValuePair("login", "1"));
+        params.add(new BasicNameValuePair("username", username));
+        params.add(new BasicNameValuePair("password", password));
+
+        return new UrlEncodedFormEntity(params);
+    }
+
+    static UrlEncodedFormEntity createUpdateEntity(DNSRecord dnsRecord) throws UnsupportedEncodingException {
+        List<NameValuePair> params = new ArrayList<>(5);
+
+        params.add(new BasicNameValuePair("process", "edit_record"));
+        params.add(new BasicNameValuePair("record", dnsRecord.getId()));
+        params.add(new BasicNameValuePair("type", dnsRecord.getType()));
+        params.add(new BasicNameValuePair("name", dnsRecord.getName()));
+        params.add(new BasicNameValuePair("content", dnsRecord.getContent()));
+
+        return new UrlEncodedFormEntity(params);
+    }
+
+    public boolean isLoggedIn() {
+        return loggedIn;
+    }
+
     @Override
     public void close() throws IOException {
+        loggedIn = false;
+        activeDomain = null;
 
+        context.getCookieStore().clear();
+
+        if (ownsTransport) {
+            transport.close();
+        }
     }
 }
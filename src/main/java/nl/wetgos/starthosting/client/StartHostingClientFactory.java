@@ -1,22 +1,202 @@
 package nl.wetgos.starthosting.client;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.http.HttpTransport;
+import nl.wetgos.starthosting.http.TokenBucket;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
 
-@RequiredArgsConstructor
-public class StartHostingClientFactory {
+/**
+ * Hands out logged in clients for one account.
+ * <p>
+ * Clients are kept alive in a pool when they are closed, so the next caller can skip the login. Clients that have
+ * been idle for a while are checked before they are handed out and log in again when their session expired. All
+ * clients send their requests over the same {@link HttpTransport}.
+ */
+@Slf4j
+public class StartHostingClientFactory implements Closeable {
+
+    private static final int DEFAULT_MAX_IDLE = 8;
+    private static final long DEFAULT_VALIDATE_AFTER_IDLE = 60 * 1000;
+    private static final long DEFAULT_MAX_IDLE_TIME = 30 * 60 * 1000;
 
     private final String baseUrl;
     private final String user;
     private final String password;
 
+    private final HttpTransport transport;
+    private final boolean ownsTransport;
+
+    private final BlockingDeque<PooledStartHostingClient> idleClients = new LinkedBlockingDeque<>();
+
+    /**
+     * Maximum number of idle clients kept in the pool.
+     */
+    @Setter
+    private int maxIdle = DEFAULT_MAX_IDLE;
+
+    /**
+     * Time (milliseconds) a client can be idle before its session is checked when it is handed out.
+     */
+    @Setter
+    private long validateAfterIdle = DEFAULT_VALIDATE_AFTER_IDLE;
+
+    /**
+     * Time (milliseconds) a client can be idle before it is closed instead of handed out.
+     */
+    @Setter
+    private long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+
+    /**
+     * Parser for the DNS record pages of the panel.
+     */
+    @Setter
+    private DNSRecordParser dnsRecordParser = new StreamingDNSRecordParser();
+
+    /**
+     * Limits the rate of requests of all clients to the panel, or null for no limit. May be shared by factories.
+     */
+    @Setter
+    private TokenBucket rateLimiter;
+
+    /**
+     * Cache of DNS records shared by all clients, or null to always read them from the panel.
+     */
+    @Getter
+    @Setter
+    private DNSRecordCache recordCache;
+
+    private volatile boolean closed;
 
+    public StartHostingClientFactory(String baseUrl, String user, String password) {
+        this(baseUrl, user, password, new HttpTransport(), true);
+    }
+
+    /**
+     * Creates a factory whose clients use a shared transport. The transport is not closed with this factory.
+     *
+     * @param baseUrl
+     * @param user
+     * @param password
+     * @param transport
+     */
+    public StartHostingClientFactory(String baseUrl, String user, String password, HttpTransport transport) {
+        this(baseUrl, user, password, transport, false);
+    }
+
+    private StartHostingClientFactory(String baseUrl, String user, String password, HttpTransport transport, boolean ownsTransport) {
+        this.baseUrl = baseUrl;
+        this.user = user;
+        this.password = password;
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
+    }
+
+    /**
+     * Gets a logged in client from the pool, or creates one if none is available. Closing the client returns it to
+     * the pool.
+     *
+     * @return
+     * @throws IOException
+     */
     public StartHostingClient createClient() throws IOException {
-        StartHostingClient client = new StartHostingClient(baseUrl);
+        if (closed) {
+            throw new IllegalStateException("Client factory closed");
+        }
+
+        PooledStartHostingClient client;
+
+        while ((client = idleClients.pollFirst()) != null) {
+            if (validate(client)) {
+                return client;
+            }
+
+            destroy(client);
+        }
 
-        client.login(user, password);
+        client = new PooledStartHostingClient(baseUrl, transport, dnsRecordParser, this);
+        client.setRateLimiter(rateLimiter);
+        client.setRecordCache(recordCache);
+
+        try {
+            client.login(user, password);
+        } catch (StartHostingClientException e) {
+            destroy(client);
+            throw e;
+        }
 
         return client;
     }
+
+    private boolean validate(PooledStartHostingClient client) {
+        long idle = System.currentTimeMillis() - client.getIdleSince();
+
+        if (idle > maxIdleTime) {
+            log.debug("Discarding client that was idle for {} ms", idle);
+            return false;
+        }
+
+        if (idle <= validateAfterIdle) {
+            return true;
+        }
+
+        if (client.checkSession()) {
+            return true;
+        }
+
+        try {
+            client.renewSession();
+            return true;
+        } catch (StartHostingClientException e) {
+            log.warn("Could not renew session of pooled client", e);
+            return false;
+        }
+    }
+
+    void release(PooledStartHostingClient client) {
+        if (closed || !client.isLoggedIn() || idleClients.size() >= maxIdle) {
+            destroy(client);
+            return;
+        }
+
+        client.setIdleSince(System.currentTimeMillis());
+
+        // most recently used first, so the least recently used ones expire
+        idleClients.offerFirst(client);
+
+        if (closed && idleClients.remove(client)) {
+            destroy(client);
+        }
+    }
+
+    private void destroy(PooledStartHostingClient client) {
+        try {
+            client.destroy();
+        } catch (IOException e) {
+            log.debug("Could not close client", e);
+        }
+    }
+
+    /**
+     * Closes all idle clients. Clients that are still in use are closed when they are returned, but can no longer
+     * send requests if the transport was owned by this factory.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        PooledStartHostingClient client;
+        while ((client = idleClients.pollFirst()) != null) {
+            destroy(client);
+        }
+
+        if (ownsTransport) {
+            transport.close();
+        }
+    }
 }
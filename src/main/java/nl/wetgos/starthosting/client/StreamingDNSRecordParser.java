@@ -0,0 +1,681 @@
+package nl.wetgos.starthosting.client;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Parses DNS records while reading the page, without building a document.
+ * <p>
+ * Only the elements with class {@code dnsrecord} are tracked. Of those, the own text of the 1st (type), 2nd (name) and
+ * 4th (content) child element is collected, and the record ID is taken from the first link that refers to a record.
+ * This gives the same results as {@link JsoupDNSRecordParser}.
+ */
+public class StreamingDNSRecordParser implements DNSRecordParser {
+
+    private static final String ROW_CLASS = "dnsrecord";
+
+    private static final String RECORD_PARAMETER = "record=";
+
+    private static final int TYPE_CHILD = 0;
+    private static final int NAME_CHILD = 1;
+    private static final int CONTENT_CHILD = 3;
+
+    private static final String[] KNOWN_TAGS = {
+            "a", "b", "br", "div", "em", "form", "i", "img", "input", "li", "option", "p", "script", "select",
+            "span", "strong", "style", "table", "tbody", "td", "tfoot", "th", "thead", "tr", "ul", "h1", "h2", "link",
+            "meta", "title", "head", "body", "html"
+    };
+
+    private static final String[] VOID_TAGS = {
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source",
+            "track", "wbr"
+    };
+
+    private static final String[] RAW_TEXT_TAGS = {"script", "style", "textarea", "title"};
+
+    private static final String[] TABLE_SECTION_TAGS = {"table", "tbody", "tfoot", "thead"};
+
+    /**
+     * Start tags that implicitly close an open {@code p}, as in Jsoup.
+     */
+    private static final String[] CLOSES_P_TAGS = {
+            "address", "article", "aside", "blockquote", "center", "dd", "details", "dir", "div", "dl", "dt",
+            "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header",
+            "hgroup", "hr", "li", "menu", "nav", "ol", "p", "pre", "section", "summary", "ul"
+    };
+
+    /**
+     * Elements that an implicitly closed element is not looked for beyond.
+     */
+    private static final String[] SCOPE_TAGS = {
+            "applet", "button", "caption", "html", "marquee", "object", "table", "td", "th"
+    };
+
+    @Override
+    public void parse(InputStream content, String domain, Consumer<DNSRecord> consumer) throws IOException {
+        new PageScanner(new InputStreamReader(content, StandardCharsets.UTF_8), domain, consumer).scan();
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String candidate : values) {
+            if (candidate.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class PageScanner {
+
+        private static final int EOF = -1;
+
+        private final Reader reader;
+        private final String domain;
+        private final Consumer<DNSRecord> consumer;
+
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private int pushback = EOF;
+
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder tagName = new StringBuilder();
+        private final StringBuilder attributeName = new StringBuilder();
+        private final StringBuilder attributeValue = new StringBuilder();
+
+        // state of the current row, depth 0 means outside a row
+        private String[] stack = new String[16];
+        private int depth;
+        private int children;
+        private final StringBuilder[] cells = {new StringBuilder(), new StringBuilder(), new StringBuilder()};
+        private String id;
+
+        // attributes of the current start tag
+        private boolean rowClass;
+        private String href;
+
+        PageScanner(Reader reader, String domain, Consumer<DNSRecord> consumer) {
+            this.reader = reader;
+            this.domain = domain;
+            this.consumer = consumer;
+        }
+
+        void scan() throws IOException {
+            int c;
+
+            while ((c = read()) != EOF) {
+                if (c == '<') {
+                    markup();
+                } else if (depth == 2 && currentCell() != null) {
+                    text.append((char) c);
+                }
+            }
+
+            flushText();
+
+            if (depth > 0) {
+                endRow();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pushback != EOF) {
+                int c = pushback;
+                pushback = EOF;
+                return c;
+            }
+
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+
+                if (limit <= 0) {
+                    limit = 0;
+                    return EOF;
+                }
+            }
+
+            return buffer[position++];
+        }
+
+        private void unread(int c) {
+            pushback = c;
+        }
+
+        private void markup() throws IOException {
+            int c = read();
+
+            if (c == '!') {
+                flushText();
+                declarationOrComment();
+            } else if (c == '?') {
+                flushText();
+                skipUntil('>');
+            } else if (c == '/') {
+                flushText();
+                endTag();
+            } else if (isLetter(c)) {
+                flushText();
+                unread(c);
+                startTag();
+            } else {
+                // not a tag, Jsoup keeps it as text
+                if (depth == 2 && currentCell() != null) {
+                    text.append('<');
+                }
+                unread(c);
+            }
+        }
+
+        private void declarationOrComment() throws IOException {
+            int c = read();
+
+            if (c == '-') {
+                c = read();
+
+                if (c == '-') {
+                    skipComment();
+                    return;
+                }
+            }
+
+            if (c != '>') {
+                skipUntil('>');
+            }
+        }
+
+        private void skipComment() throws IOException {
+            int dashes = 0;
+            int c;
+
+            while ((c = read()) != EOF) {
+                if (c == '>' && dashes >= 2) {
+                    return;
+                }
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+        }
+
+        private void skipUntil(char end) throws IOException {
+            int c;
+            while ((c = read()) != EOF && c != end) {
+                // skip
+            }
+        }
+
+        private void startTag() throws IOException {
+            String name = readTagName();
+
+            rowClass = false;
+            href = null;
+
+            boolean selfClosing = attributes(depth > 0 && id == null && "a".equals(name));
+
+            if (depth == 0) {
+                if (rowClass && !selfClosing && !contains(VOID_TAGS, name)) {
+                    startRow(name);
+                }
+            } else {
+                startTagInRow(name, selfClosing);
+            }
+
+            if (!selfClosing && contains(RAW_TEXT_TAGS, name)) {
+                skipRawText(name);
+
+                if (depth > 1 && name.equals(stack[depth - 1])) {
+                    // the end tag was consumed with the raw text
+                    depth--;
+                }
+            }
+        }
+
+        private void startRow(String name) {
+            stack[0] = name;
+            depth = 1;
+            children = 0;
+            id = null;
+
+            for (StringBuilder cell : cells) {
+                cell.setLength(0);
+            }
+        }
+
+        private void startTagInRow(String name, boolean selfClosing) {
+            String rowTag = stack[0];
+
+            if ("tr".equals(rowTag)) {
+                if ("tr".equals(name)) {
+                    // a new table row implicitly ends the current one
+                    endRow();
+
+                    if (rowClass && !selfClosing) {
+                        startRow(name);
+                    }
+                    return;
+                }
+
+                if (("td".equals(name) || "th".equals(name)) && depth > 1) {
+                    // a new cell implicitly ends the current one
+                    depth = 1;
+                }
+            }
+
+            if (href != null) {
+                id = findRecordId(href);
+            }
+
+            closeImplied(name);
+
+            if (depth == 0) {
+                // the row itself was closed implicitly
+                endRow();
+
+                if (rowClass && !selfClosing && !contains(VOID_TAGS, name)) {
+                    startRow(name);
+                }
+                return;
+            }
+
+            if (contains(VOID_TAGS, name)) {
+                if ("br".equals(name) && depth == 2) {
+                    StringBuilder cell = currentCell();
+                    if (cell != null && !endsWithWhitespace(cell)) {
+                        cell.append(' ');
+                    }
+                }
+                return;
+            }
+
+            if (selfClosing) {
+                return;
+            }
+
+            if (depth == 1) {
+                children++;
+            }
+
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+
+            stack[depth++] = name;
+        }
+
+        /**
+         * Closes the elements that the given start tag ends implicitly: an open {@code p} before a block, and an open
+         * {@code li}, {@code dd} or {@code dt} before another one.
+         */
+        private void closeImplied(String name) {
+            if (contains(CLOSES_P_TAGS, name)) {
+                closeOpen("p");
+            }
+
+            if ("li".equals(name)) {
+                closeOpen("li", "ol", "ul");
+            } else if ("dd".equals(name) || "dt".equals(name)) {
+                closeOpen("dd", "dl");
+                closeOpen("dt", "dl");
+            }
+        }
+
+        /**
+         * Closes the innermost open element with the given name, unless a scope element or one of the given
+         * boundaries comes first.
+         */
+        private void closeOpen(String name, String... boundaries) {
+            int i = findOpen(name, boundaries);
+
+            if (i >= 0) {
+                depth = i;
+            }
+        }
+
+        private int findOpen(String name, String... boundaries) {
+            for (int i = depth - 1; i >= 0; i--) {
+                if (stack[i].equals(name)) {
+                    return i;
+                }
+
+                if (contains(SCOPE_TAGS, stack[i]) || contains(boundaries, stack[i])) {
+                    return -1;
+                }
+            }
+
+            return -1;
+        }
+
+        private void endTag() throws IOException {
+            String name = readTagName();
+
+            skipUntil('>');
+
+            if (depth == 0) {
+                return;
+            }
+
+            for (int i = depth - 1; i >= 0; i--) {
+                if (stack[i].equals(name)) {
+                    depth = i;
+
+                    if (depth == 0) {
+                        endRow();
+                    }
+                    return;
+                }
+            }
+
+            if ("p".equals(name) && depth == 1) {
+                // Jsoup turns a stray end tag into an empty paragraph
+                children++;
+                return;
+            }
+
+            if ("tr".equals(stack[0]) && contains(TABLE_SECTION_TAGS, name)) {
+                endRow();
+            }
+        }
+
+        private void endRow() {
+            depth = 0;
+
+            if (children <= CONTENT_CHILD) {
+                throw new IllegalStateException("Expected at least " + (CONTENT_CHILD + 1)
+                        + " child elements in DNS record, but got: " + children);
+            }
+
+            String type = cells[0].toString().trim().toUpperCase();
+
+            String name = cells[1].toString().trim();
+            name = name.toLowerCase().replace("." + domain, "");
+            name = name.replace(domain, "");
+
+            String content = cells[2].toString().trim();
+
+            consumer.accept(new DNSRecord(id, type, name, content));
+        }
+
+        private StringBuilder currentCell() {
+            switch (children - 1) {
+                case TYPE_CHILD:
+                    return cells[0];
+                case NAME_CHILD:
+                    return cells[1];
+                case CONTENT_CHILD:
+                    return cells[2];
+                default:
+                    return null;
+            }
+        }
+
+        private void flushText() {
+            if (text.length() == 0) {
+                return;
+            }
+
+            StringBuilder cell = depth == 2 ? currentCell() : null;
+
+            if (cell != null) {
+                String value = text.toString();
+
+                if (value.indexOf('&') >= 0) {
+                    value = unescape(value, false);
+                }
+
+                StringUtil.appendNormalisedWhitespace(cell, value, endsWithWhitespace(cell));
+            }
+
+            text.setLength(0);
+        }
+
+        private static boolean endsWithWhitespace(StringBuilder builder) {
+            return builder.length() > 0 && builder.charAt(builder.length() - 1) == ' ';
+        }
+
+        private String readTagName() throws IOException {
+            tagName.setLength(0);
+
+            int c;
+            while ((c = read()) != EOF && !isWhitespace(c) && c != '>' && c != '/') {
+                tagName.append(Character.toLowerCase((char) c));
+            }
+            unread(c);
+
+            for (String knownTag : KNOWN_TAGS) {
+                if (equals(tagName, knownTag)) {
+                    return knownTag;
+                }
+            }
+
+            return tagName.toString();
+        }
+
+        /**
+         * Reads the attributes of a start tag up to and including the closing bracket.
+         *
+         * @return whether the tag is self-closing
+         */
+        private boolean attributes(boolean wantHref) throws IOException {
+            boolean selfClosing = false;
+
+            while (true) {
+                int c = read();
+
+                if (c == EOF || c == '>') {
+                    return selfClosing;
+                }
+
+                if (isWhitespace(c)) {
+                    continue;
+                }
+
+                if (c == '/') {
+                    selfClosing = true;
+                    continue;
+                }
+
+                selfClosing = false;
+
+                attributeName.setLength(0);
+                attributeName.append(Character.toLowerCase((char) c));
+
+                while ((c = read()) != EOF && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+                    attributeName.append(Character.toLowerCase((char) c));
+                }
+
+                while (isWhitespace(c)) {
+                    c = read();
+                }
+
+                attributeValue.setLength(0);
+
+                if (c == '=') {
+                    readAttributeValue();
+                } else {
+                    unread(c);
+                }
+
+                if (equals(attributeName, "class")) {
+                    rowClass = hasRowClass(attributeValue);
+                } else if (wantHref && equals(attributeName, "href")) {
+                    href = attributeValue.toString();
+                }
+            }
+        }
+
+        private void readAttributeValue() throws IOException {
+            int c = read();
+
+            while (isWhitespace(c)) {
+                c = read();
+            }
+
+            if (c == '"' || c == '\'') {
+                int quote = c;
+
+                while ((c = read()) != EOF && c != quote) {
+                    attributeValue.append((char) c);
+                }
+            } else {
+                while (c != EOF && !isWhitespace(c) && c != '>') {
+                    attributeValue.append((char) c);
+                    c = read();
+                }
+                unread(c);
+            }
+        }
+
+        private void skipRawText(String name) throws IOException {
+            int c;
+
+            while ((c = read()) != EOF) {
+                if (c != '<') {
+                    continue;
+                }
+
+                c = read();
+                if (c != '/') {
+                    unread(c);
+                    continue;
+                }
+
+                if (readTagName().equals(name)) {
+                    skipUntil('>');
+                    return;
+                }
+            }
+        }
+
+        private static String findRecordId(String href) {
+            String id = findRecordParameter(href);
+
+            if (id == null && href.indexOf('&') >= 0) {
+                // the parameter itself may contain entities
+                id = findRecordParameter(unescape(href, true));
+            }
+
+            return id;
+        }
+
+        /**
+         * Decodes the common entities directly and leaves anything else to Jsoup.
+         */
+        private static String unescape(String value, boolean inAttribute) {
+            StringBuilder result = new StringBuilder(value.length());
+
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+
+                if (c != '&') {
+                    result.append(c);
+                    continue;
+                }
+
+                int end = value.indexOf(';', i);
+                String entity = end > i ? value.substring(i + 1, end) : "";
+
+                switch (entity) {
+                    case "amp":
+                        result.append('&');
+                        break;
+                    case "lt":
+                        result.append('<');
+                        break;
+                    case "gt":
+                        result.append('>');
+                        break;
+                    case "quot":
+                        result.append('"');
+                        break;
+                    case "apos":
+                        result.append('\'');
+                        break;
+                    case "nbsp":
+                        result.append('\u00a0');
+                        break;
+                    default:
+                        return Parser.unescapeEntities(value, inAttribute);
+                }
+
+                i = end;
+            }
+
+            return result.toString();
+        }
+
+        private static String findRecordParameter(String href) {
+            int from = 0;
+            int index;
+
+            while ((index = href.indexOf(RECORD_PARAMETER, from)) >= 0) {
+                int start = index + RECORD_PARAMETER.length();
+                int end = start;
+
+                while (end < href.length() && href.charAt(end) >= '0' && href.charAt(end) <= '9') {
+                    end++;
+                }
+
+                if (end > start) {
+                    return href.substring(start, end);
+                }
+
+                from = start;
+            }
+
+            return null;
+        }
+
+        private static boolean hasRowClass(CharSequence classes) {
+            int length = classes.length();
+            int start = 0;
+
+            while (start < length) {
+                while (start < length && isWhitespace(classes.charAt(start))) {
+                    start++;
+                }
+
+                int end = start;
+                while (end < length && !isWhitespace(classes.charAt(end))) {
+                    end++;
+                }
+
+                if (end - start == ROW_CLASS.length() && regionMatches(classes, start, ROW_CLASS)) {
+                    return true;
+                }
+
+                start = end;
+            }
+
+            return false;
+        }
+
+        private static boolean regionMatches(CharSequence value, int offset, String other) {
+            for (int i = 0; i < other.length(); i++) {
+                if (Character.toLowerCase(value.charAt(offset + i)) != other.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean equals(CharSequence value, String other) {
+            return value.length() == other.length() && regionMatches(value, 0, other);
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        }
+
+        private static boolean isLetter(int c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+    }
+}
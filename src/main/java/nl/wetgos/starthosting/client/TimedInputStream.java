@@ -0,0 +1,57 @@
+package nl.wetgos.starthosting.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read and the time spent waiting for them, so the time of a streaming parser can be split in
+ * network and parse time.
+ */
+class TimedInputStream extends FilterInputStream {
+
+    private long bytesRead;
+    private long readNanos;
+
+    TimedInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+
+        int read = super.read();
+
+        readNanos += System.nanoTime() - start;
+
+        if (read != -1) {
+            bytesRead++;
+        }
+
+        return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+
+        int read = super.read(b, off, len);
+
+        readNanos += System.nanoTime() - start;
+
+        if (read > 0) {
+            bytesRead += read;
+        }
+
+        return read;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getReadNanos() {
+        return readNanos;
+    }
+}
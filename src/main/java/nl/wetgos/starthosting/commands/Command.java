@@ -27,4 +27,14 @@ public interface Command {
      */
     String getDescription();
 
+    /**
+     * Whether this command works on the account given with -user and -password. Commands that read their accounts
+     * from elsewhere return false.
+     *
+     * @return
+     */
+    default boolean isAccountRequired() {
+        return true;
+    }
+
 }
@@ -1,15 +1,40 @@
 package nl.wetgos.starthosting.commands;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import nl.wetgos.starthosting.client.StartHostingClientFactory;
+import nl.wetgos.starthosting.http.HttpTransport;
 import org.apache.commons.cli.CommandLine;
 
+import java.util.function.BiFunction;
+
 @RequiredArgsConstructor
 @Getter
 public class CommandContext {
 
     private final CommandLine commandLine;
+
+    /**
+     * Client factory for the account given on the command line, or null if the command does not require one.
+     */
     private final StartHostingClientFactory clientFactory;
 
+    private final HttpTransport httpTransport;
+
+    @Getter(AccessLevel.NONE)
+    private final BiFunction<String, String, StartHostingClientFactory> clientFactoryCreator;
+
+    /**
+     * Creates a client factory for another account, with the same panel, parser and transport as the factory of
+     * the command line account. The caller closes it.
+     *
+     * @param user
+     * @param password
+     * @return
+     */
+    public StartHostingClientFactory createClientFactory(String user, String password) {
+        return clientFactoryCreator.apply(user, password);
+    }
+
 }
@@ -4,7 +4,6 @@ import lombok.Cleanup;
 import lombok.extern.slf4j.Slf4j;
 import nl.wetgos.starthosting.client.DNSRecord;
 import nl.wetgos.starthosting.client.StartHostingClient;
-import nl.wetgos.starthosting.commands.Command;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
@@ -19,9 +18,9 @@ public class DNSCommand implements Command {
         CommandLine commandLine = context.getCommandLine();
 
         String domain = commandLine.getOptionValue("domain");
-        String type = commandLine.getOptionValue("type");
-        String name = commandLine.getOptionValue("name");
+        RecordSelector selector = RecordSelector.compile(commandLine.getOptionValue("type"), commandLine.getOptionValue("name"));
         String value = commandLine.getOptionValue("value");
+        boolean dryRun = commandLine.hasOption("dryrun");
 
         @Cleanup
         StartHostingClient client = context.getClientFactory().createClient();
@@ -30,31 +29,22 @@ public class DNSCommand implements Command {
 
         List<DNSRecord> dnsRecords = client.getDNSRecords();
 
-        dnsRecords.forEach(dnsRecord -> {
-            if (type != null && !type.equalsIgnoreCase(dnsRecord.getType())) {
-                return;
-            }
+        UpdatePlan plan = UpdatePlan.create(domain, dnsRecords, selector, value);
 
-            if (name != null && !name.equalsIgnoreCase(dnsRecord.getName())) {
-                return;
-            }
-
-            if (dnsRecord.getId() != null) {
-                dnsRecord.setContent(value);
-
-                client.updateDNSRecord(dnsRecord);
-            } else {
-                log.warn("Ignoring virtual DNS record: {}", dnsRecord);
-            }
-        });
+        if (dryRun) {
+            plan.print(System.out);
+        } else {
+            plan.apply(client);
+        }
     }
 
     @Override
     public void configureOptions(Options options) {
         options.addOption(Option.builder("domain").hasArg().required().desc("Domain name").build());
-        options.addOption(Option.builder("type").hasArg().desc("Record type").build());
-        options.addOption(Option.builder("name").hasArg().desc("Name").build());
+        options.addOption(Option.builder("type").hasArg().desc("Record type(s), i.e. A,AAAA (optional)").build());
+        options.addOption(Option.builder("name").hasArg().desc("Name(s), globs after glob: (i.e. glob:*.dev) or regular expressions between slashes; @ is the domain itself (optional)").build());
         options.addOption(Option.builder("value").hasArg().desc("Value").build());
+        options.addOption(Option.builder("dryrun").desc("Print the changes instead of applying them").build());
     }
 
     @Override
@@ -0,0 +1,13 @@
+package nl.wetgos.starthosting.commands;
+
+/**
+ * Thrown by a {@link ParallelDomainExecutor.DomainTask} that deliberately left a domain alone, i.e. because its work
+ * was superseded. The domain counts as skipped instead of succeeded or failed.
+ */
+public class DomainSkippedException extends RuntimeException {
+
+    public DomainSkippedException(String message) {
+        // skipping is expected, so no stack trace is needed
+        super(message, null, false, false);
+    }
+}
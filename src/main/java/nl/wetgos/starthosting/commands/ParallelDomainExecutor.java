@@ -0,0 +1,283 @@
+package nl.wetgos.starthosting.commands;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.StartHostingClient;
+import nl.wetgos.starthosting.client.StartHostingClientFactory;
+import nl.wetgos.starthosting.metrics.jfr.Tracing;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a task for a number of domains using a bounded number of workers.
+ * <p>
+ * Each worker logs in with its own {@link StartHostingClient}, because the active domain is state of the panel
+ * session. Workers take domains from a shared queue until it is empty, so slow domains do not hold up the others.
+ */
+@Slf4j
+public class ParallelDomainExecutor {
+
+    private final StartHostingClientFactory clientFactory;
+    private final int concurrency;
+    private final ExecutorService sharedExecutorService;
+
+    public ParallelDomainExecutor(StartHostingClientFactory clientFactory, int concurrency) {
+        this(clientFactory, concurrency, null);
+    }
+
+    /**
+     * Creates an executor whose workers run on an executor service shared with other accounts. The concurrency
+     * limits the number of threads of that service this account can occupy at the same time.
+     *
+     * @param clientFactory
+     * @param concurrency
+     * @param sharedExecutorService executor service to run the workers on, or null to start threads per execution
+     */
+    public ParallelDomainExecutor(StartHostingClientFactory clientFactory, int concurrency, ExecutorService sharedExecutorService) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+
+        this.clientFactory = clientFactory;
+        this.concurrency = concurrency;
+        this.sharedExecutorService = sharedExecutorService;
+    }
+
+    public Summary execute(Collection<String> domains, DomainTask task) throws InterruptedException {
+        return start(domains, task).await();
+    }
+
+    /**
+     * Starts running a task for a number of domains without waiting for it, so executions of several accounts can
+     * run side by side.
+     *
+     * @param domains
+     * @param task
+     * @return
+     */
+    public Execution start(Collection<String> domains, DomainTask task) {
+        Queue<String> queue = new ConcurrentLinkedQueue<>(domains);
+
+        int workers = Math.max(1, Math.min(concurrency, domains.size()));
+
+        Summary summary = new Summary(domains.size(), workers);
+
+        ExecutorService executorService = sharedExecutorService != null
+                ? sharedExecutorService
+                : Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+
+        List<Future<?>> futures = new ArrayList<>(workers);
+
+        // the workers, including their logins, belong to the update cycle of the caller
+        long cycleId = Tracing.getCycle();
+
+        try {
+            for (int i = 0; i < workers; i++) {
+                futures.add(executorService.submit(() -> {
+                    Tracing.Scope scope = Tracing.enter(cycleId);
+                    try {
+                        work(queue, task, summary);
+                    } finally {
+                        scope.close();
+                    }
+                    return null;
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            log.error("Could not start workers", e);
+        }
+
+        return new Execution(queue, summary, futures, executorService != sharedExecutorService ? executorService : null);
+    }
+
+    private void work(Queue<String> queue, DomainTask task, Summary summary) throws Exception {
+        long loginStart = System.nanoTime();
+
+        try (StartHostingClient client = clientFactory.createClient()) {
+            summary.loginNanos.compareAndSet(0, System.nanoTime() - loginStart);
+
+            String domain;
+            while ((domain = queue.poll()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+
+                long domainStart = System.nanoTime();
+
+                try {
+                    task.run(client, domain);
+
+                    summary.succeeded.incrementAndGet();
+                } catch (DomainSkippedException e) {
+                    log.debug("Skipped domain {}: {}", domain, e.getMessage());
+
+                    summary.skipped.incrementAndGet();
+                } catch (Exception e) {
+                    log.error("Could not process domain " + domain, e);
+
+                    summary.failed.incrementAndGet();
+                } finally {
+                    summary.domainNanos.addAndGet(System.nanoTime() - domainStart);
+                }
+            }
+        }
+    }
+
+    /**
+     * Running execution of a task for a number of domains.
+     */
+    public static class Execution {
+
+        private final Queue<String> queue;
+        private final Summary summary;
+        private final List<Future<?>> futures;
+        private final ExecutorService ownExecutorService;
+
+        private final long start = System.nanoTime();
+
+        Execution(Queue<String> queue, Summary summary, List<Future<?>> futures, ExecutorService ownExecutorService) {
+            this.queue = queue;
+            this.summary = summary;
+            this.futures = futures;
+            this.ownExecutorService = ownExecutorService;
+        }
+
+        /**
+         * Waits until all domains have been processed.
+         *
+         * @return
+         * @throws InterruptedException
+         */
+        public Summary await() throws InterruptedException {
+            try {
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        log.error("Worker failed", e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw e;
+            } finally {
+                if (ownExecutorService != null) {
+                    ownExecutorService.shutdownNow();
+                }
+            }
+
+            // domains left behind when every worker failed to log in
+            while (queue.poll() != null) {
+                summary.failed.incrementAndGet();
+            }
+
+            summary.wallClockNanos = System.nanoTime() - start;
+
+            return summary;
+        }
+    }
+
+    @FunctionalInterface
+    public interface DomainTask {
+
+        /**
+         * Runs this task for a domain, using a client that is logged in and owned by the calling worker.
+         *
+         * @param client
+         * @param domain
+         * @throws Exception
+         */
+        void run(StartHostingClient client, String domain) throws Exception;
+
+    }
+
+    public static class Summary {
+
+        @Getter
+        private final int domains;
+        @Getter
+        private final int workers;
+
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private final AtomicLong loginNanos = new AtomicLong();
+        private final AtomicLong domainNanos = new AtomicLong();
+
+        private volatile long wallClockNanos;
+
+        Summary(int domains, int workers) {
+            this.domains = domains;
+            this.workers = workers;
+        }
+
+        public int getSucceeded() {
+            return succeeded.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        /**
+         * Checks whether every domain succeeded, i.e. none failed or was skipped.
+         *
+         * @return
+         */
+        public boolean isComplete() {
+            return failed.get() == 0 && skipped.get() == 0;
+        }
+
+        public long getWallClockMillis() {
+            return wallClockNanos / 1000000;
+        }
+
+        /**
+         * Estimates how long the same work would have taken on a single client: one login followed by every domain.
+         *
+         * @return
+         */
+        public long getSequentialMillis() {
+            return (loginNanos.get() + domainNanos.get()) / 1000000;
+        }
+
+        @Override
+        public String toString() {
+            long wallClockMillis = getWallClockMillis();
+            long sequentialMillis = getSequentialMillis();
+
+            return String.format("%d domain(s), %d failed, %d skipped, %d worker(s): %d ms (sequential estimate %d ms, %.1fx)",
+                    domains, failed.get(), skipped.get(), workers, wallClockMillis, sequentialMillis,
+                    wallClockMillis > 0 ? (double) sequentialMillis / wallClockMillis : 1.0);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "domain-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
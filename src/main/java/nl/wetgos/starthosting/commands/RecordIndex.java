@@ -0,0 +1,84 @@
+package nl.wetgos.starthosting.commands;
+
+import nl.wetgos.starthosting.client.DNSRecord;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The DNS records of a zone indexed by type and lower case name.
+ * <p>
+ * A selector with exact types and names finds its records with one lookup per type and name, and a selector with
+ * name patterns tests every distinct name once instead of every record. Selected records keep the order of the zone.
+ */
+public class RecordIndex {
+
+    private final List<DNSRecord> records;
+
+    /**
+     * Positions of the records by type and name.
+     */
+    private final Map<String, Map<String, BitSet>> positions = new HashMap<>();
+
+    public RecordIndex(List<DNSRecord> records) {
+        this.records = records;
+
+        for (int i = 0; i < records.size(); i++) {
+            DNSRecord dnsRecord = records.get(i);
+
+            positions.computeIfAbsent(RecordSelector.normalizeType(dnsRecord.getType()), type -> new HashMap<>())
+                    .computeIfAbsent(RecordSelector.normalizeName(dnsRecord.getName()), name -> new BitSet())
+                    .set(i);
+        }
+    }
+
+    public List<DNSRecord> select(RecordSelector selector) {
+        BitSet selected = new BitSet(records.size());
+
+        if (selector.getTypes() == null) {
+            positions.values().forEach(names -> select(names, selector, selected));
+        } else {
+            for (String type : selector.getTypes()) {
+                Map<String, BitSet> names = positions.get(type);
+
+                if (names != null) {
+                    select(names, selector, selected);
+                }
+            }
+        }
+
+        List<DNSRecord> result = new ArrayList<>(selected.cardinality());
+
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            result.add(records.get(i));
+        }
+
+        return result;
+    }
+
+    private static void select(Map<String, BitSet> names, RecordSelector selector, BitSet selected) {
+        if (selector.getNames() == null) {
+            names.values().forEach(selected::or);
+            return;
+        }
+
+        for (String name : selector.getNames()) {
+            BitSet bitSet = names.get(name);
+
+            if (bitSet != null) {
+                selected.or(bitSet);
+            }
+        }
+
+        if (selector.hasNamePatterns()) {
+            for (Map.Entry<String, BitSet> entry : names.entrySet()) {
+                if (selector.matchesNamePattern(entry.getKey())) {
+                    selected.or(entry.getValue());
+                }
+            }
+        }
+    }
+}
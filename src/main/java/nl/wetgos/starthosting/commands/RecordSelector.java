@@ -0,0 +1,231 @@
+package nl.wetgos.starthosting.commands;
+
+import nl.wetgos.starthosting.client.DNSRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects DNS records by type and name, compiled once from the {@code -type} and {@code -name} options.
+ * <p>
+ * Several types and names can be given. Types are matched exactly. Names are exact ({@code www}, {@code @} for the
+ * domain itself, {@code *} or {@code *.dev} for wildcard records), globs after {@value #GLOB_PREFIX}
+ * ({@code glob:*.dev}, {@code glob:host?}) or regular expressions between slashes ({@code /^host[0-9]+$/}). A record
+ * is selected when it matches one of the types and one of the names, ignoring case. No types or no names match any
+ * type or name.
+ */
+public final class RecordSelector {
+
+    public static final RecordSelector ALL = new RecordSelector(null, null, Collections.emptyList());
+
+    /**
+     * Marks a name as a glob, because {@code *} is also the label of wildcard records.
+     */
+    static final String GLOB_PREFIX = "glob:";
+
+    /**
+     * Upper case types, or null for any type.
+     */
+    private final Set<String> types;
+
+    /**
+     * Lower case exact names, or null for any name.
+     */
+    private final Set<String> names;
+
+    private final List<Pattern> namePatterns;
+
+    private RecordSelector(Set<String> types, Set<String> names, List<Pattern> namePatterns) {
+        this.types = types;
+        this.names = names;
+        this.namePatterns = namePatterns;
+    }
+
+    /**
+     * Compiles a selector from comma separated types and names, as given with {@code -type} and {@code -name} or in
+     * the daemon config. Commas inside a regular expression do not separate names.
+     *
+     * @param types types, or null for any type
+     * @param names names, globs or regular expressions, or null for any name
+     * @return
+     * @throws IllegalArgumentException if a name has {@code *} or {@code ?} outside a wildcard label without being
+     *                                  marked as a glob
+     */
+    public static RecordSelector compile(String types, String names) {
+        Set<String> typeSet = null;
+
+        if (types != null && !types.trim().isEmpty()) {
+            typeSet = new LinkedHashSet<>();
+
+            for (String type : types.split(",")) {
+                typeSet.add(normalizeType(type.trim()));
+            }
+        }
+
+        if (names == null || names.trim().isEmpty()) {
+            return new RecordSelector(typeSet, null, Collections.emptyList());
+        }
+
+        Set<String> nameSet = new LinkedHashSet<>();
+        List<Pattern> patterns = new ArrayList<>();
+
+        for (String name : splitNames(names)) {
+            if (name.length() > 1 && name.startsWith("/") && name.endsWith("/")) {
+                patterns.add(Pattern.compile(name.substring(1, name.length() - 1), Pattern.CASE_INSENSITIVE));
+            } else if (name.regionMatches(true, 0, GLOB_PREFIX, 0, GLOB_PREFIX.length())) {
+                String glob = name.substring(GLOB_PREFIX.length());
+                patterns.add(Pattern.compile(globToRegex(glob), Pattern.CASE_INSENSITIVE));
+            } else if (isWildcardOrPlain(name)) {
+                nameSet.add(normalizeName(name));
+            } else {
+                throw new IllegalArgumentException("Ambiguous name " + name + ", use " + GLOB_PREFIX + name
+                        + " for a glob");
+            }
+        }
+
+        return new RecordSelector(typeSet, nameSet, patterns);
+    }
+
+    /**
+     * Creates a selector for one type and name, matched exactly. A name like {@code *} is the name of a wildcard
+     * record here, not a glob.
+     *
+     * @param type type, or null for any type
+     * @param name name, or null for any name
+     * @return
+     */
+    public static RecordSelector exact(String type, String name) {
+        return new RecordSelector(
+                type != null ? Collections.singleton(normalizeType(type)) : null,
+                name != null ? Collections.singleton(normalizeName(name)) : null,
+                Collections.emptyList());
+    }
+
+    public boolean matches(DNSRecord dnsRecord) {
+        return matchesType(normalizeType(dnsRecord.getType())) && matchesName(normalizeName(dnsRecord.getName()));
+    }
+
+    /**
+     * @param type upper case type
+     * @return
+     */
+    boolean matchesType(String type) {
+        return types == null || types.contains(type);
+    }
+
+    /**
+     * @param name lower case name
+     * @return
+     */
+    boolean matchesName(String name) {
+        return names == null || names.contains(name) || matchesNamePattern(name);
+    }
+
+    boolean matchesNamePattern(String name) {
+        for (Pattern pattern : namePatterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return upper case types, or null for any type
+     */
+    Set<String> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return lower case exact names, or null for any name
+     */
+    Set<String> getNames() {
+        return names;
+    }
+
+    boolean hasNamePatterns() {
+        return !namePatterns.isEmpty();
+    }
+
+    static String normalizeType(String type) {
+        return type == null ? "" : type.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * The panel shows the domain itself with an empty name, which is written as {@code @}.
+     */
+    static String normalizeName(String name) {
+        return name == null || name.equals("@") ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Checks whether a name has no {@code *} or {@code ?}, other than a wildcard label {@code *} at the start.
+     */
+    private static boolean isWildcardOrPlain(String name) {
+        String rest = name.equals("*") ? "" : name.startsWith("*.") ? name.substring(2) : name;
+
+        return rest.indexOf('*') < 0 && rest.indexOf('?') < 0;
+    }
+
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+
+        return regex.toString();
+    }
+
+    static List<String> splitNames(String names) {
+        List<String> result = new ArrayList<>();
+
+        int start = 0;
+        boolean regex = false;
+
+        for (int i = 0; i <= names.length(); i++) {
+            char c = i < names.length() ? names.charAt(i) : ',';
+
+            if (c == '/' && (regex || names.substring(start, i).trim().isEmpty())) {
+                regex = !regex;
+            } else if (c == ',' && (!regex || i == names.length())) {
+                String name = names.substring(start, i).trim();
+
+                if (!name.isEmpty()) {
+                    result.add(name);
+                }
+
+                start = i + 1;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "types " + (types != null ? types : "*") + ", names " + (names != null ? names : "*")
+                + (namePatterns.isEmpty() ? "" : " " + namePatterns);
+    }
+}
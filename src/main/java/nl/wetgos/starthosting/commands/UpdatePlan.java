@@ -0,0 +1,151 @@
+package nl.wetgos.starthosting.commands;
+
+import lombok.Getter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.BatchUpdateResult;
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.client.StartHostingClient;
+import nl.wetgos.starthosting.client.StartHostingClientException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal set of changes that brings the matching DNS records of a domain to a desired value.
+ * <p>
+ * Records that already have the desired value are left out, so applying the plan only writes actual differences.
+ */
+@Slf4j
+@Getter
+public class UpdatePlan {
+
+    private final String domain;
+
+    private final List<Change> changes = new ArrayList<>();
+    private final List<DNSRecord> unchanged = new ArrayList<>();
+    private final List<DNSRecord> ignored = new ArrayList<>();
+
+    private UpdatePlan(String domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * Creates a plan that sets the content of the records with the given type and name to the given value.
+     *
+     * @param domain  domain the records belong to
+     * @param records current records of the domain
+     * @param type    record type to match, or null to match any type
+     * @param name    name to match exactly, or null to match any name
+     * @param value   desired content, or null to change nothing
+     * @return
+     */
+    public static UpdatePlan create(String domain, List<DNSRecord> records, String type, String name, String value) {
+        return create(domain, records, RecordSelector.exact(type, name), value);
+    }
+
+    /**
+     * Creates a plan that sets the content of the records selected by the given selector to the given value.
+     *
+     * @param domain   domain the records belong to
+     * @param records  current records of the domain
+     * @param selector selects the records to update
+     * @param value    desired content, or null to change nothing
+     * @return
+     */
+    public static UpdatePlan create(String domain, List<DNSRecord> records, RecordSelector selector, String value) {
+        UpdatePlan plan = new UpdatePlan(domain);
+
+        for (DNSRecord dnsRecord : new RecordIndex(records).select(selector)) {
+            plan.add(dnsRecord, value);
+        }
+
+        return plan;
+    }
+
+    void add(DNSRecord dnsRecord, String value) {
+        if (dnsRecord.getId() == null) {
+            ignored.add(dnsRecord);
+        } else if (value == null || StartHostingClient.isSameContent(dnsRecord.getType(), value, dnsRecord.getContent())) {
+            unchanged.add(dnsRecord);
+        } else {
+            changes.add(new Change(dnsRecord,
+                    new DNSRecord(dnsRecord.getId(), dnsRecord.getType(), dnsRecord.getName(), value)));
+        }
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Gets the number of writes that were left out because the record already had the desired value.
+     *
+     * @return
+     */
+    public int getWritesSaved() {
+        return unchanged.size();
+    }
+
+    /**
+     * Writes the changes of this plan. The domain must be active on the client.
+     *
+     * @param client
+     * @return
+     * @throws StartHostingClientException if any of the changes failed
+     */
+    public BatchUpdateResult apply(StartHostingClient client) {
+        ignored.forEach(dnsRecord -> log.warn("Ignoring virtual DNS record: {}", dnsRecord));
+
+        List<DNSRecord> newRecords = new ArrayList<>(changes.size());
+        changes.forEach(change -> newRecords.add(change.getNewRecord()));
+
+        BatchUpdateResult result = client.updateDNSRecords(newRecords);
+
+        log.info("Updated {} DNS record(s) of {}, {} already up to date", result.getSucceeded(), domain, unchanged.size());
+
+        if (result.getFailed() > 0) {
+            throw new StartHostingClientException("Could not update " + result.getFailed() + " of " + changes.size()
+                    + " DNS record(s) of " + domain);
+        }
+
+        return result;
+    }
+
+    /**
+     * Prints this plan without applying it.
+     *
+     * @param out
+     */
+    public void print(PrintStream out) {
+        out.printf("%s: %d change(s), %d unchanged, %d ignored%n", domain, changes.size(), unchanged.size(), ignored.size());
+
+        for (Change change : changes) {
+            DNSRecord newRecord = change.getNewRecord();
+            out.printf("  ~ %-6s %-30s %s -> %s%n", newRecord.getType(), displayName(newRecord),
+                    change.getOldRecord().getContent(), newRecord.getContent());
+        }
+
+        for (DNSRecord dnsRecord : unchanged) {
+            out.printf("  = %-6s %-30s %s%n", dnsRecord.getType(), displayName(dnsRecord), dnsRecord.getContent());
+        }
+
+        for (DNSRecord dnsRecord : ignored) {
+            out.printf("  ! %-6s %-30s %s (virtual)%n", dnsRecord.getType(), displayName(dnsRecord), dnsRecord.getContent());
+        }
+    }
+
+    private static String displayName(DNSRecord dnsRecord) {
+        String name = dnsRecord.getName();
+        return name == null || name.isEmpty() ? "@" : name;
+    }
+
+    @Value
+    public static class Change {
+
+        private final DNSRecord oldRecord;
+        private final DNSRecord newRecord;
+
+    }
+}
@@ -0,0 +1,204 @@
+package nl.wetgos.starthosting.commands.bulk;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.BatchUpdateResult;
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.client.StartHostingClient;
+import nl.wetgos.starthosting.client.StartHostingClientException;
+import nl.wetgos.starthosting.commands.Command;
+import nl.wetgos.starthosting.commands.CommandContext;
+import nl.wetgos.starthosting.commands.ParallelDomainExecutor;
+import nl.wetgos.starthosting.commands.UpdatePlan;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Applies a file of record edits across many domains.
+ * <p>
+ * The edits are grouped by domain, so every domain is activated and its records are fetched once. All changes of a
+ * domain are then written in one batch, and domains are processed in parallel. Edits of one domain that select the
+ * same record are not applied, because only one of them could win.
+ */
+@Slf4j
+public class BulkCommand implements Command {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    @Override
+    public void run(CommandContext context) throws Exception {
+        CommandLine commandLine = context.getCommandLine();
+
+        String file = commandLine.getOptionValue("file");
+        boolean dryRun = commandLine.hasOption("dryrun");
+        int concurrency = Integer.parseInt(commandLine.getOptionValue("concurrency", String.valueOf(DEFAULT_CONCURRENCY)));
+
+        RecordEditReader.Format format = commandLine.hasOption("format")
+                ? RecordEditReader.Format.valueOf(commandLine.getOptionValue("format").toUpperCase(Locale.ROOT))
+                : RecordEditReader.Format.forFileName(file);
+
+        List<RecordEdit> edits;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            edits = new RecordEditReader(format).read(reader);
+        }
+
+        Map<String, List<RecordEdit>> editsByDomain = new LinkedHashMap<>();
+        for (RecordEdit edit : edits) {
+            editsByDomain.computeIfAbsent(edit.getDomain(), domain -> new ArrayList<>()).add(edit);
+        }
+
+        log.info("Applying {} edit(s) to {} domain(s)", edits.size(), editsByDomain.size());
+
+        PrintStream out = commandLine.hasOption("report")
+                ? new PrintStream(new FileOutputStream(commandLine.getOptionValue("report")), false, "UTF-8")
+                : System.out;
+
+        try {
+            BulkReport report = new BulkReport(out);
+
+            ParallelDomainExecutor executor = new ParallelDomainExecutor(context.getClientFactory(), concurrency);
+
+            ParallelDomainExecutor.Summary summary = executor.execute(editsByDomain.keySet(),
+                    (client, domain) -> apply(client, domain, editsByDomain.get(domain), dryRun, report));
+
+            // e.g. when the workers could not log in, or were interrupted
+            editsByDomain.values().forEach(domainEdits ->
+                    report.writeMissing(domainEdits, BulkReport.FAILED, "domain not processed"));
+
+            log.info("Bulk edit finished: {}, edits: {}", summary, report.getCounts());
+        } finally {
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+
+    private void apply(StartHostingClient client, String domain, List<RecordEdit> edits, boolean dryRun, BulkReport report) {
+        List<DNSRecord> dnsRecords;
+
+        try {
+            client.changeDomain(domain);
+
+            dnsRecords = client.getDNSRecords();
+        } catch (StartHostingClientException e) {
+            edits.forEach(edit -> report.write(edit, BulkReport.FAILED, e.getMessage()));
+            throw e;
+        }
+
+        List<UpdatePlan> plans = new ArrayList<>(edits.size());
+        String[] conflicts = new String[edits.size()];
+        Map<String, Integer> editByRecordId = new HashMap<>();
+
+        for (int i = 0; i < edits.size(); i++) {
+            RecordEdit edit = edits.get(i);
+            UpdatePlan plan = UpdatePlan.create(domain, dnsRecords, edit.getType(), edit.getName(), edit.getValue());
+
+            plans.add(plan);
+
+            List<DNSRecord> selected = new ArrayList<>(plan.getUnchanged());
+            plan.getChanges().forEach(change -> selected.add(change.getOldRecord()));
+
+            for (DNSRecord dnsRecord : selected) {
+                Integer other = editByRecordId.putIfAbsent(dnsRecord.getId(), i);
+
+                if (other != null && other != i) {
+                    conflicts[i] = "record " + dnsRecord.getId() + " also selected on line " + edits.get(other).getLine();
+                    if (conflicts[other] == null) {
+                        conflicts[other] = "record " + dnsRecord.getId() + " also selected on line " + edit.getLine();
+                    }
+                }
+            }
+        }
+
+        List<DNSRecord> newRecords = new ArrayList<>();
+        for (int i = 0; i < edits.size(); i++) {
+            if (conflicts[i] == null) {
+                plans.get(i).getChanges().forEach(change -> newRecords.add(change.getNewRecord()));
+            }
+        }
+
+        BatchUpdateResult result;
+        try {
+            result = dryRun || newRecords.isEmpty() ? null : client.updateDNSRecords(newRecords);
+        } catch (StartHostingClientException e) {
+            edits.forEach(edit -> report.write(edit, BulkReport.FAILED, e.getMessage()));
+            throw e;
+        }
+
+        int failed = 0;
+        int index = 0;
+
+        for (int i = 0; i < edits.size(); i++) {
+            RecordEdit edit = edits.get(i);
+            UpdatePlan plan = plans.get(i);
+
+            if (conflicts[i] != null) {
+                failed++;
+                report.write(edit, BulkReport.CONFLICT, conflicts[i]);
+                continue;
+            }
+
+            int changes = plan.getChanges().size();
+
+            if (changes == 0) {
+                if (plan.getUnchanged().isEmpty()) {
+                    report.write(edit, BulkReport.NOT_FOUND, plan.getIgnored().isEmpty() ? null : "virtual record");
+                } else {
+                    report.write(edit, BulkReport.UNCHANGED, plan.getUnchanged().size() + " record(s)");
+                }
+                continue;
+            }
+
+            if (result == null) {
+                report.write(edit, BulkReport.DRY_RUN, changes + " record(s) would change");
+                continue;
+            }
+
+            String error = null;
+            for (BatchUpdateResult.RecordResult recordResult : result.getResults().subList(index, index + changes)) {
+                if (!recordResult.isSuccess()) {
+                    error = recordResult.getError().getMessage();
+                }
+            }
+            index += changes;
+
+            if (error != null) {
+                failed++;
+                report.write(edit, BulkReport.FAILED, error);
+            } else {
+                report.write(edit, BulkReport.UPDATED, changes + " record(s)");
+            }
+        }
+
+        if (failed > 0) {
+            throw new StartHostingClientException("Could not apply " + failed + " of " + edits.size() + " edit(s) of " + domain);
+        }
+    }
+
+    @Override
+    public void configureOptions(Options options) {
+        options.addOption(Option.builder("file").hasArg().required().desc("File with record edits").build());
+        options.addOption(Option.builder("format").hasArg().desc("File format: csv (domain,type,name,value) or zone (default by file extension)").build());
+        options.addOption(Option.builder("report").hasArg().desc("File to write the result per edit to (default standard output)").build());
+        options.addOption(Option.builder("concurrency").hasArg().desc("Maximum number of domains to edit in parallel (default " + DEFAULT_CONCURRENCY + ")").build());
+        options.addOption(Option.builder("dryrun").desc("Report the changes instead of applying them").build());
+    }
+
+    @Override
+    public String getDescription() {
+        return "apply a file of DNS record edits";
+    }
+}
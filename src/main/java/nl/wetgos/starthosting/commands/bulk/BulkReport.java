@@ -0,0 +1,73 @@
+package nl.wetgos.starthosting.commands.bulk;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * CSV report with one line per record edit, written as soon as the domain of the edit has been processed.
+ */
+class BulkReport {
+
+    static final String UPDATED = "updated";
+    static final String UNCHANGED = "unchanged";
+    static final String NOT_FOUND = "not-found";
+    static final String FAILED = "failed";
+    static final String CONFLICT = "conflict";
+    static final String DRY_RUN = "dry-run";
+
+    private final PrintStream out;
+
+    private final Map<String, Integer> counts = new TreeMap<>();
+    private final Set<RecordEdit> written = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    BulkReport(PrintStream out) {
+        this.out = out;
+
+        out.println("line,domain,type,name,value,status,detail");
+    }
+
+    synchronized void write(RecordEdit edit, String status, String detail) {
+        out.println(edit.getLine() + "," + csv(edit.getDomain()) + "," + csv(edit.getType()) + "," + csv(edit.getName())
+                + "," + csv(edit.getValue()) + "," + status + "," + csv(detail != null ? detail : ""));
+        out.flush();
+
+        counts.merge(status, 1, Integer::sum);
+        written.add(edit);
+    }
+
+    /**
+     * Writes the given status for the edits that have no line yet, i.e. of domains that were never processed.
+     *
+     * @param edits
+     * @param status
+     * @param detail
+     */
+    synchronized void writeMissing(Collection<RecordEdit> edits, String status, String detail) {
+        for (RecordEdit edit : edits) {
+            if (!written.contains(edit)) {
+                write(edit, status, detail);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of edits per status.
+     *
+     * @return
+     */
+    synchronized Map<String, Integer> getCounts() {
+        return new TreeMap<>(counts);
+    }
+
+    private static String csv(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
@@ -0,0 +1,26 @@
+package nl.wetgos.starthosting.commands.bulk;
+
+import lombok.Value;
+
+/**
+ * Desired content of the records of a domain with a given type and name, read from one line of a bulk file.
+ */
+@Value
+public class RecordEdit {
+
+    /**
+     * Line number in the bulk file.
+     */
+    int line;
+
+    String domain;
+    String type;
+
+    /**
+     * Name relative to the domain, empty for the domain itself.
+     */
+    String name;
+
+    String value;
+
+}
@@ -0,0 +1,196 @@
+package nl.wetgos.starthosting.commands.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads record edits from a CSV or zone-style file.
+ * <p>
+ * CSV lines have the form {@code domain,type,name,value}. The value is the rest of the line and may be quoted. Zone
+ * style lines have the form {@code name [ttl] [class] type value} below an {@code $ORIGIN} line that sets the
+ * domain. In both formats {@code @} or an empty name stands for the domain itself, and lines starting with
+ * {@code #} or {@code ;} are comments. TTLs are ignored, because the panel does not edit them.
+ */
+public class RecordEditReader {
+
+    public enum Format {
+        CSV, ZONE;
+
+        /**
+         * Guesses the format from a file name: zone style for .zone and .db files, otherwise CSV.
+         *
+         * @param fileName
+         * @return
+         */
+        public static Format forFileName(String fileName) {
+            String lowerCase = fileName.toLowerCase(Locale.ROOT);
+            return lowerCase.endsWith(".zone") || lowerCase.endsWith(".db") ? ZONE : CSV;
+        }
+    }
+
+    private final Format format;
+
+    private String origin;
+    private String lastName;
+
+    public RecordEditReader(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Reads all edits.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException if a line cannot be parsed
+     */
+    public List<RecordEdit> read(BufferedReader reader) throws IOException {
+        List<RecordEdit> edits = new ArrayList<>();
+
+        String line;
+        int number = 0;
+
+        while ((line = reader.readLine()) != null) {
+            number++;
+
+            String trimmed = line.trim();
+
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith(";")) {
+                continue;
+            }
+
+            try {
+                RecordEdit edit = format == Format.CSV ? parseCsv(number, trimmed) : parseZone(number, line);
+
+                if (edit != null) {
+                    edits.add(edit);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Line " + number + ": " + e.getMessage(), e);
+            }
+        }
+
+        return edits;
+    }
+
+    private RecordEdit parseCsv(int number, String line) {
+        String[] fields = line.split(",", 4);
+
+        if (fields.length < 4) {
+            throw new IllegalArgumentException("Expected domain,type,name,value");
+        }
+
+        String domain = fields[0].trim().toLowerCase(Locale.ROOT);
+
+        if (domain.equals("domain") && fields[1].trim().equalsIgnoreCase("type")) {
+            // header
+            return null;
+        }
+
+        return new RecordEdit(number, domain, fields[1].trim().toUpperCase(Locale.ROOT),
+                relativeName(fields[2].trim(), domain), unquote(fields[3].trim()));
+    }
+
+    private RecordEdit parseZone(int number, String line) {
+        String content = stripComment(line);
+
+        if (content.trim().isEmpty()) {
+            return null;
+        }
+
+        List<String> tokens = new ArrayList<>(Arrays.asList(content.trim().split("\\s+")));
+
+        if (tokens.get(0).equalsIgnoreCase("$ORIGIN")) {
+            if (tokens.size() < 2) {
+                throw new IllegalArgumentException("$ORIGIN without domain");
+            }
+            origin = stripDot(tokens.get(1)).toLowerCase(Locale.ROOT);
+            lastName = null;
+            return null;
+        }
+
+        if (tokens.get(0).startsWith("$")) {
+            // $TTL and the like
+            return null;
+        }
+
+        if (origin == null) {
+            throw new IllegalArgumentException("Record before $ORIGIN");
+        }
+
+        String name;
+        if (Character.isWhitespace(content.charAt(0))) {
+            // same name as the previous record
+            if (lastName == null) {
+                throw new IllegalArgumentException("Record without name");
+            }
+            name = lastName;
+        } else {
+            name = relativeName(tokens.remove(0), origin);
+        }
+
+        while (!tokens.isEmpty() && (tokens.get(0).matches("\\d+") || tokens.get(0).equalsIgnoreCase("IN"))) {
+            tokens.remove(0);
+        }
+
+        if (tokens.size() < 2) {
+            throw new IllegalArgumentException("Expected name [ttl] [class] type value");
+        }
+
+        lastName = name;
+
+        String type = tokens.remove(0).toUpperCase(Locale.ROOT);
+
+        return new RecordEdit(number, origin, type, name, unquote(String.join(" ", tokens)));
+    }
+
+    private static String relativeName(String name, String domain) {
+        if (name.isEmpty() || name.equals("@")) {
+            return "";
+        }
+
+        String lowerCase = stripDot(name).toLowerCase(Locale.ROOT);
+
+        if (lowerCase.equals(domain)) {
+            return "";
+        }
+
+        if (lowerCase.endsWith("." + domain)) {
+            return lowerCase.substring(0, lowerCase.length() - domain.length() - 1);
+        }
+
+        return lowerCase;
+    }
+
+    private static String stripDot(String name) {
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    private static String stripComment(String line) {
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ';' && !quoted) {
+                return line.substring(0, i);
+            }
+        }
+
+        return line;
+    }
+}
@@ -0,0 +1,466 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.PackedIPAddress;
+import nl.wetgos.starthosting.metrics.Metrics;
+import nl.wetgos.starthosting.metrics.OperationMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets the public IP address with a single DNS query over UDP, i.e. {@code dns://resolver1.opendns.com/myip.opendns.com}
+ * or {@code dns://ns1.google.com/o-o.myaddr.l.google.com?type=TXT}.
+ * <p>
+ * The URL names the resolver (port 53 unless given) and the record that resolves to the address of the client. Query
+ * parameters set the record type ({@code A}, {@code AAAA} or {@code TXT}, default {@code A}), the time (milliseconds)
+ * to wait for an answer ({@code timeout}, default {@value #DEFAULT_TIMEOUT}) and the number of times the query is sent
+ * again when no answer arrives ({@code retries}, default {@value #DEFAULT_RETRIES}).
+ * <p>
+ * A lookup is one datagram each way instead of a TCP (and maybe TLS) connection and an HTTP exchange. The channel,
+ * the query and the buffer are reused, and like {@link URLPublicIPAddressProvider} the string of the last lookup is
+ * returned again when the address did not change.
+ */
+@Slf4j
+public class DNSPublicIPAddressProvider implements PublicIPAddressProvider {
+
+    public static final String SCHEME = "dns";
+
+    private static final int DEFAULT_PORT = 53;
+    private static final long DEFAULT_TIMEOUT = 1000;
+    private static final int DEFAULT_RETRIES = 2;
+
+    /**
+     * Largest DNS message over UDP without EDNS.
+     */
+    private static final int MAX_MESSAGE_LENGTH = 512;
+
+    private static final int HEADER_LENGTH = 12;
+
+    private static final int FLAG_RESPONSE = 0x8000;
+    private static final int FLAG_TRUNCATED = 0x0200;
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+
+    private static final int TYPE_A = 1;
+    private static final int TYPE_TXT = 16;
+    private static final int TYPE_AAAA = 28;
+    private static final int CLASS_IN = 1;
+
+    private final String url;
+
+    private final String host;
+    private final int port;
+    private final String name;
+    private final int type;
+    private final long timeout;
+    private final int retries;
+
+    private final OperationMetrics metrics;
+
+    private final byte[] query;
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_MESSAGE_LENGTH);
+    private final PackedIPAddress address = new PackedIPAddress();
+    private final PackedIPAddress lastAddress = new PackedIPAddress();
+    private String lastText;
+
+    private DatagramChannel channel;
+    private volatile Selector selector;
+    private volatile boolean cancelled;
+
+    /**
+     * @param url {@code dns://resolver[:port]/name[?type=A|AAAA|TXT][&timeout=ms][&retries=n]}
+     */
+    public DNSPublicIPAddressProvider(String url) {
+        this.url = url;
+
+        URI uri = URI.create(url);
+
+        if (!SCHEME.equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+            throw new IllegalArgumentException("Not a DNS URL: " + url);
+        }
+
+        host = uri.getHost();
+        port = uri.getPort() > 0 ? uri.getPort() : DEFAULT_PORT;
+
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        name = path.replaceAll("^/+|\\.$", "");
+
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("No record name in " + url);
+        }
+
+        String recordType = "A";
+        long timeout = DEFAULT_TIMEOUT;
+        int retries = DEFAULT_RETRIES;
+
+        if (uri.getQuery() != null) {
+            for (String parameter : uri.getQuery().split("&")) {
+                String[] keyValue = parameter.split("=", 2);
+                String value = keyValue.length > 1 ? keyValue[1] : "";
+
+                switch (keyValue[0].toLowerCase(Locale.ROOT)) {
+                    case "type":
+                        recordType = value.toUpperCase(Locale.ROOT);
+                        break;
+                    case "timeout":
+                        timeout = Long.parseLong(value);
+                        break;
+                    case "retries":
+                        retries = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown parameter " + keyValue[0] + " in " + url);
+                }
+            }
+        }
+
+        switch (recordType) {
+            case "A":
+                type = TYPE_A;
+                break;
+            case "AAAA":
+                type = TYPE_AAAA;
+                break;
+            case "TXT":
+                type = TYPE_TXT;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported record type " + recordType + " in " + url);
+        }
+
+        if (timeout <= 0 || retries < 0) {
+            throw new IllegalArgumentException("Timeout must be positive and retries not negative in " + url);
+        }
+
+        this.timeout = timeout;
+        this.retries = retries;
+
+        query = createQuery(name, type);
+
+        metrics = Metrics.getDefault().operation(Metrics.PUBLIC_IP_LOOKUP, url);
+    }
+
+    /**
+     * Looks up the address. The lookup is aborted by {@link #cancel()} or by interrupting the calling thread; an
+     * interrupt cannot be missed, so the resolver cancels lookups that may not have started yet that way.
+     *
+     * @return the address
+     */
+    @Override
+    public synchronized String getPublicIPAddress() {
+        cancelled = false;
+
+        long start = System.nanoTime();
+        boolean success = false;
+
+        IOException failure = null;
+
+        try {
+            // a cancelled lookup is not retried
+            for (int attempt = 0; attempt <= retries && (failure == null || !isCancelled()); attempt++) {
+                try {
+                    log.debug("Querying {} (attempt {})", url, attempt + 1);
+
+                    String content = query();
+
+                    log.debug("Server response: {}", content);
+
+                    success = true;
+
+                    return content;
+                } catch (InterruptedIOException e) {
+                    // timed out or cancelled, an answer that arrives later is ignored
+                    log.debug("No answer from {}: {}", url, e.getMessage());
+                    failure = e;
+                } catch (IOException e) {
+                    log.debug("Query to {} failed: {}", url, e.toString());
+
+                    // start over with a new channel, i.e. after an ICMP port unreachable
+                    close();
+                    failure = e;
+                }
+            }
+
+            throw new RuntimeException("Could not get public IP address from " + url, failure);
+        } finally {
+            // lookups cancelled by the resolver are not failures of this provider
+            if (success || !isCancelled()) {
+                metrics.record(start, success);
+            }
+        }
+    }
+
+    /**
+     * Sends the query once and waits for the answer.
+     *
+     * @return the address
+     * @throws IOException
+     * @throws IllegalStateException if the answer holds no address
+     */
+    private String query() throws IOException {
+        checkCancelled();
+
+        open();
+
+        int id = ThreadLocalRandom.current().nextInt(0x10000);
+
+        query[0] = (byte) (id >> 8);
+        query[1] = (byte) id;
+
+        buffer.clear();
+        buffer.put(query).flip();
+        channel.write(buffer);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        while (true) {
+            // an interrupted thread does not block in select, so it is checked here
+            checkCancelled();
+
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("No answer within " + timeout + " ms");
+            }
+
+            selector.select(remaining);
+            selector.selectedKeys().clear();
+
+            // reading on an interrupted thread would close the channel
+            checkCancelled();
+
+            buffer.clear();
+
+            if (channel.read(buffer) <= 0) {
+                continue;
+            }
+
+            buffer.flip();
+
+            // answers to earlier, timed out queries
+            if (buffer.remaining() < HEADER_LENGTH || (buffer.getShort(0) & 0xffff) != id) {
+                log.debug("Ignoring unexpected message from {}", url);
+                continue;
+            }
+
+            return read(buffer);
+        }
+    }
+
+    private boolean isCancelled() {
+        return cancelled || Thread.currentThread().isInterrupted();
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException("Lookup cancelled");
+        }
+    }
+
+    /**
+     * Reads the address from a response.
+     *
+     * @param message
+     * @return the address, the same string as last time if it did not change
+     * @throws IllegalStateException if the response holds no address
+     */
+    String read(ByteBuffer message) {
+        try {
+            int flags = message.getShort(2) & 0xffff;
+
+            if ((flags & FLAG_RESPONSE) == 0) {
+                throw new IllegalStateException("Not a DNS response");
+            }
+            if ((flags & FLAG_TRUNCATED) != 0) {
+                throw new IllegalStateException("DNS response is truncated");
+            }
+            if ((flags & 0xf) != 0) {
+                throw new IllegalStateException("DNS response code " + (flags & 0xf) + " for " + name);
+            }
+
+            int questions = message.getShort(4) & 0xffff;
+            int answers = message.getShort(6) & 0xffff;
+
+            int position = HEADER_LENGTH;
+
+            for (int i = 0; i < questions; i++) {
+                // name, type and class
+                position = skipName(message, position) + 4;
+            }
+
+            for (int i = 0; i < answers; i++) {
+                position = skipName(message, position);
+
+                int recordType = message.getShort(position) & 0xffff;
+                int recordClass = message.getShort(position + 2) & 0xffff;
+                int dataLength = message.getShort(position + 8) & 0xffff;
+
+                position += 10;
+
+                if (position + dataLength > message.limit()) {
+                    throw new IllegalStateException("DNS response is truncated");
+                }
+
+                // other records, like a CNAME before the address, are skipped
+                if (recordType == type && recordClass == CLASS_IN && parse(message.array(), position, dataLength)) {
+                    if (lastText == null || !address.sameAs(lastAddress)) {
+                        lastAddress.copyFrom(address);
+                        lastText = address.format();
+                    }
+
+                    return lastText;
+                }
+
+                position += dataLength;
+            }
+
+            throw new IllegalStateException("DNS response has no address for " + name);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Malformed DNS response", e);
+        }
+    }
+
+    private boolean parse(byte[] data, int offset, int length) {
+        if (type == TYPE_TXT) {
+            // the first string of the record
+            return length > 0 && address.parse(data, offset + 1, offset + 1 + Math.min(data[offset] & 0xff, length - 1));
+        }
+
+        if (length != (type == TYPE_A ? 4 : 16)) {
+            return false;
+        }
+
+        address.set(data, offset, length);
+
+        return true;
+    }
+
+    private static int skipName(ByteBuffer message, int position) {
+        while (true) {
+            int length = message.get(position) & 0xff;
+
+            if (length == 0) {
+                return position + 1;
+            }
+
+            if ((length & 0xc0) == 0xc0) {
+                // compressed, the rest of the name is elsewhere
+                return position + 2;
+            }
+
+            position += length + 1;
+        }
+    }
+
+    private static byte[] createQuery(String name, int type) {
+        ByteArrayOutputStream query = new ByteArrayOutputStream(HEADER_LENGTH + name.length() + 6);
+
+        // ID (set per query), flags, one question, no answer, authority or additional records
+        writeShort(query, 0);
+        writeShort(query, FLAG_RECURSION_DESIRED);
+        writeShort(query, 1);
+        writeShort(query, 0);
+        writeShort(query, 0);
+        writeShort(query, 0);
+
+        for (String label : name.split("\\.")) {
+            byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+
+            if (bytes.length == 0 || bytes.length > 63) {
+                throw new IllegalArgumentException("Invalid record name " + name);
+            }
+
+            query.write(bytes.length);
+            query.write(bytes, 0, bytes.length);
+        }
+
+        query.write(0);
+
+        writeShort(query, type);
+        writeShort(query, CLASS_IN);
+
+        if (query.size() > MAX_MESSAGE_LENGTH) {
+            throw new IllegalArgumentException("Record name is too long: " + name);
+        }
+
+        return query.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+
+        InetSocketAddress resolver = new InetSocketAddress(host, port);
+
+        if (resolver.isUnresolved()) {
+            throw new UnknownHostException(host);
+        }
+
+        boolean opened = false;
+
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+
+        try {
+            channel.configureBlocking(false);
+            channel.connect(resolver);
+            channel.register(selector, SelectionKey.OP_READ);
+
+            opened = true;
+        } finally {
+            if (!opened) {
+                close();
+            }
+        }
+    }
+
+    private void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            log.debug("Could not close channel to {}", url, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+
+        Selector selector = this.selector;
+
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
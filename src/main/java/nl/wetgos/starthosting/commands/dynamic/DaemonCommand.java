@@ -0,0 +1,303 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.Cleanup;
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.StartHostingClientFactory;
+import nl.wetgos.starthosting.commands.Command;
+import nl.wetgos.starthosting.commands.CommandContext;
+import nl.wetgos.starthosting.commands.ParallelDomainExecutor;
+import nl.wetgos.starthosting.commands.RecordSelector;
+import nl.wetgos.starthosting.http.TokenBucket;
+import nl.wetgos.starthosting.metrics.Metrics;
+import nl.wetgos.starthosting.metrics.PrometheusEndpoint;
+import nl.wetgos.starthosting.metrics.jfr.Tracing;
+import nl.wetgos.starthosting.metrics.jfr.UpdateCycleEvent;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Dynamic DNS updater for many accounts in one process.
+ * <p>
+ * Accounts that use the same public IP URLs share one watcher, so the public IP address is looked up once per
+ * uplink instead of once per account. When it changes, all accounts of the uplink are updated on a fixed number of
+ * worker threads shared by all accounts. Every account has its own sessions and may occupy at most its concurrency
+ * of the workers, so a slow or failing account does not hold up the others.
+ */
+@Slf4j
+public class DaemonCommand implements Command {
+
+    @Override
+    public void run(CommandContext context) throws Exception {
+        CommandLine commandLine = context.getCommandLine();
+
+        DaemonConfig config = DaemonConfig.load(new File(commandLine.getOptionValue("config")));
+        boolean dryRun = commandLine.hasOption("dryrun");
+        long debounce = Long.parseLong(config.getSetting("debounce") != null ? config.getSetting("debounce") : "0");
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(config.getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "account-worker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<String, List<Account>> uplinks = new LinkedHashMap<>();
+        List<PublicIPAddressWatcher> watchers = new ArrayList<>();
+
+        Metrics metrics = Metrics.getDefault();
+
+        @Cleanup
+        PrometheusEndpoint prometheusEndpoint = new PrometheusEndpoint(metrics);
+
+        @Cleanup
+        StateJournal journal = config.getSetting("state") != null && !dryRun
+                ? StateJournal.open(Paths.get(config.getSetting("state")))
+                : null;
+
+        @Cleanup
+        PushReceiver pushReceiver = DynamicDNSCommand.createPushReceiver(config::getSetting);
+
+        // one limit for all accounts, the panel sees the requests of all of them coming from this host
+        TokenBucket rateLimiter = DynamicDNSCommand.createRateLimiter(config::getSetting);
+
+        List<UpdateDispatcher> dispatchers = new ArrayList<>();
+
+        LeaseElection election = DynamicDNSCommand.createLeaseElection(config::getSetting);
+        Leadership leadership = new Leadership(journal);
+
+        try {
+            for (DaemonConfig.Account accountConfig : config.getAccounts()) {
+                StartHostingClientFactory clientFactory = context.createClientFactory(accountConfig.getUser(), accountConfig.getPassword());
+
+                // keep a session per worker alive between changes
+                clientFactory.setMaxIdle(accountConfig.getConcurrency());
+                clientFactory.setRateLimiter(rateLimiter);
+
+                leadership.addClientFactory(clientFactory);
+
+                uplinks.computeIfAbsent(accountConfig.getUrl(), url -> new ArrayList<>())
+                        .add(new Account(accountConfig, clientFactory,
+                                new ParallelDomainExecutor(clientFactory, accountConfig.getConcurrency(), workers)));
+            }
+
+            log.info("Serving {} account(s) behind {} uplink(s) with {} worker(s)", config.getAccounts().size(), uplinks.size(), config.getWorkers());
+
+            if (commandLine.hasOption("metricsport")) {
+                prometheusEndpoint.start(Integer.parseInt(commandLine.getOptionValue("metricsport")));
+            }
+
+            for (Map.Entry<String, List<Account>> uplink : uplinks.entrySet()) {
+                PublicIPAddressWatcher watcher = DynamicDNSCommand.createWatcher(uplink.getKey().split(","),
+                        context.getHttpTransport(), config::getSetting);
+
+                watchers.add(watcher);
+
+                resume(watcher, journal, uplink.getKey(), uplink.getValue());
+
+                UpdateDispatcher dispatcher = new UpdateDispatcher(Leadership.whileLeading(election, (publicIPAddress, superseded) ->
+                        update(uplink.getKey(), uplink.getValue(), publicIPAddress, superseded, dryRun, journal, metrics)), debounce);
+
+                dispatchers.add(dispatcher);
+
+                if (election != null) {
+                    leadership.addUplink(watcher, dispatcher);
+                } else {
+                    watcher.start(dispatcher);
+                }
+
+                if (pushReceiver != null) {
+                    List<String> domains = new ArrayList<>();
+                    uplink.getValue().forEach(account -> domains.addAll(account.config.getDomains()));
+
+                    pushReceiver.addUplink(watcher, domains);
+                }
+            }
+
+            if (pushReceiver != null) {
+                pushReceiver.start(Integer.parseInt(config.getSetting("pushport")));
+            }
+
+            if (election != null) {
+                election.start(leadership);
+            }
+
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            log.debug("Thread interrupted");
+        } finally {
+            // before the watchers, so they are not started again
+            if (election != null) {
+                election.close();
+            }
+
+            watchers.forEach(PublicIPAddressWatcher::stop);
+            dispatchers.forEach(UpdateDispatcher::stop);
+
+            workers.shutdownNow();
+
+            uplinks.values().forEach(accounts -> accounts.forEach(account -> account.clientFactory.close()));
+        }
+    }
+
+    /**
+     * Lets the watcher of an uplink start from the last public IP address when all accounts are up to date.
+     */
+    private void resume(PublicIPAddressWatcher watcher, StateJournal journal, String uplink, List<Account> accounts) {
+        if (journal == null) {
+            return;
+        }
+
+        boolean upToDate = true;
+        int domains = 0;
+
+        String publicIPAddress = journal.getPublicIPAddress(uplink);
+
+        for (Account account : accounts) {
+            if (account.config.isDryRun()) {
+                continue;
+            }
+
+            StateJournal accountJournal = journal.scope(account.config.getId());
+
+            int drifted = publicIPAddress != null
+                    ? DynamicDNSCommand.getDriftedDomains(accountJournal, account.selector, account.config.getDomains(),
+                    publicIPAddress).size()
+                    : account.config.getDomains().size();
+
+            if (drifted > 0) {
+                upToDate = false;
+
+                log.debug("Account {} has {} of {} domain(s) to update", account.config.getId(), drifted, account.config.getDomains().size());
+            }
+
+            domains += account.config.getDomains().size();
+        }
+
+        if (publicIPAddress != null && upToDate) {
+            watcher.setLastPublicIPAddress(publicIPAddress);
+
+            Metrics.getDefault().setLastPublicIPAddress(publicIPAddress);
+
+            log.info("Resuming uplink {} at public IP address {}, {} domain(s) up to date", uplink, publicIPAddress, domains);
+        }
+    }
+
+    /**
+     * Updates all accounts of an uplink to a new public IP address and waits until they are done.
+     */
+    private void update(String uplink, List<Account> accounts, String publicIPAddress, BooleanSupplier superseded,
+                        boolean dryRun, StateJournal journal, Metrics metrics) {
+        metrics.setLastPublicIPAddress(publicIPAddress);
+
+        if (journal != null) {
+            journal.setPublicIPAddress(uplink, publicIPAddress);
+        }
+
+        long start = System.nanoTime();
+
+        UpdateCycleEvent event = new UpdateCycleEvent();
+        event.begin();
+
+        event.setCycleId(Tracing.getCycle());
+        event.setPublicIPAddress(publicIPAddress);
+
+        List<ParallelDomainExecutor.Execution> executions = new ArrayList<>(accounts.size());
+
+        for (Account account : accounts) {
+            DaemonConfig.Account config = account.config;
+
+            StateJournal accountJournal = journal == null || config.isDryRun() ? null : journal.scope(config.getId());
+
+            List<String> drifted = DynamicDNSCommand.getDriftedDomains(accountJournal, account.selector,
+                    config.getDomains(), publicIPAddress);
+
+            executions.add(account.executor.start(drifted,
+                    DynamicDNSCommand.createUpdateTask(account.selector, publicIPAddress,
+                            dryRun || config.isDryRun(), accountJournal, superseded)));
+        }
+
+        int failedAccounts = 0;
+        int domains = 0;
+        int failedDomains = 0;
+        int skippedDomains = 0;
+
+        try {
+            for (int i = 0; i < executions.size(); i++) {
+                ParallelDomainExecutor.Summary summary = executions.get(i).await();
+
+                domains += summary.getDomains();
+                failedDomains += summary.getFailed();
+                skippedDomains += summary.getSkipped();
+
+                if (summary.getFailed() > 0) {
+                    failedAccounts++;
+
+                    log.warn("Dynamic DNS update of account {} finished: {}", accounts.get(i).config.getId(), summary);
+                } else {
+                    log.debug("Dynamic DNS update of account {} finished: {}", accounts.get(i).config.getId(), summary);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.debug("Dynamic DNS update interrupted");
+
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            event.setDomains(domains);
+            event.setFailedDomains(failedDomains);
+            event.setSkippedDomains(skippedDomains);
+            event.commit();
+        }
+
+        // a cycle that skipped domains did not bring every domain to the address
+        metrics.recordCycle(start, failedAccounts == 0 && skippedDomains == 0);
+
+        log.info("Dynamic DNS update to {} finished for {} account(s), {} with failures, {} domain(s) skipped, in {} ms",
+                publicIPAddress, accounts.size(), failedAccounts, skippedDomains, (System.nanoTime() - start) / 1000000);
+    }
+
+    @Override
+    public void configureOptions(Options options) {
+        options.addOption(Option.builder("config").hasArg().required().desc("Properties file with the settings and accounts").build());
+        options.addOption(Option.builder("metricsport").hasArg().desc("Port to serve Prometheus metrics on (optional, metrics are always available over JMX)").build());
+        options.addOption(Option.builder("dryrun").desc("Print the changes instead of applying them").build());
+    }
+
+    @Override
+    public String getDescription() {
+        return "multi-account dynamic DNS daemon";
+    }
+
+    @Override
+    public boolean isAccountRequired() {
+        return false;
+    }
+
+    private static class Account {
+
+        private final DaemonConfig.Account config;
+        private final RecordSelector selector;
+        private final StartHostingClientFactory clientFactory;
+        private final ParallelDomainExecutor executor;
+
+        Account(DaemonConfig.Account config, StartHostingClientFactory clientFactory, ParallelDomainExecutor executor) {
+            this.config = config;
+            this.selector = RecordSelector.compile(config.getType(), config.getName());
+            this.clientFactory = clientFactory;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Configuration of the multi-account daemon, read from a properties file.
+ * <p>
+ * Global keys have the names of the options of the dynamic command ({@code interval}, {@code url}, {@code resolver},
+ * {@code local}, ...) plus {@code workers}, the number of threads shared by all accounts, and {@code state}, the state
+ * journal file. With {@code pushport}, {@code pushuser} and {@code pushpassword} routers can push the public IP address
+ * of the uplink that serves the pushed hostname. With {@code lease} (and {@code leasettl}) only the daemon that holds
+ * the lease file updates the records. Accounts are configured with {@code account.<id>.<key>}, where key is
+ * {@code user}, {@code password}, {@code domain}, {@code type}, {@code name}, {@code concurrency}, {@code url} or
+ * {@code dryrun}. An account without its own {@code url} uses the global one.
+ */
+@Getter
+public class DaemonConfig {
+
+    private static final String ACCOUNT_PREFIX = "account.";
+
+    private static final int DEFAULT_WORKERS = 16;
+    private static final int DEFAULT_CONCURRENCY = 2;
+
+    private final Properties properties;
+
+    private final int workers;
+
+    private final List<Account> accounts = new ArrayList<>();
+
+    DaemonConfig(Properties properties) {
+        this.properties = properties;
+
+        workers = Integer.parseInt(properties.getProperty("workers", String.valueOf(DEFAULT_WORKERS)));
+
+        if (properties.getProperty("interval") == null) {
+            throw new IllegalArgumentException("Missing setting: interval");
+        }
+
+        TreeSet<String> ids = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(ACCOUNT_PREFIX) && key.indexOf('.', ACCOUNT_PREFIX.length()) > 0) {
+                ids.add(key.substring(ACCOUNT_PREFIX.length(), key.indexOf('.', ACCOUNT_PREFIX.length())));
+            }
+        }
+
+        for (String id : ids) {
+            accounts.add(new Account(id,
+                    getAccountSetting(id, "user", true),
+                    getAccountSetting(id, "password", true),
+                    split(getAccountSetting(id, "domain", true)),
+                    getAccountSetting(id, "type", false),
+                    getAccountSetting(id, "name", false),
+                    Integer.parseInt(getAccountSetting(id, "concurrency", String.valueOf(DEFAULT_CONCURRENCY))),
+                    getAccountSetting(id, "url", properties.getProperty("url")),
+                    Boolean.parseBoolean(getAccountSetting(id, "dryrun", "false"))));
+        }
+
+        for (Account account : accounts) {
+            if (account.getUrl() == null) {
+                throw new IllegalArgumentException("Missing setting: url or " + ACCOUNT_PREFIX + account.getId() + ".url");
+            }
+        }
+    }
+
+    public static DaemonConfig load(File file) throws IOException {
+        Properties properties = new Properties();
+
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+
+        return new DaemonConfig(properties);
+    }
+
+    /**
+     * Gets a global setting.
+     *
+     * @param key
+     * @return the value, or null if it is not set
+     */
+    public String getSetting(String key) {
+        return properties.getProperty(key);
+    }
+
+    private String getAccountSetting(String id, String key, boolean required) {
+        String value = properties.getProperty(ACCOUNT_PREFIX + id + "." + key);
+
+        if (required && (value == null || value.trim().isEmpty())) {
+            throw new IllegalArgumentException("Missing setting: " + ACCOUNT_PREFIX + id + "." + key);
+        }
+
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    private String getAccountSetting(String id, String key, String defaultValue) {
+        String value = getAccountSetting(id, key, false);
+        return value != null ? value : defaultValue;
+    }
+
+    private static List<String> split(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    @Value
+    @ToString(exclude = "password")
+    public static class Account {
+
+        String id;
+        String user;
+        String password;
+        List<String> domains;
+        String type;
+        String name;
+        int concurrency;
+
+        /**
+         * Public IP URL(s). Accounts with the same URLs share one watcher.
+         */
+        String url;
+
+        boolean dryRun;
+
+    }
+}
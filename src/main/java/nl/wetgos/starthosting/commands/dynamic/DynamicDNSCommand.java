@@ -6,90 +6,409 @@ import nl.wetgos.starthosting.client.DNSRecord;
 import nl.wetgos.starthosting.client.StartHostingClient;
 import nl.wetgos.starthosting.commands.Command;
 import nl.wetgos.starthosting.commands.CommandContext;
+import nl.wetgos.starthosting.commands.DomainSkippedException;
+import nl.wetgos.starthosting.commands.ParallelDomainExecutor;
+import nl.wetgos.starthosting.commands.RecordSelector;
+import nl.wetgos.starthosting.commands.UpdatePlan;
+import nl.wetgos.starthosting.http.HttpTransport;
+import nl.wetgos.starthosting.http.TokenBucket;
+import nl.wetgos.starthosting.metrics.Metrics;
+import nl.wetgos.starthosting.metrics.PrometheusEndpoint;
+import nl.wetgos.starthosting.metrics.jfr.DomainUpdateEvent;
+import nl.wetgos.starthosting.metrics.jfr.Tracing;
+import nl.wetgos.starthosting.metrics.jfr.UpdateCycleEvent;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 @Slf4j
 public class DynamicDNSCommand implements Command {
 
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final long DEFAULT_HEDGE_DELAY = 1000;
+    private static final long DEFAULT_SAFETY_INTERVAL = 60 * 60 * 1000;
+    private static final long DEFAULT_LEASE_TTL = 30 * 1000;
+
     private Properties publicIPAddressURLList;
 
     @Override
     public void run(CommandContext context) throws Exception {
         CommandLine commandLine = context.getCommandLine();
 
-        String[] urls = commandLine.getOptionValue("url").split(",");
-        long interval = Long.parseLong(commandLine.getOptionValue("interval"));
         String[] domains = commandLine.getOptionValue("domain").split(",");
-        String type = commandLine.getOptionValue("type");
-        String name = commandLine.getOptionValue("name");
+        RecordSelector selector = RecordSelector.compile(commandLine.getOptionValue("type"), commandLine.getOptionValue("name"));
+        boolean dryRun = commandLine.hasOption("dryrun");
+        int concurrency = Integer.parseInt(commandLine.getOptionValue("concurrency", String.valueOf(DEFAULT_CONCURRENCY)));
 
-        List<PublicIPAddressProvider> providers = Arrays.stream(urls)
-                .map(url -> new URLPublicIPAddressProvider(url))
-                .collect(Collectors.toList());
+        HttpTransport httpTransport = context.getHttpTransport();
+
+        String url = commandLine.getOptionValue("url");
+
+        PublicIPAddressWatcher watcher = createWatcher(url.split(","), httpTransport,
+                key -> commandLine.hasOption(key) ? commandLine.getOptionValue(key, "true") : null);
+
+        @Cleanup
+        StateJournal journal = commandLine.hasOption("state") && !dryRun
+                ? StateJournal.open(Paths.get(commandLine.getOptionValue("state")))
+                : null;
+
+        resume(watcher, journal, url, selector, Arrays.asList(domains));
+
+        // keep a session per worker alive between checks
+        context.getClientFactory().setMaxIdle(concurrency);
+        context.getClientFactory().setRateLimiter(createRateLimiter(key -> commandLine.getOptionValue(key)));
+
+        ParallelDomainExecutor executor = new ParallelDomainExecutor(context.getClientFactory(), concurrency);
+
+        Metrics metrics = Metrics.getDefault();
+
+        @Cleanup
+        PrometheusEndpoint prometheusEndpoint = new PrometheusEndpoint(metrics);
+
+        if (commandLine.hasOption("metricsport")) {
+            prometheusEndpoint.start(Integer.parseInt(commandLine.getOptionValue("metricsport")));
+        }
+
+        LeaseElection election = createLeaseElection(key -> commandLine.getOptionValue(key));
+
+        UpdateDispatcher dispatcher = new UpdateDispatcher(Leadership.whileLeading(election, (publicIPAddress, superseded) -> {
+            metrics.setLastPublicIPAddress(publicIPAddress);
+
+            if (journal != null) {
+                journal.setPublicIPAddress(url, publicIPAddress);
+            }
+
+            long start = System.nanoTime();
 
-        PublicIPAddressWatcher watcher = new PublicIPAddressWatcher(providers, interval);
+            UpdateCycleEvent event = new UpdateCycleEvent();
+            event.begin();
+
+            event.setCycleId(Tracing.getCycle());
+            event.setPublicIPAddress(publicIPAddress);
 
-        watcher.watch(publicIPAddress -> {
             try {
-                @Cleanup
-                StartHostingClient client = context.getClientFactory().createClient();
+                ParallelDomainExecutor.Summary summary = executor.execute(getDriftedDomains(journal, selector, Arrays.asList(domains), publicIPAddress),
+                        createUpdateTask(selector, publicIPAddress, dryRun, journal, superseded));
+
+                // a cycle that skipped domains did not bring every domain to the address
+                metrics.recordCycle(start, summary.isComplete());
+
+                event.setDomains(summary.getDomains());
+                event.setFailedDomains(summary.getFailed());
+                event.setSkippedDomains(summary.getSkipped());
 
-                performDynamicUpdate(domains, type, name, publicIPAddress, client);
+                log.info("Dynamic DNS update finished: {}", summary);
+                log.debug("HTTP connections: {}", httpTransport.getStatistics());
 
+                if (context.getClientFactory().getRecordCache() != null) {
+                    log.debug("DNS record cache: {}", context.getClientFactory().getRecordCache().getStatistics());
+                }
+            } catch (InterruptedException e) {
+                log.debug("Dynamic DNS update interrupted");
+
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
+                metrics.recordCycle(start, false);
+
                 log.error("Could not perform dynamic DNS update", e);
+            } finally {
+                event.commit();
             }
-        });
+        }), Long.parseLong(commandLine.getOptionValue("debounce", "0")));
+
+        @Cleanup
+        PushReceiver pushReceiver = createPushReceiver(key -> commandLine.getOptionValue(key));
+
+        if (pushReceiver != null) {
+            pushReceiver.addUplink(watcher, Arrays.asList(domains));
+            pushReceiver.start(Integer.parseInt(commandLine.getOptionValue("pushport")));
+        }
+
+        if (election == null) {
+            try {
+                watcher.watch(dispatcher);
+            } finally {
+                dispatcher.stop();
+            }
+            return;
+        }
+
+        Leadership leadership = new Leadership(journal);
+        leadership.addUplink(watcher, dispatcher);
+        leadership.addClientFactory(context.getClientFactory());
+
+        try {
+            election.start(leadership);
+
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            log.debug("Thread interrupted");
+        } finally {
+            // before the watcher, so it is not started again
+            election.close();
+
+            watcher.stop();
+            dispatcher.stop();
+        }
     }
 
-    private void performDynamicUpdate(String[] domains, String type, String name, String value, StartHostingClient client) {
-        for (String domain : domains) {
-            performDynamicUpdate(type, name, value, client, domain);
+    /**
+     * Creates a leader election if a lease file is set, so only one of several instances updates the records.
+     *
+     * @param settings gets the value of a setting, or null if it is not set
+     * @return the election, not started yet, or null
+     */
+    static LeaseElection createLeaseElection(Function<String, String> settings) {
+        if (settings.apply("lease") == null) {
+            return null;
         }
+
+        return new LeaseElection(Paths.get(settings.apply("lease")), Long.parseLong(getSetting(settings, "leasettl", DEFAULT_LEASE_TTL)));
     }
 
-    private void performDynamicUpdate(String type, String name, String value, StartHostingClient client, String domain) {
-        client.changeDomain(domain);
+    /**
+     * Creates a receiver for pushed public IP addresses if a push port is set.
+     *
+     * @param settings gets the value of a setting, or null if it is not set
+     * @return the receiver, not started yet, or null
+     */
+    static PushReceiver createPushReceiver(Function<String, String> settings) {
+        if (settings.apply("pushport") == null) {
+            return null;
+        }
 
-        List<DNSRecord> dnsRecords = client.getDNSRecords();
+        return new PushReceiver(settings.apply("pushuser"), settings.apply("pushpassword"));
+    }
 
-        dnsRecords.forEach(dnsRecord -> {
-            if (type != null && !type.equalsIgnoreCase(dnsRecord.getType())) {
-                return;
-            }
+    private static PublicIPAddressProvider createProvider(String url, HttpTransport httpTransport) {
+        if (url.regionMatches(true, 0, DNSPublicIPAddressProvider.SCHEME + "://", 0, DNSPublicIPAddressProvider.SCHEME.length() + 3)) {
+            return new DNSPublicIPAddressProvider(url);
+        }
+
+        return new URLPublicIPAddressProvider(url, httpTransport);
+    }
+
+    /**
+     * Creates a watcher for the given public IP URLs, configured with the daemon and public IP settings (option
+     * names without the dash).
+     *
+     * @param urls
+     * @param httpTransport
+     * @param settings      gets the value of a setting, "true" for flags that are set, or null if it is not set
+     * @return
+     */
+    static PublicIPAddressWatcher createWatcher(String[] urls, HttpTransport httpTransport, Function<String, String> settings) {
+        List<PublicIPAddressProvider> providers = Arrays.stream(urls)
+                .map(String::trim)
+                .map(url -> createProvider(url, httpTransport))
+                .collect(Collectors.toList());
+
+        PublicIPAddressResolver resolver = createResolver(settings, providers, httpTransport.getTimeout());
+
+        if (Boolean.parseBoolean(settings.apply("local"))) {
+            long safetyInterval = Long.parseLong(getSetting(settings, "safetyinterval", DEFAULT_SAFETY_INTERVAL));
 
-            if (name != null && !name.equalsIgnoreCase(dnsRecord.getName())) {
-                return;
+            resolver = new LocalChangePublicIPAddressResolver(new NetworkInterfacePublicIPAddressProvider(), resolver, safetyInterval);
+        }
+
+        PublicIPAddressWatcher watcher = new PublicIPAddressWatcher(resolver, Long.parseLong(settings.apply("interval")));
+
+        if (settings.apply("mininterval") != null) {
+            watcher.setMinInterval(Long.parseLong(settings.apply("mininterval")));
+        }
+        if (settings.apply("maxinterval") != null) {
+            watcher.setMaxInterval(Long.parseLong(settings.apply("maxinterval")));
+        }
+        if (settings.apply("jitter") != null) {
+            watcher.setJitter(Double.parseDouble(settings.apply("jitter")));
+        }
+
+        return watcher;
+    }
+
+    private static PublicIPAddressResolver createResolver(Function<String, String> settings, List<PublicIPAddressProvider> providers, int timeout) {
+        String strategy = getSetting(settings, "resolver", "sequential");
+
+        switch (strategy) {
+            case "sequential":
+                return new SequentialPublicIPAddressResolver(providers);
+            case "hedged":
+                int quorum = Integer.parseInt(getSetting(settings, "quorum", 1));
+                long hedgeDelay = Long.parseLong(getSetting(settings, "hedgedelay", DEFAULT_HEDGE_DELAY));
+
+                return new HedgedPublicIPAddressResolver(providers, quorum, hedgeDelay, timeout);
+            default:
+                throw new IllegalArgumentException("Unknown resolver: " + strategy);
+        }
+    }
+
+    private static String getSetting(Function<String, String> settings, String key, Object defaultValue) {
+        String value = settings.apply(key);
+        return value != null ? value : String.valueOf(defaultValue);
+    }
+
+    /**
+     * Continues from the state of the journal: when all domains are known to have the last public IP address, the
+     * watcher starts from that address, so an unchanged address does not update any domain. Otherwise the first
+     * check updates the domains that drifted.
+     *
+     * @param watcher
+     * @param journal  the journal, or null to start without state
+     * @param key      identifies the uplink in the journal
+     * @param selector selects the records to update
+     * @param domains
+     */
+    static void resume(PublicIPAddressWatcher watcher, StateJournal journal, String key, RecordSelector selector,
+                       Collection<String> domains) {
+        String publicIPAddress = journal != null ? journal.getPublicIPAddress(key) : null;
+
+        if (publicIPAddress == null) {
+            return;
+        }
+
+        int drifted = getDriftedDomains(journal, selector, domains, publicIPAddress).size();
+
+        if (drifted == 0) {
+            watcher.setLastPublicIPAddress(publicIPAddress);
+
+            Metrics.getDefault().setLastPublicIPAddress(publicIPAddress);
+
+            log.info("Resuming at public IP address {}, {} domain(s) up to date", publicIPAddress, domains.size());
+        } else {
+            log.info("Resuming after public IP address {}, {} of {} domain(s) to update", publicIPAddress, drifted, domains.size());
+        }
+    }
+
+    /**
+     * Gets the domains that are not known to have the given value in the records chosen by the given selector.
+     *
+     * @param journal  the journal, or null to get all domains
+     * @param selector
+     * @param domains
+     * @param value
+     * @return
+     */
+    static List<String> getDriftedDomains(StateJournal journal, RecordSelector selector, Collection<String> domains,
+                                          String value) {
+        if (journal == null) {
+            return new ArrayList<>(domains);
+        }
+
+        return domains.stream()
+                .filter(domain -> !journal.isUpToDate(domain, selector, value))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Creates a limit for the requests to the panel from the {@code ratelimit} (requests per second) and
+     * {@code burst} settings.
+     *
+     * @param settings
+     * @return the limit, or null if no rate limit is set
+     */
+    static TokenBucket createRateLimiter(Function<String, String> settings) {
+        if (settings.apply("ratelimit") == null) {
+            return null;
+        }
+
+        double rate = Double.parseDouble(settings.apply("ratelimit"));
+        int burst = Integer.parseInt(getSetting(settings, "burst", Math.max(1, (int) Math.ceil(rate))));
+
+        return new TokenBucket(rate, burst);
+    }
+
+    /**
+     * Creates a task that updates a domain, unless a newer public IP address arrived before it started, in which
+     * case the domain is skipped.
+     */
+    static ParallelDomainExecutor.DomainTask createUpdateTask(RecordSelector selector, String publicIPAddress, boolean dryRun,
+                                                             StateJournal journal, BooleanSupplier superseded) {
+        return (client, domain) -> {
+            if (superseded.getAsBoolean()) {
+                throw new DomainSkippedException("update to public IP address " + publicIPAddress + " was superseded");
             }
 
-            if (dnsRecord.getId() != null) {
-                dnsRecord.setContent(value);
+            performDynamicUpdate(selector, publicIPAddress, dryRun, client, domain, journal);
+        };
+    }
+
+    static void performDynamicUpdate(RecordSelector selector, String value, boolean dryRun, StartHostingClient client, String domain, StateJournal journal) {
+        DomainUpdateEvent event = new DomainUpdateEvent();
+        event.begin();
+
+        event.setCycleId(Tracing.getCycle());
+        event.setDomain(domain);
+
+        try {
+            client.changeDomain(domain);
+
+            List<DNSRecord> dnsRecords = client.getDNSRecords();
+
+            UpdatePlan plan = UpdatePlan.create(domain, dnsRecords, selector, value);
 
-                client.updateDNSRecord(dnsRecord);
+            if (dryRun) {
+                synchronized (System.out) {
+                    plan.print(System.out);
+                }
             } else {
-                log.warn("Ignoring virtual DNS record: {}", dnsRecord);
+                plan.apply(client);
+
+                event.setChangedRecords(plan.getChanges().size());
+
+                if (journal != null) {
+                    List<DNSRecord> applied = new ArrayList<>(plan.getUnchanged());
+                    plan.getChanges().forEach(change -> applied.add(change.getNewRecord()));
+
+                    journal.setApplied(domain, selector, applied);
+                }
             }
-        });
+
+            event.setSuccess(true);
+        } finally {
+            event.commit();
+        }
     }
 
     @Override
     public void configureOptions(Options options) {
         // daemon options
         options.addOption(Option.builder("interval").hasArg().required().desc("Check interval (milliseconds)").build());
+        options.addOption(Option.builder("mininterval").hasArg().desc("Check interval right after a change (milliseconds, default a quarter of the interval)").build());
+        options.addOption(Option.builder("maxinterval").hasArg().desc("Check interval during stable periods (milliseconds, default the interval)").build());
+        options.addOption(Option.builder("jitter").hasArg().desc("Random deviation of the check interval (fraction, default 0.1)").build());
+        options.addOption(Option.builder("metricsport").hasArg().desc("Port to serve Prometheus metrics on (optional, metrics are always available over JMX)").build());
+        options.addOption(Option.builder("concurrency").hasArg().desc("Maximum number of domains to update in parallel (default " + DEFAULT_CONCURRENCY + ")").build());
+        options.addOption(Option.builder("debounce").hasArg().desc("Time a new public IP must be stable before it is applied (milliseconds, default 0)").build());
+        options.addOption(Option.builder("ratelimit").hasArg().desc("Maximum number of requests per second to the panel (optional)").build());
+        options.addOption(Option.builder("burst").hasArg().desc("Number of requests that may exceed the rate limit after an idle period (default the rate limit)").build());
+        options.addOption(Option.builder("pushport").hasArg().desc("Port to receive public IP changes from routers on, dyndns2 style on " + PushReceiver.PATH + " (optional)").build());
+        options.addOption(Option.builder("pushuser").hasArg().desc("User name routers authenticate with (required with -pushport)").build());
+        options.addOption(Option.builder("pushpassword").hasArg().desc("Password routers authenticate with (required with -pushport)").build());
+        options.addOption(Option.builder("lease").hasArg().desc("Lease file on storage shared by several instances, so only the instance that holds it updates the records (optional)").build());
+        options.addOption(Option.builder("leasettl").hasArg().desc("Time after which another instance takes over a lease that was not renewed (milliseconds, default " + DEFAULT_LEASE_TTL + ")").build());
+        options.addOption(Option.builder("state").hasArg().desc("File to keep the last public IP and applied values in, so a restart only updates domains that drifted (optional)").build());
 
         // public IP options
-        options.addOption(Option.builder("url").hasArg().required().desc("Public IP URL(s) to watch (i.e. http://icanhazip.com/)").build());
+        options.addOption(Option.builder("url").hasArg().required().desc("Public IP URL(s) to watch (i.e. http://icanhazip.com/ or dns://resolver1.opendns.com/myip.opendns.com)").build());
+        options.addOption(Option.builder("resolver").hasArg().desc("Public IP resolver: sequential (default) asks the URLs in order, hedged races them").build());
+        options.addOption(Option.builder("quorum").hasArg().desc("Number of URLs that must agree on the public IP (hedged resolver, default 1)").build());
+        options.addOption(Option.builder("local").desc("Only look up the public IP when the local network state changed, or use a public IP attached to this host").build());
+        options.addOption(Option.builder("safetyinterval").hasArg().desc("Maximum time between public IP lookups with -local (milliseconds, default " + DEFAULT_SAFETY_INTERVAL + ")").build());
+        options.addOption(Option.builder("hedgedelay").hasArg().desc("Time to wait before also asking the next URL (hedged resolver, milliseconds, default " + DEFAULT_HEDGE_DELAY + ")").build());
 
         // matching options
         options.addOption(Option.builder("domain").hasArg().required().desc("Domain name(s) to update (i.e. mydomain.com)").build());
-        options.addOption(Option.builder("type").hasArg().valueSeparator(',').desc("Record type(s) to update (optional)").build());
-        options.addOption(Option.builder("name").hasArg().valueSeparator(',').desc("Name(s) to update (optional)").build());
+        options.addOption(Option.builder("type").hasArg().desc("Record type(s) to update, i.e. A,AAAA (optional)").build());
+        options.addOption(Option.builder("name").hasArg().desc("Name(s) to update, globs after glob: (i.e. glob:*.dev) or regular expressions between slashes; @ is the domain itself (optional)").build());
+        options.addOption(Option.builder("dryrun").desc("Print the changes instead of applying them").build());
     }
 
     @Override
@@ -0,0 +1,190 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Races the providers, fastest and most reliable first.
+ * <p>
+ * The best ranked providers are asked first. When they have not answered within the hedge delay, or when one of them
+ * fails, the next provider is asked as well. The first address reported by {@code quorum} providers wins, and the
+ * lookups that are still running are cancelled. Providers are ranked by the moving average of their latency and
+ * success rate.
+ */
+@Slf4j
+public class HedgedPublicIPAddressResolver implements PublicIPAddressResolver {
+
+    private final Map<PublicIPAddressProvider, ProviderStatistics> statistics = new LinkedHashMap<>();
+
+    private final int quorum;
+    private final long hedgeDelay;
+    private final long timeout;
+
+    private final ExecutorService executorService;
+
+    /**
+     * @param providers  providers to ask
+     * @param quorum     number of providers that have to report the same address
+     * @param hedgeDelay time (milliseconds) to wait for an answer before asking the next provider
+     * @param timeout    maximum time (milliseconds) to wait for the quorum
+     */
+    public HedgedPublicIPAddressResolver(List<PublicIPAddressProvider> providers, int quorum, long hedgeDelay, long timeout) {
+        if (quorum < 1) {
+            throw new IllegalArgumentException("Quorum must be at least 1");
+        }
+
+        providers.forEach(provider -> statistics.put(provider, new ProviderStatistics()));
+
+        this.quorum = Math.min(quorum, providers.size());
+        this.hedgeDelay = hedgeDelay;
+        this.timeout = timeout;
+
+        executorService = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "public-ip-lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String resolve() {
+        List<PublicIPAddressProvider> ranked = rank();
+
+        CompletionService<Lookup> completionService = new ExecutorCompletionService<>(executorService);
+        Map<Future<Lookup>, PublicIPAddressProvider> running = new HashMap<>();
+        Map<String, Integer> votes = new HashMap<>();
+
+        int next = 0;
+        long now = System.currentTimeMillis();
+        long deadline = now + timeout;
+        long nextHedge = now + hedgeDelay;
+
+        // a quorum needs that many answers anyway
+        while (next < quorum) {
+            running.put(completionService.submit(lookup(ranked.get(next))), ranked.get(next));
+            next++;
+        }
+
+        try {
+            while (!running.isEmpty() || next < ranked.size()) {
+                now = System.currentTimeMillis();
+
+                if (now >= deadline) {
+                    log.warn("No public IP address agreed on by {} provider(s) within {} ms", quorum, timeout);
+                    running.values().forEach(provider -> statistics.get(provider).failure(timeout));
+                    return null;
+                }
+
+                Future<Lookup> future = running.isEmpty() ? null
+                        : completionService.poll(Math.min(nextHedge, deadline) - now, TimeUnit.MILLISECONDS);
+
+                if (future == null) {
+                    // hedge: nobody answered in time, ask the next provider as well
+                    if (next < ranked.size()) {
+                        running.put(completionService.submit(lookup(ranked.get(next))), ranked.get(next));
+                        next++;
+                    }
+                    nextHedge = System.currentTimeMillis() + hedgeDelay;
+                    continue;
+                }
+
+                running.remove(future);
+
+                Lookup lookup = future.get();
+
+                if (lookup.address != null) {
+                    int count = votes.merge(lookup.address, 1, Integer::sum);
+
+                    if (count >= quorum) {
+                        return lookup.address;
+                    }
+
+                    if (votes.size() > 1) {
+                        log.warn("Providers disagree on public IP address: {}", votes);
+                    }
+                }
+
+                // failure or no quorum yet: ask the next provider right away
+                if (next < ranked.size()) {
+                    running.put(completionService.submit(lookup(ranked.get(next))), ranked.get(next));
+                    next++;
+                    nextHedge = System.currentTimeMillis() + hedgeDelay;
+                }
+            }
+
+            log.warn("No public IP address agreed on by {} provider(s): {}", quorum, votes);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected lookup failure", e.getCause());
+        } finally {
+            for (Map.Entry<Future<Lookup>, PublicIPAddressProvider> entry : running.entrySet()) {
+                entry.getKey().cancel(true);
+                entry.getValue().cancel();
+            }
+        }
+    }
+
+    private List<PublicIPAddressProvider> rank() {
+        List<PublicIPAddressProvider> ranked = new ArrayList<>(statistics.keySet());
+
+        // stable sort, so the configured order breaks ties
+        ranked.sort(Comparator.comparingDouble(provider -> statistics.get(provider).getScore(timeout)));
+
+        if (log.isDebugEnabled()) {
+            ranked.forEach(provider -> log.debug("Provider {}: {}", provider, statistics.get(provider)));
+        }
+
+        return ranked;
+    }
+
+    private Callable<Lookup> lookup(PublicIPAddressProvider provider) {
+        return () -> {
+            long start = System.currentTimeMillis();
+
+            try {
+                String address = provider.getPublicIPAddress();
+
+                statistics.get(provider).success(System.currentTimeMillis() - start);
+
+                return new Lookup(address);
+            } catch (Exception e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // lost the race and was cancelled, not a failure of the provider
+                    return new Lookup(null);
+                }
+
+                statistics.get(provider).failure(System.currentTimeMillis() - start);
+
+                log.warn("Could not get public IP address from provider " + provider, e);
+
+                return new Lookup(null);
+            }
+        };
+    }
+
+    private static class Lookup {
+
+        private final String address;
+
+        Lookup(String address) {
+            this.address = address;
+        }
+    }
+}
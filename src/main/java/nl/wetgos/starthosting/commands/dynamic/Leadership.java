@@ -0,0 +1,111 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.StartHostingClientException;
+import nl.wetgos.starthosting.client.StartHostingClientFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lets only the leader of a {@link LeaseElection} watch the public IP address and update records.
+ * <p>
+ * The watchers are started when this instance is elected and stopped when it is not the leader anymore. Every
+ * election checks the public IP address right away; after a takeover the state journal and the cached records are
+ * forgotten, because the previous leader may have changed records since, so the first update reads every domain from
+ * the panel. Followers keep a logged in session per account, so they can take over without logging in first. They do
+ * not keep records cached, because those would have to be read again after a takeover anyway.
+ */
+@Slf4j
+class Leadership implements LeaseElection.Listener {
+
+    private final StateJournal journal;
+
+    private final Map<PublicIPAddressWatcher, UpdateDispatcher> uplinks = new LinkedHashMap<>();
+    private final List<StartHostingClientFactory> clientFactories = new ArrayList<>();
+
+    /**
+     * @param journal the state journal, or null
+     */
+    Leadership(StateJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Creates an update that only runs while this instance is the leader, and that stops starting domains when it
+     * is not the leader anymore.
+     *
+     * @param election the election, or null to always update
+     * @param update
+     * @return
+     */
+    static UpdateDispatcher.Update whileLeading(LeaseElection election, UpdateDispatcher.Update update) {
+        if (election == null) {
+            return update;
+        }
+
+        return (publicIPAddress, superseded) -> {
+            if (!election.isLeader()) {
+                log.info("Not updating to public IP address {}, this instance is not the leader", publicIPAddress);
+                return;
+            }
+
+            update.run(publicIPAddress, () -> superseded.getAsBoolean() || !election.isLeader());
+        };
+    }
+
+    synchronized void addUplink(PublicIPAddressWatcher watcher, UpdateDispatcher dispatcher) {
+        uplinks.put(watcher, dispatcher);
+    }
+
+    synchronized void addClientFactory(StartHostingClientFactory clientFactory) {
+        clientFactories.add(clientFactory);
+    }
+
+    @Override
+    public synchronized void elected(boolean takeover) {
+        if (takeover) {
+            if (journal != null) {
+                journal.forget();
+            }
+
+            clientFactories.stream()
+                    .filter(clientFactory -> clientFactory.getRecordCache() != null)
+                    .forEach(clientFactory -> clientFactory.getRecordCache().clear());
+        }
+
+        uplinks.forEach((watcher, dispatcher) -> {
+            // an update may have been cut short when the lead was lost, so apply the address again
+            watcher.setLastPublicIPAddress(null);
+            dispatcher.reset();
+
+            watcher.start(dispatcher);
+        });
+    }
+
+    @Override
+    public synchronized void revoked() {
+        uplinks.keySet().forEach(PublicIPAddressWatcher::stop);
+    }
+
+    @Override
+    public void following() {
+        List<StartHostingClientFactory> clientFactories;
+
+        synchronized (this) {
+            clientFactories = new ArrayList<>(this.clientFactories);
+        }
+
+        for (StartHostingClientFactory clientFactory : clientFactories) {
+            try {
+                // logs in, or checks the session of the pooled client, and returns it to the pool
+                clientFactory.createClient().close();
+            } catch (IOException | StartHostingClientException e) {
+                log.warn("Could not keep a session ready", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elects one leader among instances that share a lease file, i.e. on shared storage.
+ * <p>
+ * The leader rewrites the lease with its owner and a sequence number every quarter of the time to live. Followers
+ * read the lease on the same schedule and take it over when its content did not change for the time to live, as
+ * measured by their own clock, or right away when it is missing or released. Reads and writes are done under a
+ * file lock, so two followers cannot take over at the same time. A leader that could not renew its lease for half
+ * the time to live steps down before any follower can take over, and a leader that finds another owner in the lease
+ * steps down right away. A follower takes over at most 1.25 times the time to live after the last renewal.
+ * {@link #isLeader()} checks the age of the last renewal itself, so a leader whose election thread is stuck stops
+ * being the leader in time as well.
+ */
+@Slf4j
+public class LeaseElection implements Closeable {
+
+    private static final long DEFAULT_FOLLOW_INTERVAL = 5 * 60 * 1000;
+    private static final String RELEASED = "released";
+
+    private final Path file;
+    private final long ttl;
+
+    /**
+     * Identifies this instance in the lease.
+     */
+    @Getter
+    private final String owner;
+
+    /**
+     * Interval (milliseconds) at which followers are told to keep ready.
+     */
+    @Setter
+    private long followInterval = DEFAULT_FOLLOW_INTERVAL;
+
+    private volatile boolean leader;
+
+    /**
+     * {@link System#nanoTime()} of the last write of the lease by this instance.
+     */
+    private volatile long renewed;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService follower;
+    private Listener listener;
+
+    // only used on the scheduler thread
+    private long sequence;
+    private String written;
+    private String observed;
+    private long observedSince;
+    private long followed;
+
+    /**
+     * @param file lease file, created if it does not exist
+     * @param ttl  time (milliseconds) after which followers take over a lease that was not renewed
+     */
+    public LeaseElection(Path file, long ttl) {
+        this(file, ttl, ManagementFactory.getRuntimeMXBean().getName());
+    }
+
+    /**
+     * @param file  lease file, created if it does not exist
+     * @param ttl   time (milliseconds) after which followers take over a lease that was not renewed
+     * @param owner identifies this instance in the lease
+     */
+    LeaseElection(Path file, long ttl, String owner) {
+        if (ttl < 4) {
+            throw new IllegalArgumentException("Lease time to live too short: " + ttl);
+        }
+
+        this.file = file;
+        this.ttl = ttl;
+        this.owner = owner;
+    }
+
+    /**
+     * Checks whether this instance is the leader and renewed its lease less than half the time to live ago.
+     *
+     * @return
+     */
+    public boolean isLeader() {
+        return leader && System.nanoTime() - renewed < TimeUnit.MILLISECONDS.toNanos(ttl / 2);
+    }
+
+    /**
+     * Starts taking part in the election in the background.
+     *
+     * @param listener told when this instance becomes or stops being the leader
+     */
+    public synchronized void start(Listener listener) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Already started");
+        }
+
+        log.info("Taking part in leader election on {} as {}", file, owner);
+
+        this.listener = listener;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "lease-election"));
+        follower = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lease-follower");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::tick, 0, ttl / 4, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+
+        // the lock is released when the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // without the lock another instance is writing, try again at the next tick
+            if (tryLock(channel)) {
+                String lease = read(channel);
+
+                if (leader) {
+                    renew(channel, lease, now);
+                } else {
+                    follow(channel, lease, now);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not access lease " + file, e);
+        }
+
+        if (leader && now - renewed > TimeUnit.MILLISECONDS.toNanos(ttl / 2)) {
+            log.warn("Could not renew lease {} in time, stepping down", file);
+
+            stepDown(written, now);
+        }
+
+        if (!leader && (followed == 0 || now - followed >= TimeUnit.MILLISECONDS.toNanos(followInterval))) {
+            followed = now;
+
+            follower.execute(this::following);
+        }
+    }
+
+    private void renew(FileChannel channel, String lease, long now) throws IOException {
+        if (!lease.equals(written)) {
+            log.warn("Lease {} was taken over by {}, stepping down", file, ownerOf(lease));
+
+            stepDown(lease, now);
+            return;
+        }
+
+        write(channel, owner + " " + ++sequence);
+        renewed = now;
+    }
+
+    private void follow(FileChannel channel, String lease, long now) throws IOException {
+        if (!lease.equals(observed)) {
+            observed = lease;
+            observedSince = now;
+        }
+
+        boolean free = lease.isEmpty() || lease.endsWith(" " + RELEASED);
+
+        if (!free && now - observedSince < TimeUnit.MILLISECONDS.toNanos(ttl)) {
+            return;
+        }
+
+        String previousOwner = ownerOf(lease);
+
+        write(channel, owner + " " + ++sequence);
+        renewed = now;
+        leader = true;
+
+        if (previousOwner == null || free) {
+            log.info("Acquired lease {}", file);
+        } else {
+            log.warn("Took over lease {} from {}, which did not renew it for {} ms", file, previousOwner, ttl);
+        }
+
+        try {
+            listener.elected(previousOwner != null && !previousOwner.equals(owner));
+        } catch (RuntimeException e) {
+            log.error("Could not take the lead", e);
+        }
+    }
+
+    private void stepDown(String lease, long now) {
+        leader = false;
+
+        // wait a full time to live before taking over again
+        observed = lease;
+        observedSince = now;
+        followed = 0;
+
+        try {
+            listener.revoked();
+        } catch (RuntimeException e) {
+            log.error("Could not step down", e);
+        }
+    }
+
+    private void following() {
+        try {
+            listener.following();
+        } catch (RuntimeException e) {
+            log.warn("Could not keep ready to take over", e);
+        }
+    }
+
+    /**
+     * @return whether the lock was acquired, it is held until the channel is closed
+     */
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            // held by another election in this JVM
+            return false;
+        }
+    }
+
+    /**
+     * Waits at most the time to live for the lock, polling because a lock held in this JVM is not waited for.
+     */
+    private void lock(FileChannel channel) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl);
+
+        while (!tryLock(channel)) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new IOException("Could not lock " + file + " within " + ttl + " ms");
+            }
+
+            try {
+                Thread.sleep(Math.max(1, ttl / 100));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while locking " + file);
+            }
+        }
+    }
+
+    private String read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 1024));
+
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // read until the buffer is full
+        }
+
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim();
+    }
+
+    private void write(FileChannel channel, String lease) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((lease + "\n").getBytes(StandardCharsets.UTF_8));
+
+        channel.truncate(0);
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+
+        channel.force(false);
+
+        written = lease;
+    }
+
+    private static String ownerOf(String lease) {
+        int space = lease.lastIndexOf(' ');
+
+        return space > 0 ? lease.substring(0, space) : null;
+    }
+
+    /**
+     * Stops taking part in the election. A leader releases its lease, so a follower takes over right away.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler == null || scheduler.isShutdown()) {
+            return;
+        }
+
+        // not interrupted, because an interrupt closes the channel of a tick and may leave the lease half written
+        scheduler.shutdown();
+        follower.shutdownNow();
+
+        // an interrupt closes the channel below too, so the interrupt of a caller, i.e. on shutdown, is put back after
+        boolean interrupted = Thread.interrupted();
+
+        try {
+            scheduler.awaitTermination(ttl, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+
+        try {
+            release();
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void release() {
+        if (!leader) {
+            return;
+        }
+
+        leader = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            lock(channel);
+
+            if (read(channel).equals(written)) {
+                write(channel, owner + " " + RELEASED);
+
+                log.info("Released lease {}", file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not release lease " + file, e);
+        }
+
+        listener.revoked();
+    }
+
+    public interface Listener {
+
+        /**
+         * Called when this instance became the leader.
+         *
+         * @param takeover whether another instance held the lease before, so the state of this instance may be
+         *                 outdated
+         */
+        void elected(boolean takeover);
+
+        /**
+         * Called when this instance is no longer the leader.
+         */
+        void revoked();
+
+        /**
+         * Called regularly on a separate thread while this instance is a follower, to keep ready to take over.
+         */
+        default void following() {
+        }
+
+    }
+}
@@ -0,0 +1,64 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Only asks the remote resolver when the local network state changed, or when the safety interval passed.
+ * <p>
+ * A public address that is attached to this host directly is used without asking the remote resolver at all. Behind
+ * NAT the local state may not change when the public address does, so the safety interval bounds how long such a
+ * change can go unnoticed.
+ */
+@Slf4j
+public class LocalChangePublicIPAddressResolver implements PublicIPAddressResolver {
+
+    private final NetworkInterfacePublicIPAddressProvider local;
+    private final PublicIPAddressResolver remote;
+    private final long safetyInterval;
+
+    private String lastFingerprint;
+    private String lastRemoteAddress;
+    private long lastRemoteLookup;
+
+    /**
+     * @param local          provider for the local network state
+     * @param remote         resolver that asks remote services
+     * @param safetyInterval maximum time (milliseconds) between remote lookups
+     */
+    public LocalChangePublicIPAddressResolver(NetworkInterfacePublicIPAddressProvider local, PublicIPAddressResolver remote, long safetyInterval) {
+        this.local = local;
+        this.remote = remote;
+        this.safetyInterval = safetyInterval;
+    }
+
+    @Override
+    public synchronized String resolve() {
+        try {
+            return local.getPublicIPAddress();
+        } catch (IllegalStateException e) {
+            log.trace("No public address attached: {}", e.getMessage());
+        }
+
+        String fingerprint = local.getFingerprint();
+        long now = System.currentTimeMillis();
+
+        if (lastRemoteAddress != null && fingerprint.equals(lastFingerprint) && now - lastRemoteLookup < safetyInterval) {
+            log.debug("Local network state unchanged, skipping remote lookup");
+            return lastRemoteAddress;
+        }
+
+        if (lastFingerprint != null && !fingerprint.equals(lastFingerprint)) {
+            log.info("Local network state changed, looking up public IP address");
+        }
+
+        String address = remote.resolve();
+
+        if (address != null) {
+            lastFingerprint = fingerprint;
+            lastRemoteAddress = address;
+            lastRemoteLookup = now;
+        }
+
+        return address;
+    }
+}
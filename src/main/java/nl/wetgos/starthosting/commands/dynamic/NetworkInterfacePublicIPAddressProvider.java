@@ -0,0 +1,124 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Gets the public IP address from the network interfaces of this host, for hosts that have a public address attached
+ * directly.
+ * <p>
+ * Also exposes a fingerprint of the local address and route state, which is cheap to compute and can be used to
+ * detect local changes without asking a remote service.
+ */
+@Slf4j
+public class NetworkInterfacePublicIPAddressProvider implements PublicIPAddressProvider {
+
+    private static final Path ROUTE_TABLE = Paths.get("/proc/net/route");
+
+    @Override
+    public String getPublicIPAddress() {
+        try {
+            for (InetAddress address : getAddresses()) {
+                if (address instanceof Inet4Address && isPublic((Inet4Address) address)) {
+                    return address.getHostAddress();
+                }
+            }
+        } catch (SocketException e) {
+            throw new IllegalStateException("Could not enumerate network interfaces", e);
+        }
+
+        throw new IllegalStateException("No public IPv4 address attached to this host");
+    }
+
+    /**
+     * Gets a fingerprint of the addresses of the network interfaces and, on Linux, the IPv4 route table.
+     *
+     * @return
+     */
+    public String getFingerprint() {
+        StringBuilder fingerprint = new StringBuilder();
+
+        try {
+            List<String> addresses = new ArrayList<>();
+            for (InetAddress address : getAddresses()) {
+                addresses.add(address.getHostAddress());
+            }
+            Collections.sort(addresses);
+
+            addresses.forEach(address -> fingerprint.append(address).append(' '));
+        } catch (SocketException e) {
+            log.debug("Could not enumerate network interfaces", e);
+        }
+
+        if (Files.isReadable(ROUTE_TABLE)) {
+            try {
+                fingerprint.append(new String(Files.readAllBytes(ROUTE_TABLE), StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                log.debug("Could not read route table", e);
+            }
+        }
+
+        return fingerprint.toString();
+    }
+
+    private static List<InetAddress> getAddresses() throws SocketException {
+        List<InetAddress> addresses = new ArrayList<>();
+
+        Enumeration<NetworkInterface> networkInterfaces = NetworkInterface.getNetworkInterfaces();
+
+        while (networkInterfaces != null && networkInterfaces.hasMoreElements()) {
+            NetworkInterface networkInterface = networkInterfaces.nextElement();
+
+            if (!networkInterface.isUp() || networkInterface.isLoopback()) {
+                continue;
+            }
+
+            for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                addresses.add(interfaceAddress.getAddress());
+            }
+        }
+
+        return addresses;
+    }
+
+    private static boolean isPublic(Inet4Address address) {
+        if (address.isLoopbackAddress() || address.isLinkLocalAddress() || address.isSiteLocalAddress()
+                || address.isAnyLocalAddress() || address.isMulticastAddress()) {
+            return false;
+        }
+
+        byte[] bytes = address.getAddress();
+        int first = bytes[0] & 0xff;
+        int second = bytes[1] & 0xff;
+        int third = bytes[2] & 0xff;
+
+        // other ranges that are not reachable from the outside: carrier-grade NAT, this network, benchmarking,
+        // documentation and reserved
+        return !((first == 100 && (second & 0xc0) == 64)
+                || first == 0
+                || (first == 198 && (second & 0xfe) == 18)
+                || (first == 192 && second == 0 && third == 2)
+                || (first == 198 && second == 51 && third == 100)
+                || (first == 203 && second == 0 && third == 113)
+                || first >= 240);
+    }
+
+    @Override
+    public String toString() {
+        return "network interfaces";
+    }
+}
@@ -0,0 +1,47 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+/**
+ * Moving averages of the latency and success rate of a provider.
+ */
+class ProviderStatistics {
+
+    private static final double ALPHA = 0.3;
+
+    private double latency;
+    private double successRate = 1.0;
+    private long samples;
+
+    synchronized void success(long latencyMillis) {
+        latency = samples == 0 ? latencyMillis : ALPHA * latencyMillis + (1 - ALPHA) * latency;
+        successRate = ALPHA + (1 - ALPHA) * successRate;
+        samples++;
+    }
+
+    synchronized void failure(long latencyMillis) {
+        latency = samples == 0 ? latencyMillis : ALPHA * latencyMillis + (1 - ALPHA) * latency;
+        successRate = (1 - ALPHA) * successRate;
+        samples++;
+    }
+
+    synchronized double getLatency() {
+        return latency;
+    }
+
+    synchronized double getSuccessRate() {
+        return successRate;
+    }
+
+    /**
+     * Expected time to a useful answer; lower is better. Providers without samples rank first, so they get measured.
+     *
+     * @param failurePenalty time (milliseconds) a failure costs
+     */
+    synchronized double getScore(long failurePenalty) {
+        return samples == 0 ? 0 : latency + (1 - successRate) * failurePenalty;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%.0f ms, %.0f%% success", latency, successRate * 100);
+    }
+}
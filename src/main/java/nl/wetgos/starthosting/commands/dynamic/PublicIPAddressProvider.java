@@ -4,4 +4,10 @@ public interface PublicIPAddressProvider {
 
     String getPublicIPAddress();
 
+    /**
+     * Aborts a lookup that is in progress in another thread, if supported.
+     */
+    default void cancel() {
+    }
+
 }
@@ -0,0 +1,12 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+public interface PublicIPAddressResolver {
+
+    /**
+     * Determines the public IP address using one or more providers.
+     *
+     * @return the public IP address, or null if it could not be determined
+     */
+    String resolve();
+
+}
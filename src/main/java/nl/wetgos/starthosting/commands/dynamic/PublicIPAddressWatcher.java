@@ -1,53 +1,277 @@
 package nl.wetgos.starthosting.commands.dynamic;
 
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.metrics.jfr.PublicIPLookupEvent;
+import nl.wetgos.starthosting.metrics.jfr.Tracing;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+/**
+ * Checks the public IP address on a schedule and reports changes.
+ * <p>
+ * After a change the address is checked again after the minimum interval, and the interval then grows with every
+ * check that finds the same address, up to the maximum interval. When the address cannot be determined at all, the
+ * checks back off exponentially. A random jitter is applied to every delay. Changes are reported on a separate
+ * thread, so slow updates do not delay the checks.
+ * <p>
+ * Addresses can also be pushed, i.e. by a router that reports its new address right after reconnecting. A pushed
+ * address is handled like the result of a check, so the scheduled checks only have to catch changes that were not
+ * pushed.
+ */
 @Slf4j
-@RequiredArgsConstructor
 public class PublicIPAddressWatcher {
 
-    private final List<PublicIPAddressProvider> providers;
-    private final long interval;
+    private static final double GROWTH_FACTOR = 1.5;
+    private static final double DEFAULT_JITTER = 0.1;
+    private static final int BACKOFF_FACTOR = 4;
 
-    public void watch(Consumer<String> publicIPAddressChanged) {
-        String lastPublicIPAddress = null;
+    private final PublicIPAddressResolver resolver;
+
+    /**
+     * Interval (milliseconds) right after a change.
+     */
+    @Setter
+    private long minInterval;
+
+    /**
+     * Interval (milliseconds) during stable periods.
+     */
+    @Setter
+    private long maxInterval;
+
+    /**
+     * Maximum random deviation of each delay, as a fraction of the delay.
+     */
+    @Setter
+    private double jitter = DEFAULT_JITTER;
+
+    @Getter
+    @Setter
+    private volatile String lastPublicIPAddress;
+
+    private long currentInterval;
+    private int failures;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService updater;
+    private Consumer<String> publicIPAddressChanged;
+    private ScheduledFuture<?> nextCheck;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public PublicIPAddressWatcher(List<PublicIPAddressProvider> providers, long interval) {
+        this(new SequentialPublicIPAddressResolver(providers), interval);
+    }
+
+    public PublicIPAddressWatcher(PublicIPAddressResolver resolver, long interval) {
+        this.resolver = resolver;
+        this.minInterval = Math.max(interval / 4, Math.min(interval, 1000));
+        this.maxInterval = interval;
+    }
+
+    /**
+     * Starts watching in the background. A stopped watcher can be started again.
+     *
+     * @param publicIPAddressChanged called with the new address on every change, one change at a time
+     */
+    public synchronized void start(Consumer<String> publicIPAddressChanged) {
+        if (scheduler != null && !scheduler.isShutdown()) {
+            throw new IllegalStateException("Already started");
+        }
 
         log.info("Start watching public IP address");
 
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "public-ip-watcher"));
+        updater = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "public-ip-update"));
+
+        currentInterval = minInterval;
+
+        this.publicIPAddressChanged = publicIPAddressChanged;
+
+        scheduler.execute(this::check);
+    }
+
+    /**
+     * Watches until the calling thread is interrupted or {@link #stop()} is called.
+     *
+     * @param publicIPAddressChanged called with the new address on every change, one change at a time
+     */
+    public void watch(Consumer<String> publicIPAddressChanged) {
+        start(publicIPAddressChanged);
+
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            log.debug("Thread interrupted");
+        } finally {
+            stop();
+        }
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null || scheduler.isShutdown()) {
+            return;
+        }
+
+        scheduler.shutdownNow();
+        updater.shutdownNow();
+
+        stopped.countDown();
+
+        log.info("Stopped watching public IP address");
+    }
+
+    /**
+     * Reports an address that was pushed, as if a check found it.
+     *
+     * @param publicIPAddress
+     */
+    public void push(String publicIPAddress) {
+        execute(() -> {
+            long cycleId = Tracing.newCycle();
+
+            PublicIPLookupEvent event = new PublicIPLookupEvent();
+            event.setCycleId(cycleId);
+            event.setPublicIPAddress(publicIPAddress);
+            event.setPushed(true);
+            event.setSuccess(true);
+
+            failures = 0;
+
+            if (!publicIPAddress.equals(lastPublicIPAddress)) {
+                log.info("Public IP address pushed: {}", publicIPAddress);
+
+                event.setChanged(true);
+
+                changed(publicIPAddress, cycleId);
+            }
+
+            event.commit();
+        });
+    }
+
+    /**
+     * Checks the address right away instead of at the next scheduled check, i.e. when a router reports a change
+     * without the address.
+     */
+    public void checkNow() {
+        execute(() -> reschedule(0));
+    }
+
+    private void execute(Runnable task) {
+        synchronized (this) {
+            // before the start the first check is still to come
+            if (scheduler != null && !scheduler.isShutdown()) {
+                scheduler.execute(task);
+            }
+        }
+    }
+
+    /**
+     * Moves the next check. Runs on the scheduler thread, so no check is running.
+     */
+    private void reschedule(long delay) {
+        if (nextCheck != null && nextCheck.cancel(false)) {
+            schedule(delay);
+        }
+    }
+
+    private void changed(String publicIPAddress, long cycleId) {
+        lastPublicIPAddress = publicIPAddress;
+        currentInterval = minInterval;
+
+        updater.execute(() -> notify(publicIPAddressChanged, publicIPAddress, cycleId));
+    }
+
+    private void check() {
+        long delay;
+
+        long cycleId = Tracing.newCycle();
+
+        PublicIPLookupEvent event = new PublicIPLookupEvent();
+        event.setCycleId(cycleId);
+        event.begin();
+
         try {
-            while (true) {
-                String publicIPAddress = doCheck();
+            String publicIPAddress = resolver.resolve();
 
-                if (publicIPAddress != null && !publicIPAddress.equals(lastPublicIPAddress)) {
+            event.end();
+            event.setPublicIPAddress(publicIPAddress);
+            event.setSuccess(publicIPAddress != null);
+
+            if (publicIPAddress == null) {
+                delay = backoff();
+                log.warn("Could not determine public IP address, checking again in {} ms", delay);
+            } else {
+                failures = 0;
+
+                if (!publicIPAddress.equals(lastPublicIPAddress)) {
                     log.info("Public IP address changed: {}", publicIPAddress);
 
-                    publicIPAddressChanged.accept(publicIPAddress);
+                    event.setChanged(true);
 
-                    lastPublicIPAddress = publicIPAddress;
+                    changed(publicIPAddress, cycleId);
+                } else {
+                    currentInterval = Math.min(maxInterval, (long) (currentInterval * GROWTH_FACTOR));
                 }
 
-                Thread.sleep(interval);
+                delay = currentInterval;
             }
-        } catch (InterruptedException e) {
-            log.debug("Thread interrupted");
+        } catch (RuntimeException e) {
+            delay = backoff();
+            log.error("Could not check public IP address, checking again in " + delay + " ms", e);
         }
 
-        log.info("Stopped watching public IP address");
+        event.commit();
+
+        schedule(jitter(delay));
+    }
+
+    private void notify(Consumer<String> publicIPAddressChanged, String publicIPAddress, long cycleId) {
+        Tracing.Scope scope = Tracing.enter(cycleId);
+        try {
+            publicIPAddressChanged.accept(publicIPAddress);
+        } catch (RuntimeException e) {
+            log.error("Could not handle public IP address change", e);
+        } finally {
+            scope.close();
+        }
     }
 
-    private String doCheck() {
-        for (PublicIPAddressProvider provider : providers) {
-            try {
-                return provider.getPublicIPAddress();
-            } catch (Exception e) {
-                log.warn("Could not get public IP address from provider " + provider, e);
+    private void schedule(long delay) {
+        synchronized (this) {
+            if (!scheduler.isShutdown()) {
+                nextCheck = scheduler.schedule(this::check, delay, TimeUnit.MILLISECONDS);
             }
         }
-        return null;
+    }
+
+    private long backoff() {
+        failures++;
+
+        long cap = maxInterval * BACKOFF_FACTOR;
+        long backoff = minInterval << Math.min(failures - 1, 30);
+
+        return backoff > 0 ? Math.min(backoff, cap) : cap;
+    }
+
+    private long jitter(long delay) {
+        if (jitter <= 0) {
+            return delay;
+        }
+
+        double deviation = (ThreadLocalRandom.current().nextDouble() * 2 - 1) * jitter;
+
+        return Math.max(0, (long) (delay * (1 + deviation)));
     }
 
 }
@@ -0,0 +1,213 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.PackedIPAddress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Receives public IP address changes from routers with the dyndns2 protocol, so changes are applied right away
+ * instead of at the next check.
+ * <p>
+ * Routers call {@code GET /nic/update?hostname=mydomain.com&myip=203.0.113.10} with basic authentication. The
+ * address is pushed to the watcher of the uplink that serves the hostname, or of the only uplink when no hostname is
+ * given. Without {@code myip} the watcher checks the address right away. The response is the usual {@code good},
+ * {@code nochg}, {@code badauth} or {@code nohost}.
+ */
+@Slf4j
+public class PushReceiver implements Closeable {
+
+    public static final String PATH = "/nic/update";
+
+    private final byte[] authorization;
+
+    private final List<PublicIPAddressWatcher> watchers = new ArrayList<>();
+    private final Map<String, PublicIPAddressWatcher> hostnames = new HashMap<>();
+
+    private HttpServer server;
+
+    /**
+     * @param user     user name routers authenticate with
+     * @param password password routers authenticate with
+     */
+    public PushReceiver(String user, String password) {
+        if (user == null || password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("Pushing public IP addresses requires a user and password");
+        }
+
+        authorization = ("Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8)))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Adds the watcher of an uplink.
+     *
+     * @param watcher
+     * @param domains the hostnames routers may push for this uplink
+     */
+    public synchronized void addUplink(PublicIPAddressWatcher watcher, Collection<String> domains) {
+        watchers.add(watcher);
+
+        for (String domain : domains) {
+            hostnames.put(domain.trim().toLowerCase(Locale.ROOT), watcher);
+        }
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PATH, this::handle);
+        server.start();
+
+        log.info("Receiving public IP addresses on http://localhost:{}{}", server.getAddress().getPort(), PATH);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+
+            // constant time, so the password cannot be guessed from response times
+            if (authorization == null || !MessageDigest.isEqual(this.authorization, authorization.getBytes(StandardCharsets.UTF_8))) {
+                log.warn("Unauthorized public IP push from {}", exchange.getRemoteAddress());
+
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Basic realm=\"starthosting-tool\"");
+                respond(exchange, 401, "badauth");
+                return;
+            }
+
+            Map<String, String> parameters;
+            try {
+                parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, "badrequest");
+                return;
+            }
+
+            Set<PublicIPAddressWatcher> targets = getWatchers(parameters.get("hostname"));
+
+            if (targets == null) {
+                respond(exchange, 200, "nohost");
+                return;
+            }
+
+            String myIP = parameters.get("myip");
+
+            if (myIP == null || myIP.isEmpty()) {
+                log.info("Public IP change reported by {}", exchange.getRemoteAddress());
+
+                targets.forEach(PublicIPAddressWatcher::checkNow);
+                respond(exchange, 200, "good");
+                return;
+            }
+
+            String publicIPAddress = normalize(myIP);
+
+            if (publicIPAddress == null) {
+                respond(exchange, 400, "badip");
+                return;
+            }
+
+            boolean changed = false;
+
+            for (PublicIPAddressWatcher watcher : targets) {
+                changed |= !publicIPAddress.equals(watcher.getLastPublicIPAddress());
+                watcher.push(publicIPAddress);
+            }
+
+            respond(exchange, 200, (changed ? "good " : "nochg ") + publicIPAddress);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param hostname comma separated hostnames, or null
+     * @return the watchers of the hostnames, or null if a hostname is unknown
+     */
+    private synchronized Set<PublicIPAddressWatcher> getWatchers(String hostname) {
+        Set<PublicIPAddressWatcher> targets = new LinkedHashSet<>();
+
+        if (hostname == null || hostname.isEmpty()) {
+            if (watchers.size() != 1) {
+                return null;
+            }
+
+            targets.add(watchers.get(0));
+            return targets;
+        }
+
+        for (String name : hostname.split(",")) {
+            PublicIPAddressWatcher watcher = hostnames.get(name.trim().toLowerCase(Locale.ROOT));
+
+            if (watcher == null) {
+                return null;
+            }
+
+            targets.add(watcher);
+        }
+
+        return targets;
+    }
+
+    /**
+     * @param text
+     * @return the address in its usual form, or null if the text is not an IP address
+     */
+    private static String normalize(String text) {
+        byte[] bytes = text.trim().getBytes(StandardCharsets.US_ASCII);
+
+        PackedIPAddress address = new PackedIPAddress();
+
+        return address.parse(bytes, 0, bytes.length) ? address.format() : null;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                String[] keyValue = parameter.split("=", 2);
+
+                parameters.put(URLDecoder.decode(keyValue[0], "UTF-8"),
+                        keyValue.length > 1 ? URLDecoder.decode(keyValue[1], "UTF-8") : "");
+            }
+        }
+
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * Asks the providers one by one, in order, until one of them answers.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class SequentialPublicIPAddressResolver implements PublicIPAddressResolver {
+
+    private final List<PublicIPAddressProvider> providers;
+
+    @Override
+    public String resolve() {
+        for (PublicIPAddressProvider provider : providers) {
+            try {
+                return provider.getPublicIPAddress();
+            } catch (Exception e) {
+                log.warn("Could not get public IP address from provider " + provider, e);
+            }
+        }
+        return null;
+    }
+}
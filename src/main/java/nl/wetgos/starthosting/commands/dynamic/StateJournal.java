@@ -0,0 +1,401 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.commands.RecordSelector;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of the dynamic DNS updater that survives restarts: the last known public IP address per uplink, and per
+ * domain the values last applied to its records and the selector that chose them.
+ * <p>
+ * Every change is appended as one line to a journal file, so a crash loses at most the line being written. A
+ * trailing line without line end is ignored when the journal is opened. The journal is rewritten with only the
+ * current state when it is opened and whenever it has grown well beyond that state.
+ */
+@Slf4j
+public class StateJournal implements Closeable {
+
+    private static final String IP = "ip";
+    private static final String DOMAIN = "domain";
+
+    /**
+     * Number of superseded lines after which the journal is compacted.
+     */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private final Path file;
+
+    /**
+     * Journal that holds the state, this journal unless it is a scope of another one.
+     */
+    private final StateJournal root;
+    private final String scope;
+
+    private final Map<String, Entry> publicIPAddresses = new LinkedHashMap<>();
+    private final Map<String, DomainState> domains = new LinkedHashMap<>();
+
+    private BufferedWriter writer;
+    private int lines;
+
+    private StateJournal(Path file) {
+        this.file = file;
+        this.root = this;
+        this.scope = null;
+    }
+
+    private StateJournal(StateJournal root, String scope) {
+        this.file = root.file;
+        this.root = root;
+        this.scope = scope;
+    }
+
+    /**
+     * Opens a journal, creating it if it does not exist.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static StateJournal open(Path file) throws IOException {
+        StateJournal journal = new StateJournal(file);
+
+        if (Files.exists(file)) {
+            journal.replay();
+        }
+
+        journal.compact();
+
+        log.info("Opened state journal {}: {} public IP address(es), {} domain(s)", file,
+                journal.publicIPAddresses.size(), journal.domains.size());
+
+        return journal;
+    }
+
+    /**
+     * Gets a view of this journal whose domains are kept apart from those of other scopes, so accounts that manage
+     * the same domain name can share a journal. Public IP addresses are shared by all scopes.
+     *
+     * @param scope
+     * @return
+     */
+    public StateJournal scope(String scope) {
+        return new StateJournal(root, this.scope != null ? this.scope + "/" + scope : scope);
+    }
+
+    /**
+     * Gets the last known public IP address.
+     *
+     * @param key identifies the uplink, i.e. the public IP URLs
+     * @return the address, or null if it is not known
+     */
+    public String getPublicIPAddress(String key) {
+        synchronized (root) {
+            Entry entry = root.publicIPAddresses.get(key);
+            return entry != null ? entry.getValue() : null;
+        }
+    }
+
+    public void setPublicIPAddress(String key, String publicIPAddress) {
+        synchronized (root) {
+            Entry entry = new Entry(publicIPAddress, System.currentTimeMillis());
+
+            if (entry.getValue().equals(getPublicIPAddress(key))) {
+                return;
+            }
+
+            root.publicIPAddresses.put(key, entry);
+
+            root.append(IP, String.valueOf(entry.getTime()), key, publicIPAddress);
+        }
+    }
+
+    /**
+     * Gets the state of a domain.
+     *
+     * @param domain
+     * @return the state, or null if no update of the domain was recorded
+     */
+    public DomainState getDomainState(String domain) {
+        synchronized (root) {
+            return root.domains.get(key(domain));
+        }
+    }
+
+    /**
+     * Checks whether all records last applied to a domain with the given selector have the given value.
+     *
+     * @param domain
+     * @param selector
+     * @param value
+     * @return false if they differ, if the records were selected differently, or if no update of the domain was
+     * recorded
+     */
+    public boolean isUpToDate(String domain, RecordSelector selector, String value) {
+        DomainState state = getDomainState(domain);
+
+        return state != null && selector.toString().equals(state.getSelector()) && !state.getValues().isEmpty()
+                && state.getValues().values().stream().allMatch(value::equals);
+    }
+
+    /**
+     * Records that the given records of a domain have their current value, replacing the previous state of the
+     * domain. Virtual records are left out, because they are not changed.
+     *
+     * @param domain
+     * @param selector   the selector that chose the records
+     * @param dnsRecords
+     */
+    public void setApplied(String domain, RecordSelector selector, Collection<DNSRecord> dnsRecords) {
+        Map<String, String> values = new LinkedHashMap<>();
+
+        for (DNSRecord dnsRecord : dnsRecords) {
+            if (dnsRecord.getId() != null) {
+                values.put(dnsRecord.getId(), dnsRecord.getContent() != null ? dnsRecord.getContent() : "");
+            }
+        }
+
+        DomainState state = new DomainState(System.currentTimeMillis(), selector.toString(),
+                Collections.unmodifiableMap(values));
+
+        synchronized (root) {
+            root.domains.put(key(domain), state);
+
+            root.append(toFields(key(domain), state));
+        }
+    }
+
+    /**
+     * Forgets the public IP addresses and the state of all domains, i.e. when another instance may have changed the
+     * records since they were recorded. The next update then checks every domain.
+     */
+    public void forget() {
+        synchronized (root) {
+            root.publicIPAddresses.clear();
+            root.domains.clear();
+
+            try {
+                root.compact();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write state journal " + file, e);
+            }
+        }
+
+        log.info("Forgot the state in state journal {}", file);
+    }
+
+    /**
+     * Closes the journal. Closing a scope has no effect.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private String key(String domain) {
+        return scope != null ? scope + "/" + domain : domain;
+    }
+
+    private void replay() throws IOException {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+
+        int start = 0;
+        int number = 0;
+
+        for (int end = content.indexOf('\n'); end >= 0; end = content.indexOf('\n', start)) {
+            number++;
+
+            String line = content.substring(start, end);
+            start = end + 1;
+
+            try {
+                apply(line.split("\t", -1));
+            } catch (RuntimeException e) {
+                log.warn("Ignoring line {} of state journal {}: {}", number, file, e.getMessage());
+            }
+        }
+
+        if (start < content.length()) {
+            log.warn("Ignoring incomplete last line of state journal {}", file);
+        }
+    }
+
+    private void apply(String[] fields) {
+        switch (fields[0]) {
+            case IP:
+                if (fields.length != 4) {
+                    throw new IllegalArgumentException("Expected ip, time, key and address");
+                }
+                publicIPAddresses.put(unescape(fields[2]), new Entry(unescape(fields[3]), Long.parseLong(fields[1])));
+                break;
+            case DOMAIN:
+                if (fields.length < 3) {
+                    throw new IllegalArgumentException("Expected domain, time, domain name, selector and id value pairs");
+                }
+
+                // lines written before the selector was recorded have no selector, so the domain counts as drifted
+                int first = fields.length % 2 == 0 ? 4 : 3;
+                String selector = first == 4 ? unescape(fields[3]) : null;
+
+                Map<String, String> values = new LinkedHashMap<>();
+                for (int i = first; i < fields.length; i += 2) {
+                    values.put(unescape(fields[i]), unescape(fields[i + 1]));
+                }
+
+                domains.put(unescape(fields[2]), new DomainState(Long.parseLong(fields[1]), selector,
+                        Collections.unmodifiableMap(values)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown entry: " + fields[0]);
+        }
+    }
+
+    private void append(String... fields) {
+        if (writer == null) {
+            throw new IllegalStateException("State journal " + file + " is closed");
+        }
+
+        try {
+            write(writer, fields);
+            writer.flush();
+
+            lines++;
+
+            if (lines > publicIPAddresses.size() + domains.size() + COMPACT_THRESHOLD) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write state journal " + file, e);
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the current state and reopens it for appending.
+     */
+    private void compact() throws IOException {
+        close();
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (BufferedWriter out = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : publicIPAddresses.entrySet()) {
+                write(out, IP, String.valueOf(entry.getValue().getTime()), entry.getKey(), entry.getValue().getValue());
+            }
+
+            for (Map.Entry<String, DomainState> entry : domains.entrySet()) {
+                write(out, toFields(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        lines = publicIPAddresses.size() + domains.size();
+
+        log.debug("Compacted state journal {}", file);
+    }
+
+    private static String[] toFields(String domain, DomainState state) {
+        List<String> fields = new ArrayList<>(4 + state.getValues().size() * 2);
+
+        fields.add(DOMAIN);
+        fields.add(String.valueOf(state.getTime()));
+        fields.add(domain);
+        fields.add(state.getSelector() != null ? state.getSelector() : "");
+
+        for (Map.Entry<String, String> value : state.getValues().entrySet()) {
+            fields.add(value.getKey());
+            fields.add(value.getValue());
+        }
+
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private static void write(BufferedWriter out, String... fields) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+            // the entry type and time never need escaping
+            line.append(i < 2 ? fields[i] : escape(fields[i]));
+        }
+
+        out.write(line.append('\n').toString());
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+
+        StringBuilder unescaped = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                unescaped.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                unescaped.append(c);
+            }
+        }
+
+        return unescaped.toString();
+    }
+
+    @Value
+    private static class Entry {
+
+        String value;
+        long time;
+
+    }
+
+    /**
+     * Values last applied to the records of a domain, by record id, and the selector that chose the records.
+     */
+    @Value
+    public static class DomainState {
+
+        /**
+         * Time of the update (milliseconds since the epoch).
+         */
+        long time;
+
+        /**
+         * Description of the selector, or null if it was not recorded.
+         */
+        String selector;
+
+        Map<String, String> values;
+
+    }
+}
@@ -1,56 +1,157 @@
 package nl.wetgos.starthosting.commands.dynamic;
 
-import lombok.Cleanup;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.PackedIPAddress;
+import nl.wetgos.starthosting.http.HttpTransport;
+import nl.wetgos.starthosting.metrics.Metrics;
+import nl.wetgos.starthosting.metrics.OperationMetrics;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
+/**
+ * Gets the public IP address from a URL that answers with just the address.
+ * <p>
+ * Lookups are made for every check, so the provider reuses its request and buffer, and parses the response into
+ * a binary address, which is returned in its canonical form. When the address did not change, the string of the
+ * last lookup is returned again, so a check that finds the same address creates no garbage in this class. Responses
+ * that are not a single IPv4 or IPv6 address, like HTML error pages, are rejected.
+ */
 @Slf4j
 public class URLPublicIPAddressProvider implements PublicIPAddressProvider {
 
+    /**
+     * Longest response accepted, enough for an IPv6 address with some whitespace.
+     */
+    private static final int MAX_RESPONSE_LENGTH = 64;
+
     private final String url;
 
     private final HttpClient httpClient;
 
-    public URLPublicIPAddressProvider(String url) {
+    private final OperationMetrics metrics;
+
+    private final HttpGet request;
+    private final HttpClientContext context = HttpClientContext.create();
+
+    private final byte[] buffer = new byte[MAX_RESPONSE_LENGTH + 1];
+    private final PackedIPAddress address = new PackedIPAddress();
+    private final PackedIPAddress lastAddress = new PackedIPAddress();
+    private String lastText;
+
+    private volatile HttpGet currentRequest;
+
+    /**
+     * @param url
+     * @param transport shared transport, which also sets the timeouts
+     */
+    public URLPublicIPAddressProvider(String url, HttpTransport transport) {
         this.url = url;
 
-        httpClient = HttpClientBuilder.create()
-                .disableRedirectHandling()
-                .build();
+        httpClient = transport.getHttpClient();
+        metrics = Metrics.getDefault().operation(Metrics.PUBLIC_IP_LOOKUP, url);
+
+        request = new HttpGet(url);
     }
 
     @Override
-    public String getPublicIPAddress() {
-        try {
-            @Cleanup("releaseConnection")
-            HttpGet request = new HttpGet(url);
+    public synchronized String getPublicIPAddress() {
+        currentRequest = request;
+
+        long start = System.nanoTime();
+        boolean success = false;
 
+        try {
             log.debug("Requesting {}", url);
 
-            HttpResponse response = httpClient.execute(request);
+            HttpResponse response = httpClient.execute(request, context);
 
             if (response.getStatusLine().getStatusCode() != 200) {
                 throw new IllegalStateException("Unexpected response status: " + response.getStatusLine());
             }
 
-            @Cleanup
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            response.getEntity().writeTo(byteArrayOutputStream);
-
-            String content = byteArrayOutputStream.toString("UTF-8").trim();
+            String content = read(response.getEntity().getContent());
 
             log.debug("Server response: {}", content);
 
+            success = true;
+
             return content;
         } catch (IOException e) {
             throw new RuntimeException("Could not get public IP address from " + url, e);
+        } finally {
+            currentRequest = null;
+
+            boolean aborted = request.isAborted();
+
+            // also resets the request, so it can be sent again
+            request.releaseConnection();
+
+            // lookups cancelled by the resolver are not failures of this provider
+            if (success || !aborted) {
+                metrics.record(start, success);
+            }
+        }
+    }
+
+    /**
+     * Reads a response into the buffer and parses it.
+     *
+     * @param content
+     * @return the address in its canonical form, the same string as last time if it did not change
+     * @throws IOException
+     * @throws IllegalStateException if the response is not an IP address
+     */
+    String read(InputStream content) throws IOException {
+        int length = 0;
+        int read;
+
+        while ((read = content.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+
+            if (length == buffer.length) {
+                throw new IllegalStateException("Response is longer than an IP address");
+            }
+        }
+
+        int from = 0;
+        int to = length;
+
+        // bytes are signed, so mask them to leave bytes of 0x80 and above to the parser
+        while (from < to && (buffer[from] & 0xff) <= ' ') {
+            from++;
+        }
+        while (to > from && (buffer[to - 1] & 0xff) <= ' ') {
+            to--;
+        }
+
+        if (!address.parse(buffer, from, to)) {
+            throw new IllegalStateException("Response is not an IP address");
+        }
+
+        if (lastText == null || !address.sameAs(lastAddress)) {
+            lastAddress.copyFrom(address);
+            lastText = address.format();
         }
+
+        return lastText;
+    }
+
+    @Override
+    public void cancel() {
+        HttpGet request = currentRequest;
+
+        if (request != null) {
+            request.abort();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url;
     }
 }
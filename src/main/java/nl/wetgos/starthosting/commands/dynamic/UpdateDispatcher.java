@@ -0,0 +1,160 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.metrics.jfr.Tracing;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Stage between detecting public IP address changes and updating the records.
+ * <p>
+ * A change is only dispatched when no other change followed within the debounce window, and only the latest
+ * address is dispatched, so a flapping uplink causes one update instead of one per intermediate address. Updates
+ * run one at a time. An update in progress is told when a newer address arrives, so it can skip the domains it did
+ * not start yet; the newer address is dispatched as soon as it finishes.
+ */
+@Slf4j
+public class UpdateDispatcher implements Consumer<String> {
+
+    private final Update update;
+    private final long debounce;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService updater;
+
+    private String latest;
+    private long latestCycleId;
+    private long version;
+    private String lastDispatched;
+    private ScheduledFuture<?> pending;
+    private boolean updating;
+
+    /**
+     * @param update   performs an update
+     * @param debounce time (milliseconds) a change must be stable before it is dispatched
+     */
+    public UpdateDispatcher(Update update, long debounce) {
+        this.update = update;
+        this.debounce = debounce;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "update-debounce"));
+        updater = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "update-dispatch"));
+    }
+
+    /**
+     * Reports a new public IP address.
+     *
+     * @param publicIPAddress
+     */
+    @Override
+    public synchronized void accept(String publicIPAddress) {
+        latest = publicIPAddress;
+        latestCycleId = Tracing.getCycle();
+        version++;
+
+        if (pending != null) {
+            pending.cancel(false);
+        }
+
+        if (scheduler.isShutdown()) {
+            return;
+        }
+
+        pending = scheduler.schedule(this::dispatch, debounce, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forgets the last dispatched address, so it is dispatched again when it is reported.
+     */
+    public synchronized void reset() {
+        lastDispatched = null;
+    }
+
+    public synchronized void stop() {
+        scheduler.shutdownNow();
+        updater.shutdownNow();
+    }
+
+    private synchronized void dispatch() {
+        pending = null;
+
+        if (updater.isShutdown()) {
+            return;
+        }
+
+        if (updating) {
+            // dispatched again when the running update finishes
+            return;
+        }
+
+        if (latest.equals(lastDispatched)) {
+            log.debug("Public IP address {} was already dispatched", latest);
+            return;
+        }
+
+        String publicIPAddress = latest;
+        long cycleId = latestCycleId;
+        long dispatchedVersion = version;
+
+        lastDispatched = publicIPAddress;
+        updating = true;
+
+        updater.execute(() -> run(publicIPAddress, cycleId, dispatchedVersion));
+    }
+
+    private synchronized boolean isSuperseded(long dispatchedVersion) {
+        return version != dispatchedVersion;
+    }
+
+    private void run(String publicIPAddress, long cycleId, long dispatchedVersion) {
+        Tracing.Scope scope = Tracing.enter(cycleId);
+        try {
+            update.run(publicIPAddress, () -> isSuperseded(dispatchedVersion));
+        } catch (RuntimeException e) {
+            log.error("Could not update to public IP address " + publicIPAddress, e);
+        } finally {
+            scope.close();
+
+            synchronized (this) {
+                updating = false;
+
+                if (isSuperseded(dispatchedVersion)) {
+                    log.info("Public IP address {} superseded by {}", publicIPAddress, latest);
+
+                    // the update may have skipped domains, so it is not done for this address
+                    lastDispatched = null;
+
+                    if (pending == null) {
+                        dispatch();
+                    }
+                }
+            }
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @FunctionalInterface
+    public interface Update {
+
+        /**
+         * Updates the records to a public IP address.
+         *
+         * @param publicIPAddress
+         * @param superseded      tells whether a newer address arrived, in which case domains that were not
+         *                        started yet should be skipped
+         */
+        void run(String publicIPAddress, BooleanSupplier superseded);
+
+    }
+}
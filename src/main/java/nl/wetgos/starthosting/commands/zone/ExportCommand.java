@@ -0,0 +1,134 @@
+package nl.wetgos.starthosting.commands.zone;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.StartHostingClient;
+import nl.wetgos.starthosting.commands.Command;
+import nl.wetgos.starthosting.commands.CommandContext;
+import nl.wetgos.starthosting.commands.ParallelDomainExecutor;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Exports the DNS records of a number of domains to one file per domain.
+ * <p>
+ * Records are written while the page of the panel is being parsed, so no zone is held in memory. Each file is
+ * written under a temporary name and only renamed when the domain was exported completely, so a failed export does
+ * not replace the last good file.
+ */
+@Slf4j
+public class ExportCommand implements Command {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    @Override
+    public void run(CommandContext context) throws Exception {
+        CommandLine commandLine = context.getCommandLine();
+
+        Set<String> domains = readDomains(commandLine);
+        Path output = Paths.get(commandLine.getOptionValue("output"));
+        ZoneFileFormat format = ZoneFileFormat.valueOf(commandLine.getOptionValue("format", "csv").toUpperCase(Locale.ROOT));
+        int concurrency = Integer.parseInt(commandLine.getOptionValue("concurrency", String.valueOf(DEFAULT_CONCURRENCY)));
+
+        Files.createDirectories(output);
+
+        AtomicInteger records = new AtomicInteger();
+
+        ParallelDomainExecutor executor = new ParallelDomainExecutor(context.getClientFactory(), concurrency);
+
+        ParallelDomainExecutor.Summary summary = executor.execute(domains,
+                (client, domain) -> records.addAndGet(export(client, domain, output, format)));
+
+        log.info("Export finished: {}, {} record(s) written to {}", summary, records.get(), output);
+    }
+
+    private int export(StartHostingClient client, String domain, Path output, ZoneFileFormat format) throws IOException {
+        Path file = output.resolve(domain + "." + format.getExtension());
+        Path temporaryFile = output.resolve(domain + "." + format.getExtension() + ".tmp");
+
+        AtomicInteger count = new AtomicInteger();
+
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                if (format.getHeader() != null) {
+                    writer.write(format.getHeader());
+                    writer.newLine();
+                }
+
+                client.changeDomain(domain);
+
+                client.getDNSRecords(record -> {
+                    try {
+                        writer.write(format.format(domain, record));
+                        writer.newLine();
+                        count.incrementAndGet();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+
+        log.debug("Exported {} record(s) of {} to {}", count.get(), domain, file);
+
+        return count.get();
+    }
+
+    private static Set<String> readDomains(CommandLine commandLine) throws IOException, ParseException {
+        Set<String> domains = new LinkedHashSet<>();
+
+        if (commandLine.hasOption("domain")) {
+            domains.addAll(Arrays.asList(commandLine.getOptionValue("domain").split(",")));
+        }
+
+        if (commandLine.hasOption("domainfile")) {
+            domains.addAll(Files.readAllLines(Paths.get(commandLine.getOptionValue("domainfile")), StandardCharsets.UTF_8));
+        }
+
+        domains = domains.stream()
+                .map(String::trim)
+                .filter(domain -> !domain.isEmpty() && !domain.startsWith("#"))
+                .map(domain -> domain.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        if (domains.isEmpty()) {
+            throw new ParseException("No domains given, use -domain or -domainfile");
+        }
+
+        return domains;
+    }
+
+    @Override
+    public void configureOptions(Options options) {
+        options.addOption(Option.builder("domain").hasArg().desc("Domain name(s) to export (i.e. mydomain.com,myotherdomain.com)").build());
+        options.addOption(Option.builder("domainfile").hasArg().desc("File with the domain names to export, one per line").build());
+        options.addOption(Option.builder("output").hasArg().required().desc("Directory to write one file per domain to").build());
+        options.addOption(Option.builder("format").hasArg().desc("File format: csv (default) or json (JSON lines)").build());
+        options.addOption(Option.builder("concurrency").hasArg().desc("Maximum number of domains to export in parallel (default " + DEFAULT_CONCURRENCY + ")").build());
+    }
+
+    @Override
+    public String getDescription() {
+        return "export DNS records to files";
+    }
+}
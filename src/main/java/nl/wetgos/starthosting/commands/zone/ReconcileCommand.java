@@ -0,0 +1,161 @@
+package nl.wetgos.starthosting.commands.zone;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.wetgos.starthosting.client.BatchUpdateResult;
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.client.StartHostingClient;
+import nl.wetgos.starthosting.client.StartHostingClientException;
+import nl.wetgos.starthosting.commands.Command;
+import nl.wetgos.starthosting.commands.CommandContext;
+import nl.wetgos.starthosting.commands.ParallelDomainExecutor;
+import nl.wetgos.starthosting.commands.UpdatePlan;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Brings the DNS records of a number of domains to the state of export files.
+ * <p>
+ * Every domain is activated and its records are fetched once. Only records that differ from the desired state are
+ * written, in one batch per domain.
+ */
+@Slf4j
+public class ReconcileCommand implements Command {
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    @Override
+    public void run(CommandContext context) throws Exception {
+        CommandLine commandLine = context.getCommandLine();
+
+        Path input = Paths.get(commandLine.getOptionValue("input"));
+        boolean dryRun = commandLine.hasOption("dryrun");
+        int concurrency = Integer.parseInt(commandLine.getOptionValue("concurrency", String.valueOf(DEFAULT_CONCURRENCY)));
+
+        Map<String, List<DNSRecord>> desiredRecords = new LinkedHashMap<>();
+
+        for (Path file : listFiles(input)) {
+            read(file, desiredRecords);
+        }
+
+        log.info("Reconciling {} domain(s)", desiredRecords.size());
+
+        AtomicInteger updated = new AtomicInteger();
+
+        ParallelDomainExecutor executor = new ParallelDomainExecutor(context.getClientFactory(), concurrency);
+
+        ParallelDomainExecutor.Summary summary = executor.execute(desiredRecords.keySet(),
+                (client, domain) -> updated.addAndGet(reconcile(client, domain, desiredRecords.get(domain), dryRun)));
+
+        log.info("Reconcile finished: {}, {} record(s) updated", summary, updated.get());
+    }
+
+    private int reconcile(StartHostingClient client, String domain, List<DNSRecord> desiredRecords, boolean dryRun) {
+        client.changeDomain(domain);
+
+        // compare with the records at the panel, not with what this process read before
+        ZoneDiff diff = ZoneDiff.create(domain, client.getDNSRecords(true), desiredRecords);
+
+        if (!diff.isEmpty()) {
+            synchronized (System.out) {
+                diff.print(System.out);
+            }
+        }
+
+        if (dryRun || diff.getChanges().isEmpty()) {
+            return 0;
+        }
+
+        List<DNSRecord> newRecords = diff.getChanges().stream()
+                .map(UpdatePlan.Change::getNewRecord)
+                .collect(Collectors.toList());
+
+        BatchUpdateResult result = client.updateDNSRecords(newRecords);
+
+        if (result.getFailed() > 0) {
+            throw new StartHostingClientException("Could not update " + result.getFailed() + " of " + newRecords.size()
+                    + " DNS record(s) of " + domain);
+        }
+
+        return result.getSucceeded();
+    }
+
+    private static List<Path> listFiles(Path input) throws IOException {
+        if (!Files.isDirectory(input)) {
+            List<Path> files = new ArrayList<>();
+            files.add(input);
+            return files;
+        }
+
+        try (Stream<Path> files = Files.list(input)) {
+            return files
+                    .filter(file -> isExportFile(file.getFileName().toString()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isExportFile(String fileName) {
+        try {
+            ZoneFileFormat.forFileName(fileName);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static void read(Path file, Map<String, List<DNSRecord>> desiredRecords) throws IOException {
+        ZoneFileFormat format = ZoneFileFormat.forFileName(file.getFileName().toString());
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+
+            while ((line = reader.readLine()) != null) {
+                number++;
+
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                ZoneRecord zoneRecord;
+                try {
+                    zoneRecord = format.parse(line);
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException(file + " line " + number + ": " + e.getMessage(), e);
+                }
+
+                if (zoneRecord != null) {
+                    desiredRecords.computeIfAbsent(zoneRecord.getDomain(), domain -> new ArrayList<>())
+                            .add(zoneRecord.getRecord());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void configureOptions(Options options) {
+        options.addOption(Option.builder("input").hasArg().required().desc("Export file, or directory of export files, with the desired records").build());
+        options.addOption(Option.builder("concurrency").hasArg().desc("Maximum number of domains to reconcile in parallel (default " + DEFAULT_CONCURRENCY + ")").build());
+        options.addOption(Option.builder("dryrun").desc("Print the differences instead of applying them").build());
+    }
+
+    @Override
+    public String getDescription() {
+        return "apply export files as desired state";
+    }
+}
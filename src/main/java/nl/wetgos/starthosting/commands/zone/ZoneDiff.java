@@ -0,0 +1,153 @@
+package nl.wetgos.starthosting.commands.zone;
+
+import lombok.Getter;
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.commands.UpdatePlan;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Differences between the current and the desired records of a domain.
+ * <p>
+ * Desired records are matched to current records by id, and otherwise by type and name. Matched records whose type,
+ * name or content differ become changes. The panel can neither create nor delete records, so desired records without
+ * a match and current records that are not desired are only reported.
+ */
+@Getter
+class ZoneDiff {
+
+    private final String domain;
+
+    private final List<UpdatePlan.Change> changes = new ArrayList<>();
+    private final List<DNSRecord> unchanged = new ArrayList<>();
+    private final List<DNSRecord> missing = new ArrayList<>();
+    private final List<DNSRecord> extra = new ArrayList<>();
+
+    private ZoneDiff(String domain) {
+        this.domain = domain;
+    }
+
+    static ZoneDiff create(String domain, List<DNSRecord> current, List<DNSRecord> desired) {
+        ZoneDiff diff = new ZoneDiff(domain);
+
+        Set<DNSRecord> unmatched = new LinkedHashSet<>(current);
+        List<DNSRecord> withoutId = new ArrayList<>();
+
+        for (DNSRecord desiredRecord : desired) {
+            DNSRecord currentRecord = desiredRecord.getId() != null ? findById(unmatched, desiredRecord.getId()) : null;
+
+            if (currentRecord != null) {
+                diff.add(unmatched, currentRecord, desiredRecord);
+            } else {
+                withoutId.add(desiredRecord);
+            }
+        }
+
+        for (DNSRecord desiredRecord : withoutId) {
+            DNSRecord currentRecord = findByTypeAndName(unmatched, desiredRecord);
+
+            if (currentRecord != null) {
+                diff.add(unmatched, currentRecord, desiredRecord);
+            } else {
+                diff.missing.add(desiredRecord);
+            }
+        }
+
+        for (DNSRecord currentRecord : unmatched) {
+            // virtual records cannot be changed, so they only matter when desired
+            if (currentRecord.getId() != null) {
+                diff.extra.add(currentRecord);
+            }
+        }
+
+        return diff;
+    }
+
+    private void add(Set<DNSRecord> unmatched, DNSRecord currentRecord, DNSRecord desiredRecord) {
+        unmatched.remove(currentRecord);
+
+        if (sameRecord(currentRecord, desiredRecord)) {
+            unchanged.add(currentRecord);
+        } else if (currentRecord.getId() == null) {
+            missing.add(desiredRecord);
+        } else {
+            changes.add(new UpdatePlan.Change(currentRecord, new DNSRecord(currentRecord.getId(),
+                    desiredRecord.getType(), desiredRecord.getName(), desiredRecord.getContent())));
+        }
+    }
+
+    private static DNSRecord findById(Set<DNSRecord> records, String id) {
+        for (DNSRecord dnsRecord : records) {
+            if (id.equals(dnsRecord.getId())) {
+                return dnsRecord;
+            }
+        }
+        return null;
+    }
+
+    private static DNSRecord findByTypeAndName(Set<DNSRecord> records, DNSRecord desiredRecord) {
+        DNSRecord match = null;
+
+        for (DNSRecord dnsRecord : records) {
+            if (equalsIgnoreCase(dnsRecord.getType(), desiredRecord.getType())
+                    && equalsIgnoreCase(dnsRecord.getName(), desiredRecord.getName())) {
+                if (sameRecord(dnsRecord, desiredRecord)) {
+                    return dnsRecord;
+                }
+                if (match == null) {
+                    match = dnsRecord;
+                }
+            }
+        }
+
+        return match;
+    }
+
+    private static boolean sameRecord(DNSRecord currentRecord, DNSRecord desiredRecord) {
+        return equalsIgnoreCase(currentRecord.getType(), desiredRecord.getType())
+                && equalsIgnoreCase(currentRecord.getName(), desiredRecord.getName())
+                && Objects.equals(nullToEmpty(currentRecord.getContent()), nullToEmpty(desiredRecord.getContent()));
+    }
+
+    private static boolean equalsIgnoreCase(String a, String b) {
+        return nullToEmpty(a).equalsIgnoreCase(nullToEmpty(b));
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty() && missing.isEmpty() && extra.isEmpty();
+    }
+
+    public void print(PrintStream out) {
+        out.printf("%s: %d change(s), %d unchanged, %d missing, %d extra%n", domain, changes.size(), unchanged.size(),
+                missing.size(), extra.size());
+
+        for (UpdatePlan.Change change : changes) {
+            DNSRecord oldRecord = change.getOldRecord();
+            DNSRecord newRecord = change.getNewRecord();
+            out.printf("  ~ %-6s %-30s %s -> %s %s %s%n", oldRecord.getType(), displayName(oldRecord),
+                    oldRecord.getContent(), newRecord.getType(), displayName(newRecord), newRecord.getContent());
+        }
+
+        for (DNSRecord dnsRecord : missing) {
+            out.printf("  + %-6s %-30s %s (cannot be created)%n", dnsRecord.getType(), displayName(dnsRecord), dnsRecord.getContent());
+        }
+
+        for (DNSRecord dnsRecord : extra) {
+            out.printf("  - %-6s %-30s %s (cannot be deleted)%n", dnsRecord.getType(), displayName(dnsRecord), dnsRecord.getContent());
+        }
+    }
+
+    private static String displayName(DNSRecord dnsRecord) {
+        String name = dnsRecord.getName();
+        return name == null || name.isEmpty() ? "@" : name;
+    }
+}
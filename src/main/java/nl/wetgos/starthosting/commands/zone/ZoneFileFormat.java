@@ -0,0 +1,284 @@
+package nl.wetgos.starthosting.commands.zone;
+
+import nl.wetgos.starthosting.client.DNSRecord;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Line formats of export files. Every line holds one record including its domain, so files of several domains can
+ * be concatenated.
+ */
+public enum ZoneFileFormat {
+
+    /**
+     * {@code domain,id,type,name,content}, with the content quoted when needed.
+     */
+    CSV("csv") {
+        @Override
+        public String getHeader() {
+            return "domain,id,type,name,content";
+        }
+
+        @Override
+        public String format(String domain, DNSRecord record) {
+            return domain + "," + nullToEmpty(record.getId()) + "," + nullToEmpty(record.getType()) + ","
+                    + nullToEmpty(record.getName()) + "," + quote(nullToEmpty(record.getContent()));
+        }
+
+        @Override
+        public ZoneRecord parse(String line) {
+            String[] fields = line.split(",", 5);
+
+            if (fields.length < 5) {
+                throw new IllegalArgumentException("Expected domain,id,type,name,content: " + line);
+            }
+
+            if (getHeader().equals(line)) {
+                return null;
+            }
+
+            return new ZoneRecord(fields[0].toLowerCase(Locale.ROOT), new DNSRecord(emptyToNull(fields[1]), fields[2],
+                    fields[3], unquote(fields[4])));
+        }
+    },
+
+    /**
+     * One JSON object per line with the fields domain, id, type, name and content.
+     */
+    JSON("jsonl") {
+        @Override
+        public String getHeader() {
+            return null;
+        }
+
+        @Override
+        public String format(String domain, DNSRecord record) {
+            return "{\"domain\":" + string(domain) + ",\"id\":" + string(record.getId()) + ",\"type\":"
+                    + string(record.getType()) + ",\"name\":" + string(record.getName()) + ",\"content\":"
+                    + string(record.getContent()) + "}";
+        }
+
+        @Override
+        public ZoneRecord parse(String line) {
+            Map<String, String> fields = parseObject(line);
+
+            if (fields.get("domain") == null) {
+                throw new IllegalArgumentException("Missing domain: " + line);
+            }
+
+            return new ZoneRecord(fields.get("domain").toLowerCase(Locale.ROOT), new DNSRecord(fields.get("id"),
+                    fields.get("type"), fields.get("name"), fields.get("content")));
+        }
+    };
+
+    private final String extension;
+
+    ZoneFileFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Gets the first line of a file, or null if this format has none.
+     *
+     * @return
+     */
+    public abstract String getHeader();
+
+    public abstract String format(String domain, DNSRecord record);
+
+    /**
+     * Parses a line.
+     *
+     * @param line
+     * @return the record, or null for a header line
+     * @throws IllegalArgumentException if the line cannot be parsed
+     */
+    public abstract ZoneRecord parse(String line);
+
+    /**
+     * Gets the format of a file by its extension.
+     *
+     * @param fileName
+     * @return
+     */
+    public static ZoneFileFormat forFileName(String fileName) {
+        for (ZoneFileFormat format : values()) {
+            if (fileName.endsWith("." + format.extension)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown file format: " + fileName);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String quote(String value) {
+        if (value.contains(",") || value.contains("\"")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    private static String string(String value) {
+        if (value == null) {
+            return "null";
+        }
+
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+
+        return json.append('"').toString();
+    }
+
+    /**
+     * Parses a flat JSON object with string or null values.
+     */
+    private static Map<String, String> parseObject(String line) {
+        Map<String, String> fields = new LinkedHashMap<>();
+
+        int[] position = {skipWhitespace(line, 0)};
+
+        expect(line, position, '{');
+
+        if (peek(line, position) == '}') {
+            return fields;
+        }
+
+        while (true) {
+            String key = parseString(line, position);
+
+            expect(line, position, ':');
+
+            String value;
+            if (line.startsWith("null", position[0])) {
+                position[0] += 4;
+                value = null;
+            } else {
+                value = parseString(line, position);
+            }
+
+            fields.put(key, value);
+
+            char next = peek(line, position);
+            position[0]++;
+
+            if (next == '}') {
+                return fields;
+            }
+            if (next != ',') {
+                throw new IllegalArgumentException("Expected , or } at " + (position[0] - 1) + ": " + line);
+            }
+        }
+    }
+
+    private static String parseString(String line, int[] position) {
+        expect(line, position, '"');
+
+        StringBuilder value = new StringBuilder();
+
+        for (int i = position[0]; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (c == '"') {
+                position[0] = skipWhitespace(line, i + 1);
+                return value.toString();
+            }
+
+            if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        value.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+                        i += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+
+        throw new IllegalArgumentException("Unterminated string: " + line);
+    }
+
+    private static void expect(String line, int[] position, char expected) {
+        if (peek(line, position) != expected) {
+            throw new IllegalArgumentException("Expected " + expected + " at " + position[0] + ": " + line);
+        }
+        position[0] = skipWhitespace(line, position[0] + 1);
+    }
+
+    private static char peek(String line, int[] position) {
+        position[0] = skipWhitespace(line, position[0]);
+        return position[0] < line.length() ? line.charAt(position[0]) : 0;
+    }
+
+    private static int skipWhitespace(String line, int position) {
+        while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,15 @@
+package nl.wetgos.starthosting.commands.zone;
+
+import lombok.Value;
+import nl.wetgos.starthosting.client.DNSRecord;
+
+/**
+ * DNS record together with the domain it belongs to, as one line of an export file.
+ */
+@Value
+public class ZoneRecord {
+
+    String domain;
+    DNSRecord record;
+
+}
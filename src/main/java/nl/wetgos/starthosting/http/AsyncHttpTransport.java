@@ -0,0 +1,124 @@
+package nl.wetgos.starthosting.http;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking counterpart of {@link HttpTransport}.
+ * <p>
+ * A small number of I/O threads multiplex all connections, so the number of requests in flight is not bound to the
+ * number of threads. Callbacks of the requests run on the I/O threads and must not block.
+ */
+@Slf4j
+public class AsyncHttpTransport implements Closeable {
+
+    public static final int DEFAULT_IO_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final PoolingNHttpClientConnectionManager connectionManager;
+
+    @Getter
+    private final CloseableHttpAsyncClient httpClient;
+
+    private final ScheduledExecutorService idleConnectionEvictor;
+
+    @Getter
+    private final int timeout;
+
+    public AsyncHttpTransport() throws IOReactorException {
+        this(HttpTransport.DEFAULT_TIMEOUT, HttpTransport.DEFAULT_MAX_PER_ROUTE, HttpTransport.DEFAULT_MAX_TOTAL, DEFAULT_IO_THREADS);
+    }
+
+    /**
+     * @param timeout     timeout (milliseconds) for connecting, waiting for data and waiting for a pooled connection
+     * @param maxPerRoute maximum number of connections per host
+     * @param maxTotal    maximum number of connections
+     * @param ioThreads   number of I/O threads
+     * @throws IOReactorException
+     */
+    public AsyncHttpTransport(int timeout, int maxPerRoute, int maxTotal, int ioThreads) throws IOReactorException {
+        this.timeout = timeout;
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(timeout)
+                .setSoTimeout(timeout)
+                .build();
+
+        connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setMaxTotal(maxTotal);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .setRedirectsEnabled(false)
+                .build();
+
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new HttpTransport.KeepAliveStrategy())
+                .build();
+        httpClient.start();
+
+        idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "async-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        idleConnectionEvictor.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(HttpTransport.DEFAULT_KEEP_ALIVE, TimeUnit.MILLISECONDS);
+        }, HttpTransport.DEFAULT_KEEP_ALIVE, HttpTransport.DEFAULT_KEEP_ALIVE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a context with its own cookie store, for callers that keep a session.
+     *
+     * @return
+     */
+    public HttpClientContext createSessionContext() {
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(new BasicCookieStore());
+        return context;
+    }
+
+    /**
+     * Gets the number of leased, available and pending connections, and the maximum.
+     *
+     * @return
+     */
+    public PoolStats getStatistics() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() {
+        log.debug("Closing asynchronous HTTP transport: {}", getStatistics());
+
+        idleConnectionEvictor.shutdownNow();
+
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.debug("Could not close asynchronous HTTP client", e);
+        }
+    }
+}
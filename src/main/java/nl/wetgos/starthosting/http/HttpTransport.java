@@ -0,0 +1,132 @@
+package nl.wetgos.starthosting.http;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client with one connection pool, shared by all outbound calls.
+ * <p>
+ * Connections are kept alive between requests, idle connections are evicted in the background and all requests
+ * have connect, socket and pool timeouts. Callers that need their own cookies (i.e. panel sessions) pass their own
+ * context.
+ */
+@Slf4j
+public class HttpTransport implements Closeable {
+
+    public static final int DEFAULT_TIMEOUT = 10000;
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final int DEFAULT_MAX_TOTAL = 200;
+
+    static final long DEFAULT_KEEP_ALIVE = 30 * 1000;
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    @Getter
+    private final CloseableHttpClient httpClient;
+
+    private final IdleConnectionEvictor idleConnectionEvictor;
+
+    /**
+     * Timeout (milliseconds) for connecting, waiting for data and waiting for a pooled connection.
+     */
+    @Getter
+    private final int timeout;
+
+    public HttpTransport() {
+        this(DEFAULT_TIMEOUT, DEFAULT_MAX_PER_ROUTE, DEFAULT_MAX_TOTAL);
+    }
+
+    /**
+     * @param timeout     timeout (milliseconds) for connecting, waiting for data and waiting for a pooled connection
+     * @param maxPerRoute maximum number of connections per host
+     * @param maxTotal    maximum number of connections
+     */
+    public HttpTransport(int timeout, int maxPerRoute, int maxTotal) {
+        this.timeout = timeout;
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .build();
+
+        httpClient = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new KeepAliveStrategy())
+                .disableRedirectHandling()
+                .build();
+
+        idleConnectionEvictor = new IdleConnectionEvictor(connectionManager, DEFAULT_KEEP_ALIVE, TimeUnit.MILLISECONDS);
+        idleConnectionEvictor.start();
+    }
+
+    /**
+     * Creates a context with its own cookie store, for callers that keep a session.
+     *
+     * @return
+     */
+    public HttpClientContext createSessionContext() {
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(new BasicCookieStore());
+        return context;
+    }
+
+    /**
+     * Gets the number of leased, available and pending connections, and the maximum.
+     *
+     * @return
+     */
+    public PoolStats getStatistics() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() {
+        log.debug("Closing HTTP transport: {}", getStatistics());
+
+        idleConnectionEvictor.shutdown();
+
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.debug("Could not close HTTP client", e);
+        }
+    }
+
+    /**
+     * Keeps connections alive as long as the server allows, or a default time if the server does not say.
+     */
+    static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+        private final ConnectionKeepAliveStrategy delegate = DefaultConnectionKeepAliveStrategy.INSTANCE;
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long duration = delegate.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : DEFAULT_KEEP_ALIVE;
+        }
+    }
+}
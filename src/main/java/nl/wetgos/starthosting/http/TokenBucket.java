@@ -0,0 +1,69 @@
+package nl.wetgos.starthosting.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of requests: tokens are added at a fixed rate up to the burst size, and every request takes one.
+ * <p>
+ * A request that finds no token reserves the next one and sleeps until it is added, so waiting requests are served
+ * in order and the lock is never held while sleeping.
+ */
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate  tokens per second
+     * @param burst maximum number of tokens, the number of requests that can be sent at once after an idle period
+     */
+    public TokenBucket(double rate, int burst) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1");
+        }
+
+        this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes a token, possibly one that is yet to be added.
+     *
+     * @return the time (nanoseconds) until the token is available
+     */
+    private synchronized long reserve() {
+        refill();
+
+        tokens--;
+
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,167 @@
+package nl.wetgos.starthosting.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the panel requests, public IP lookups and update cycles of this process.
+ * <p>
+ * Every operation and the registry itself are registered as MXBeans under {@value #DOMAIN}, and can also be
+ * scraped in Prometheus format through a {@link PrometheusEndpoint}.
+ */
+@Slf4j
+public class Metrics implements MetricsMXBean {
+
+    public static final String LOGIN = "login";
+    public static final String CHANGE_DOMAIN = "change_domain";
+    public static final String GET_DNS_RECORDS = "get_dns_records";
+    public static final String UPDATE_DNS_RECORD = "update_dns_record";
+    public static final String PUBLIC_IP_LOOKUP = "public_ip_lookup";
+    public static final String UPDATE_CYCLE = "update_cycle";
+
+    static final String DOMAIN = "nl.wetgos.starthosting";
+
+    private static final Metrics DEFAULT = new Metrics();
+
+    private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    private volatile String lastPublicIPAddress;
+    private volatile long lastUpdate;
+    private volatile long lastCycleMillis;
+
+    private final LongAdder recordCacheHits = new LongAdder();
+    private final LongAdder recordCacheMisses = new LongAdder();
+
+    private Metrics() {
+        register(this, DOMAIN + ":type=Metrics");
+    }
+
+    /**
+     * Gets the metrics of this process.
+     *
+     * @return
+     */
+    public static Metrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the metrics of an operation, creating them on first use.
+     *
+     * @param name
+     * @return
+     */
+    public OperationMetrics operation(String name) {
+        return operation(name, null);
+    }
+
+    /**
+     * Gets the metrics of an operation on a specific target, creating them on first use.
+     *
+     * @param name
+     * @param target i.e. the URL of a public IP provider
+     * @return
+     */
+    public OperationMetrics operation(String name, String target) {
+        String key = target == null ? name : name + " " + target;
+
+        OperationMetrics operation = operations.get(key);
+
+        if (operation == null) {
+            OperationMetrics created = new OperationMetrics(name, target);
+
+            operation = operations.putIfAbsent(key, created);
+
+            if (operation == null) {
+                operation = created;
+
+                register(operation, DOMAIN + ":type=Operation,name=" + name
+                        + (target == null ? "" : ",target=" + ObjectName.quote(target)));
+            }
+        }
+
+        return operation;
+    }
+
+    Collection<OperationMetrics> getOperations() {
+        List<OperationMetrics> sorted = new ArrayList<>(operations.values());
+        sorted.sort((a, b) -> {
+            int compare = a.getName().compareTo(b.getName());
+            return compare != 0 ? compare : String.valueOf(a.getTarget()).compareTo(String.valueOf(b.getTarget()));
+        });
+        return sorted;
+    }
+
+    public void setLastPublicIPAddress(String lastPublicIPAddress) {
+        this.lastPublicIPAddress = lastPublicIPAddress;
+    }
+
+    /**
+     * Records a finished update cycle.
+     *
+     * @param startNanos {@link System#nanoTime()} when the cycle started
+     * @param success    whether all domains were updated
+     */
+    public void recordCycle(long startNanos, boolean success) {
+        operation(UPDATE_CYCLE).record(startNanos, success);
+
+        lastCycleMillis = (System.nanoTime() - startNanos) / 1000000;
+
+        if (success) {
+            lastUpdate = System.currentTimeMillis();
+        }
+    }
+
+    public void recordCacheHit() {
+        recordCacheHits.increment();
+    }
+
+    public void recordCacheMiss() {
+        recordCacheMisses.increment();
+    }
+
+    @Override
+    public String getLastPublicIPAddress() {
+        return lastPublicIPAddress;
+    }
+
+    @Override
+    public long getSecondsSinceLastUpdate() {
+        long lastUpdate = this.lastUpdate;
+        return lastUpdate > 0 ? (System.currentTimeMillis() - lastUpdate) / 1000 : -1;
+    }
+
+    @Override
+    public long getLastCycleMillis() {
+        return lastCycleMillis;
+    }
+
+    @Override
+    public long getRecordCacheHits() {
+        return recordCacheHits.sum();
+    }
+
+    @Override
+    public long getRecordCacheMisses() {
+        return recordCacheMisses.sum();
+    }
+
+    private void register(Object mxBean, String name) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            mBeanServer.registerMBean(mxBean, new ObjectName(name));
+        } catch (JMException e) {
+            log.warn("Could not register MBean " + name, e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package nl.wetgos.starthosting.metrics;
+
+/**
+ * JMX view of the state of the dynamic DNS updater.
+ */
+public interface MetricsMXBean {
+
+    String getLastPublicIPAddress();
+
+    /**
+     * Seconds since the last update cycle in which every domain succeeded, or -1 if there was none yet.
+     */
+    long getSecondsSinceLastUpdate();
+
+    /**
+     * Duration of the last update cycle, from detecting a new public IP address until all domains were processed.
+     */
+    long getLastCycleMillis();
+
+    /**
+     * Number of DNS record reads served from the record cache.
+     */
+    long getRecordCacheHits();
+
+    /**
+     * Number of DNS record reads that had to be sent to the panel although a record cache was used.
+     */
+    long getRecordCacheMisses();
+
+}
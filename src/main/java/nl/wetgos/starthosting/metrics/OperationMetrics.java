@@ -0,0 +1,138 @@
+package nl.wetgos.starthosting.metrics;
+
+import lombok.Getter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error counter of one operation, i.e. a panel request or a public IP lookup.
+ */
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    /**
+     * Upper bounds (milliseconds) of the histogram buckets. Slower calls count in an overflow bucket.
+     */
+    static final long[] BUCKETS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    @Getter
+    private final String name;
+
+    /**
+     * Value of the target label (i.e. the URL of a provider), or null.
+     */
+    @Getter
+    private final String target;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    OperationMetrics(String name, String target) {
+        this.name = name;
+        this.target = target;
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a finished call.
+     *
+     * @param startNanos {@link System#nanoTime()} at the start of the call
+     * @param success    whether the call succeeded
+     */
+    public void record(long startNanos, boolean success) {
+        long nanos = System.nanoTime() - startNanos;
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+
+        int bucket = 0;
+        while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+            bucket++;
+        }
+
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Gets the number of calls that took at most the given bucket's upper bound.
+     *
+     * @param bucket index in {@link #BUCKETS}, or its length for the overflow bucket
+     * @return
+     */
+    long getCumulativeCount(int bucket) {
+        long cumulative = 0;
+        for (int i = 0; i <= bucket; i++) {
+            cumulative += buckets[i].sum();
+        }
+        return cumulative;
+    }
+
+    double getTotalSeconds() {
+        return totalNanos.sum() / 1e9;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = getCount();
+        return count > 0 ? totalNanos.sum() / 1e6 / count : 0;
+    }
+
+    @Override
+    public long getMaxMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+    }
+
+    @Override
+    public long getP50Millis() {
+        return getPercentileMillis(0.5);
+    }
+
+    @Override
+    public long getP99Millis() {
+        return getPercentileMillis(0.99);
+    }
+
+    private long getPercentileMillis(double percentile) {
+        long count = getCount();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile * count);
+
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            cumulative += buckets[i].sum();
+
+            if (cumulative >= rank) {
+                return BUCKETS[i];
+            }
+        }
+
+        // the rank falls in the overflow bucket, which has no upper bound but the slowest call
+        return getMaxMillis();
+    }
+}
@@ -0,0 +1,28 @@
+package nl.wetgos.starthosting.metrics;
+
+/**
+ * JMX view of the metrics of one operation.
+ */
+public interface OperationMetricsMXBean {
+
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMillis();
+
+    long getMaxMillis();
+
+    /**
+     * Upper bound of the histogram bucket holding the median, or the slowest call if it is above the largest bucket
+     * (30000 ms).
+     */
+    long getP50Millis();
+
+    /**
+     * Upper bound of the histogram bucket holding the 99th percentile, or the slowest call if it is above the largest
+     * bucket (30000 ms).
+     */
+    long getP99Millis();
+
+}
@@ -0,0 +1,132 @@
+package nl.wetgos.starthosting.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Serves the {@link Metrics} in the Prometheus text format on {@code /metrics}.
+ */
+@Slf4j
+public class PrometheusEndpoint implements Closeable {
+
+    private static final String PREFIX = "starthosting_";
+
+    private final Metrics metrics;
+
+    private HttpServer server;
+
+    public PrometheusEndpoint(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+
+        log.info("Serving metrics on http://localhost:{}/metrics", server.getAddress().getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    String render() {
+        StringBuilder out = new StringBuilder();
+
+        header(out, "operation_duration_seconds", "histogram", "Duration of panel requests, public IP lookups and update cycles");
+        for (OperationMetrics operation : metrics.getOperations()) {
+            String labels = labels(operation);
+
+            for (int i = 0; i < OperationMetrics.BUCKETS.length; i++) {
+                sample(out, "operation_duration_seconds_bucket",
+                        labels + ",le=\"" + seconds(OperationMetrics.BUCKETS[i]) + "\"", operation.getCumulativeCount(i));
+            }
+            sample(out, "operation_duration_seconds_bucket", labels + ",le=\"+Inf\"", operation.getCount());
+            sample(out, "operation_duration_seconds_sum", labels, operation.getTotalSeconds());
+            sample(out, "operation_duration_seconds_count", labels, operation.getCount());
+        }
+
+        header(out, "operation_errors_total", "counter", "Number of failed panel requests, public IP lookups and update cycles");
+        for (OperationMetrics operation : metrics.getOperations()) {
+            sample(out, "operation_errors_total", labels(operation), operation.getErrors());
+        }
+
+        String publicIPAddress = metrics.getLastPublicIPAddress();
+        if (publicIPAddress != null) {
+            header(out, "public_ip_info", "gauge", "Last detected public IP address");
+            sample(out, "public_ip_info", "ip=\"" + escape(publicIPAddress) + "\"", 1);
+        }
+
+        header(out, "seconds_since_last_update", "gauge", "Seconds since the last update cycle in which all domains succeeded, or -1");
+        sample(out, "seconds_since_last_update", null, metrics.getSecondsSinceLastUpdate());
+
+        header(out, "last_cycle_duration_seconds", "gauge", "Duration of the last update cycle");
+        sample(out, "last_cycle_duration_seconds", null, metrics.getLastCycleMillis() / 1000.0);
+
+        header(out, "record_cache_hits_total", "counter", "Number of DNS record reads served from the cache");
+        sample(out, "record_cache_hits_total", null, metrics.getRecordCacheHits());
+
+        header(out, "record_cache_misses_total", "counter", "Number of DNS record reads not found in the cache");
+        sample(out, "record_cache_misses_total", null, metrics.getRecordCacheMisses());
+
+        return out.toString();
+    }
+
+    private static String labels(OperationMetrics operation) {
+        String labels = "operation=\"" + operation.getName() + "\"";
+
+        if (operation.getTarget() != null) {
+            labels += ",target=\"" + escape(operation.getTarget()) + "\"";
+        }
+
+        return labels;
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Number value) {
+        out.append(PREFIX).append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package nl.wetgos.starthosting.metrics.jfr;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The update of the records of one domain.
+ */
+@Getter
+@Setter
+public class DomainUpdateEvent extends FlightEvent {
+
+    private long cycleId;
+
+    private String domain;
+
+    private int changedRecords;
+
+    private boolean success;
+
+}
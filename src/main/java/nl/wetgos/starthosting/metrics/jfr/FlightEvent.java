@@ -0,0 +1,85 @@
+package nl.wetgos.starthosting.metrics.jfr;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Flight Recorder event that works on any JVM.
+ * <p>
+ * The {@code jdk.jfr} API is only available from JDK 11 and 8u262, so the events of the tool are plain classes that
+ * hand their fields to an {@link Emitter}. When {@code jdk.jfr} and the events of the {@code jfr} source set are
+ * available, the emitter commits them as Flight Recorder events; otherwise it does nothing.
+ */
+@Slf4j
+public abstract class FlightEvent {
+
+    private static final Emitter EMITTER = loadEmitter();
+
+    /**
+     * Flight Recorder event, or null when it was not started yet or Flight Recorder is not available.
+     */
+    private Object recording;
+
+    public void begin() {
+        recording = EMITTER.begin(this);
+    }
+
+    public void end() {
+        EMITTER.end(recording);
+    }
+
+    /**
+     * Checks whether the event would be recorded, so filling in costly fields can be skipped otherwise.
+     *
+     * @return
+     */
+    public boolean shouldCommit() {
+        return EMITTER.shouldCommit(recording);
+    }
+
+    public void commit() {
+        EMITTER.commit(this, recording);
+    }
+
+    private static Emitter loadEmitter() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+
+            return (Emitter) Class.forName("nl.wetgos.starthosting.metrics.jfr.events.JfrEmitter")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            log.debug("Flight Recorder events are not available: {}", e.toString());
+
+            return new Emitter() {
+            };
+        }
+    }
+
+    /**
+     * Records events. The default methods record nothing.
+     */
+    public interface Emitter {
+
+        /**
+         * @param event
+         * @return the started Flight Recorder event, or null
+         */
+        default Object begin(FlightEvent event) {
+            return null;
+        }
+
+        default void end(Object recording) {
+        }
+
+        default boolean shouldCommit(Object recording) {
+            return false;
+        }
+
+        /**
+         * @param event
+         * @param recording the event returned by {@link #begin(FlightEvent)}, or null if it was not started
+         */
+        default void commit(FlightEvent event, Object recording) {
+        }
+
+    }
+}
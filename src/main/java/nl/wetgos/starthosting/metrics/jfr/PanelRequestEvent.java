@@ -0,0 +1,47 @@
+package nl.wetgos.starthosting.metrics.jfr;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A request to the panel, split in time spent on the network and time spent parsing the page.
+ */
+@Getter
+@Setter
+public class PanelRequestEvent extends FlightEvent {
+
+    private long cycleId;
+
+    private String operation;
+
+    private String domain;
+
+    private String recordId;
+
+    private long bytesRead;
+
+    /**
+     * Time (nanoseconds) spent sending the request and waiting for and reading the response.
+     */
+    private long networkTime;
+
+    /**
+     * Time (nanoseconds) spent parsing the page.
+     */
+    private long parseTime;
+
+    private boolean success;
+
+    /**
+     * Counts the whole request as network time, unless it was split in network and parse time, i.e. for requests
+     * without a page to parse or that failed before parsing.
+     *
+     * @param nanos
+     */
+    public void setUnsplitNetworkTime(long nanos) {
+        if (networkTime == 0 && parseTime == 0) {
+            networkTime = nanos;
+        }
+    }
+
+}
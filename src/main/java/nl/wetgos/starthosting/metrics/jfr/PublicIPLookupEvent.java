@@ -0,0 +1,23 @@
+package nl.wetgos.starthosting.metrics.jfr;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A check of the public IP address, or an address pushed by a router.
+ */
+@Getter
+@Setter
+public class PublicIPLookupEvent extends FlightEvent {
+
+    private long cycleId;
+
+    private String publicIPAddress;
+
+    private boolean changed;
+
+    private boolean pushed;
+
+    private boolean success;
+
+}
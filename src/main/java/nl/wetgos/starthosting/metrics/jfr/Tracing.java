@@ -0,0 +1,65 @@
+package nl.wetgos.starthosting.metrics.jfr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cycle IDs that tie the Flight Recorder events of one public IP check and the update it causes together.
+ * <p>
+ * A check starts a new cycle. The ID is kept per thread and handed over explicitly where the work moves to another
+ * thread: to the dispatcher when a change is reported, to the update when it is dispatched, and to the domain
+ * workers. Events created outside a cycle, i.e. by the bulk commands, have cycle ID 0.
+ */
+public final class Tracing {
+
+    private static final AtomicLong CYCLES = new AtomicLong();
+
+    private static final ThreadLocal<long[]> CURRENT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private Tracing() {
+    }
+
+    /**
+     * @return a new cycle ID, which is not made current
+     */
+    public static long newCycle() {
+        return CYCLES.incrementAndGet();
+    }
+
+    /**
+     * @return the cycle ID of the calling thread, or 0 outside a cycle
+     */
+    public static long getCycle() {
+        return CURRENT.get()[0];
+    }
+
+    /**
+     * Makes a cycle current for the calling thread until the returned scope is closed.
+     *
+     * @param cycleId
+     * @return
+     */
+    public static Scope enter(long cycleId) {
+        long[] current = CURRENT.get();
+
+        Scope scope = new Scope(current, current[0]);
+        current[0] = cycleId;
+
+        return scope;
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private final long[] current;
+        private final long previous;
+
+        private Scope(long[] current, long previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            current[0] = previous;
+        }
+    }
+}
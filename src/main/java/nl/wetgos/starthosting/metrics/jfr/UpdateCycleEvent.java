@@ -0,0 +1,23 @@
+package nl.wetgos.starthosting.metrics.jfr;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * The update of all domains to a new public IP address.
+ */
+@Getter
+@Setter
+public class UpdateCycleEvent extends FlightEvent {
+
+    private long cycleId;
+
+    private String publicIPAddress;
+
+    private int domains;
+
+    private int failedDomains;
+
+    private int skippedDomains;
+
+}
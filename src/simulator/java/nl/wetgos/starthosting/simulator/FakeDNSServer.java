@@ -0,0 +1,158 @@
+package nl.wetgos.starthosting.simulator;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Answers DNS queries over UDP for one name with the public IP address, as a local stand-in for resolvers like
+ * {@code resolver1.opendns.com}, i.e. for {@code -url dns://localhost:5353/myip.example}.
+ * <p>
+ * A and AAAA queries are answered with the address if it has that type, TXT queries with the address as text. Other
+ * names get NXDOMAIN. Queries can be dropped at random to see the provider retry.
+ */
+public class FakeDNSServer {
+
+    private static final int TYPE_A = 1;
+    private static final int TYPE_TXT = 16;
+    private static final int TYPE_AAAA = 28;
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(Option.builder("port").hasArg().desc("UDP port to listen on (default 5353)").build());
+        options.addOption(Option.builder("name").hasArg().desc("Name to answer (default myip.example)").build());
+        options.addOption(Option.builder("address").hasArg().desc("Public IP address(es) to answer with; with more than one, the next is used after every -change queries (default 198.51.100.7)").build());
+        options.addOption(Option.builder("change").hasArg().desc("Number of queries before the next address is used (default 10)").build());
+        options.addOption(Option.builder("latency").hasArg().desc("Latency per query (milliseconds)").build());
+        options.addOption(Option.builder("droprate").hasArg().desc("Fraction of queries that are not answered (0-1)").build());
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("FakeDNSServer", options);
+            return;
+        }
+
+        int port = Integer.parseInt(commandLine.getOptionValue("port", "5353"));
+        String name = commandLine.getOptionValue("name", "myip.example").toLowerCase(Locale.ROOT);
+        String[] addresses = commandLine.getOptionValue("address", "198.51.100.7").split(",");
+        int change = Integer.parseInt(commandLine.getOptionValue("change", "10"));
+        long latency = Long.parseLong(commandLine.getOptionValue("latency", "0"));
+        double dropRate = Double.parseDouble(commandLine.getOptionValue("droprate", "0"));
+
+        System.out.println("Answering " + name + " on UDP port " + port);
+
+        try (DatagramSocket socket = new DatagramSocket(port)) {
+            byte[] buffer = new byte[512];
+            long queries = 0;
+
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+
+                String address = addresses[(int) (queries++ / change % addresses.length)].trim();
+
+                if (ThreadLocalRandom.current().nextDouble() < dropRate) {
+                    continue;
+                }
+
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+
+                try {
+                    byte[] response = answer(ByteBuffer.wrap(buffer, 0, packet.getLength()), name, InetAddress.getByName(address));
+                    socket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    System.err.println("Ignoring malformed query from " + packet.getSocketAddress());
+                } catch (IOException e) {
+                    System.err.println("Could not answer " + packet.getSocketAddress() + ": " + e);
+                }
+            }
+        }
+    }
+
+    private static byte[] answer(ByteBuffer query, String name, InetAddress address) {
+        short id = query.getShort();
+        short flags = query.getShort();
+
+        if (flags < 0 || query.getShort() != 1) {
+            throw new IllegalArgumentException("Not a query with one question");
+        }
+
+        query.position(12);
+
+        StringBuilder queryName = new StringBuilder();
+
+        for (int length = query.get() & 0xff; length > 0; length = query.get() & 0xff) {
+            if (length > 63) {
+                throw new IllegalArgumentException("Compressed names are not expected in queries");
+            }
+
+            byte[] label = new byte[length];
+            query.get(label);
+
+            queryName.append(queryName.length() > 0 ? "." : "").append(new String(label, StandardCharsets.US_ASCII));
+        }
+
+        int type = query.getShort() & 0xffff;
+        query.getShort();
+
+        int questionEnd = query.position();
+
+        byte[] data = null;
+        boolean known = queryName.toString().toLowerCase(Locale.ROOT).equals(name);
+
+        if (known) {
+            byte[] bytes = address.getAddress();
+
+            if (type == TYPE_TXT) {
+                byte[] text = address.getHostAddress().getBytes(StandardCharsets.US_ASCII);
+                data = new byte[text.length + 1];
+                data[0] = (byte) text.length;
+                System.arraycopy(text, 0, data, 1, text.length);
+            } else if (type == (address instanceof Inet4Address ? TYPE_A : TYPE_AAAA)) {
+                data = bytes;
+            }
+        }
+
+        ByteBuffer response = ByteBuffer.allocate(questionEnd + (data != null ? 12 + data.length : 0));
+
+        response.putShort(id);
+        // response, recursion desired and available, NXDOMAIN for other names
+        response.putShort((short) (0x8180 | (known ? 0 : 3)));
+        response.putShort((short) 1);
+        response.putShort((short) (data != null ? 1 : 0));
+        response.putShort((short) 0);
+        response.putShort((short) 0);
+        response.put(query.array(), 12, questionEnd - 12);
+
+        if (data != null) {
+            // the name of the question
+            response.putShort((short) 0xc00c);
+            response.putShort((short) type);
+            response.putShort((short) 1);
+            response.putInt(0);
+            response.putShort((short) data.length);
+            response.put(data);
+        }
+
+        return response.array();
+    }
+}
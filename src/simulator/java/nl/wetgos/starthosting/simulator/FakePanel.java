@@ -0,0 +1,443 @@
+package nl.wetgos.starthosting.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the StartHosting panel.
+ * <p>
+ * Implements logon, the domain changer and the ffdns edit page (GET and edit_record POST) for a set of accounts,
+ * with configurable latency, error rate and session timeout.
+ */
+@Slf4j
+public class FakePanel {
+
+    public static final String BASE_PATH = "/server8";
+
+    private static final String SESSION_COOKIE = "PHPSESSID";
+
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger recordIds = new AtomicInteger(100000);
+
+    @Getter
+    private final Counters counters = new Counters();
+
+    /**
+     * Minimum latency (milliseconds) added to every request.
+     */
+    @Setter
+    private long latency;
+
+    /**
+     * Maximum random latency (milliseconds) added on top of the minimum.
+     */
+    @Setter
+    private long latencyJitter;
+
+    /**
+     * Fraction (0-1) of the requests that fail with a server error.
+     */
+    @Setter
+    private double errorRate;
+
+    /**
+     * Time (milliseconds) after which an unused session expires, or 0 to never expire.
+     */
+    @Setter
+    private long sessionTimeout;
+
+    private HttpServer server;
+    private ExecutorService executorService;
+
+    public Account addAccount(String user, String password) {
+        Account account = new Account(password);
+        accounts.put(user, account);
+        return account;
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 256);
+
+        executorService = Executors.newCachedThreadPool();
+        server.setExecutor(executorService);
+
+        server.createContext(BASE_PATH + "/", this::handle);
+        server.start();
+
+        log.info("Fake panel listening on {}", getBaseUrl());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + BASE_PATH;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            counters.requests.incrementAndGet();
+
+            delay();
+
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                counters.errors.incrementAndGet();
+                respond(exchange, 500, "<html><body>Internal Server Error</body></html>");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath().substring(BASE_PATH.length());
+
+            switch (path) {
+                case "/services/logon/":
+                    logon(exchange);
+                    break;
+                case "/ffstart/":
+                    start(exchange);
+                    break;
+                case "/services/domainchanger/":
+                    changeDomain(exchange);
+                    break;
+                case "/modules/ffdns/":
+                    ffdns(exchange);
+                    break;
+                default:
+                    respond(exchange, 404, "<html><body>Not Found</body></html>");
+            }
+        } catch (IOException e) {
+            // clients close connections without reading redirect bodies
+            log.debug("Could not respond to " + exchange.getRequestURI(), e);
+        } catch (Exception e) {
+            log.error("Could not handle " + exchange.getRequestURI(), e);
+            respond(exchange, 500, "<html><body>Internal Server Error</body></html>");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long delay = latency + (latencyJitter > 0 ? ThreadLocalRandom.current().nextLong(latencyJitter + 1) : 0);
+
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+    private void logon(HttpExchange exchange) throws IOException {
+        counters.logins.incrementAndGet();
+
+        Map<String, String> form = parseForm(exchange);
+
+        String user = form.get("username");
+        Account account = user != null ? accounts.get(user) : null;
+
+        if (!"1".equals(form.get("login")) || account == null || !account.password.equals(form.get("password"))) {
+            redirect(exchange, BASE_PATH + "/services/logon/?error=1");
+            return;
+        }
+
+        String sessionId = UUID.randomUUID().toString().replace("-", "");
+        sessions.put(sessionId, new Session(account));
+
+        exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + sessionId + "; path=/");
+        redirect(exchange, BASE_PATH + "/ffstart/");
+    }
+
+    private void start(HttpExchange exchange) throws IOException {
+        if (getSession(exchange) == null) {
+            redirectToLogon(exchange);
+            return;
+        }
+
+        respond(exchange, 200, "<html><body><div class=\"content\">Welkom</div></body></html>");
+    }
+
+    private void changeDomain(HttpExchange exchange) throws IOException {
+        Session session = getSession(exchange);
+
+        if (session == null) {
+            redirectToLogon(exchange);
+            return;
+        }
+
+        counters.domainChanges.incrementAndGet();
+
+        String domain = parseQuery(exchange.getRequestURI().getRawQuery()).get("domain");
+
+        if (domain == null || !session.account.zones.containsKey(domain.toLowerCase())) {
+            respond(exchange, 404, "<html><body>Unknown domain</body></html>");
+            return;
+        }
+
+        session.activeDomain = domain.toLowerCase();
+
+        redirect(exchange, BASE_PATH + "/ffstart/");
+    }
+
+    private void ffdns(HttpExchange exchange) throws IOException {
+        Session session = getSession(exchange);
+
+        if (session == null) {
+            redirectToLogon(exchange);
+            return;
+        }
+
+        if (session.activeDomain == null) {
+            respond(exchange, 200, FfdnsPageRenderer.renderError("Geen domein geselecteerd"));
+            return;
+        }
+
+        Zone zone = session.account.zones.get(session.activeDomain);
+
+        if ("POST".equals(exchange.getRequestMethod())) {
+            counters.updates.incrementAndGet();
+
+            Map<String, String> form = parseForm(exchange);
+
+            if (!"edit_record".equals(form.get("process")) || !zone.update(form.get("record"), form.get("content"))) {
+                respond(exchange, 200, FfdnsPageRenderer.renderError("Record kon niet worden gewijzigd"));
+                return;
+            }
+        } else {
+            counters.zoneReads.incrementAndGet();
+        }
+
+        respond(exchange, 200, FfdnsPageRenderer.render(zone));
+    }
+
+    private Session getSession(HttpExchange exchange) {
+        List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+
+        if (cookies == null) {
+            return null;
+        }
+
+        for (String header : cookies) {
+            for (String cookie : header.split(";")) {
+                String[] nameValue = cookie.trim().split("=", 2);
+
+                if (nameValue.length == 2 && SESSION_COOKIE.equals(nameValue[0])) {
+                    Session session = sessions.get(nameValue[1]);
+
+                    if (session == null) {
+                        return null;
+                    }
+
+                    long now = System.currentTimeMillis();
+
+                    if (sessionTimeout > 0 && now - session.lastAccess > sessionTimeout) {
+                        sessions.remove(nameValue[1]);
+                        counters.expiredSessions.incrementAndGet();
+                        return null;
+                    }
+
+                    session.lastAccess = now;
+                    return session;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private void redirectToLogon(HttpExchange exchange) throws IOException {
+        redirect(exchange, BASE_PATH + "/services/logon/");
+    }
+
+    private static void redirect(HttpExchange exchange, String location) throws IOException {
+        exchange.getResponseHeaders().add("Location", location);
+
+        // HttpServer resets kept-alive connections after responses without a body
+        respond(exchange, 302, "<html><body>Moved</body></html>");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseForm(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+
+        // UrlEncodedFormEntity encodes as ISO-8859-1 by default
+        return parseQuery(body.toString("ISO-8859-1"));
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> values = new HashMap<>();
+
+        if (query == null || query.isEmpty()) {
+            return values;
+        }
+
+        for (String pair : query.split("&")) {
+            String[] nameValue = pair.split("=", 2);
+            values.put(URLDecoder.decode(nameValue[0], "ISO-8859-1"),
+                    nameValue.length == 2 ? URLDecoder.decode(nameValue[1], "ISO-8859-1") : "");
+        }
+
+        return values;
+    }
+
+    public class Account {
+
+        private final String password;
+
+        private final Map<String, Zone> zones = new ConcurrentHashMap<>();
+
+        Account(String password) {
+            this.password = password;
+        }
+
+        /**
+         * Adds a domain with an apex A record, a number of host A records and a virtual MX record.
+         *
+         * @param domain
+         * @param records number of records, including the apex record
+         * @param content initial content of the A records
+         * @return
+         */
+        public Zone addDomain(String domain, int records, String content) {
+            Zone zone = new Zone(domain.toLowerCase());
+
+            for (int i = 0; i < records; i++) {
+                String name = i == 0 ? zone.domain : "host" + i + "." + zone.domain;
+                zone.records.add(new Zone.Record(String.valueOf(recordIds.incrementAndGet()), "A", name, content));
+            }
+            zone.records.add(new Zone.Record(null, "MX", zone.domain, "10 mail." + zone.domain));
+
+            zones.put(zone.domain, zone);
+
+            return zone;
+        }
+    }
+
+    public static class Zone {
+
+        @Getter
+        private final String domain;
+
+        private final List<Record> records = new ArrayList<>();
+
+        Zone(String domain) {
+            this.domain = domain;
+        }
+
+        synchronized boolean update(String id, String content) {
+            if (id == null || content == null) {
+                return false;
+            }
+
+            for (Record record : records) {
+                if (id.equals(record.id)) {
+                    record.content = content;
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        synchronized List<Record> snapshot() {
+            List<Record> snapshot = new ArrayList<>(records.size());
+            for (Record record : records) {
+                snapshot.add(new Record(record.id, record.type, record.name, record.content));
+            }
+            return snapshot;
+        }
+
+        /**
+         * Gets the number of records of the given type that do not have the given content.
+         */
+        public synchronized int countDifferent(String type, String content) {
+            int count = 0;
+            for (Record record : records) {
+                if (type.equals(record.type) && !content.equals(record.content)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        static class Record {
+
+            final String id;
+            final String type;
+            final String name;
+            String content;
+
+            Record(String id, String type, String name, String content) {
+                this.id = id;
+                this.type = type;
+                this.name = name;
+                this.content = content;
+            }
+        }
+    }
+
+    private static class Session {
+
+        private final Account account;
+
+        private volatile String activeDomain;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Session(Account account) {
+            this.account = account;
+        }
+    }
+
+    @Getter
+    public static class Counters {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong logins = new AtomicLong();
+        private final AtomicLong domainChanges = new AtomicLong();
+        private final AtomicLong zoneReads = new AtomicLong();
+        private final AtomicLong updates = new AtomicLong();
+        private final AtomicLong expiredSessions = new AtomicLong();
+
+    }
+}
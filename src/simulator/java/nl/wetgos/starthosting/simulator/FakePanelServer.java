@@ -0,0 +1,92 @@
+package nl.wetgos.starthosting.simulator;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Runs a {@link FakePanel} on its own, so the tool can be run offline with {@code -baseurl}.
+ */
+public class FakePanelServer {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(Option.builder("port").hasArg().desc("Port to listen on (default 8088)").build());
+        options.addOption(Option.builder("user").hasArg().desc("User name (default test)").build());
+        options.addOption(Option.builder("password").hasArg().desc("Password (default test)").build());
+        options.addOption(Option.builder("accounts").hasArg().desc("Number of accounts, named user, user2, user3, ... (default 1)").build());
+        options.addOption(Option.builder("daemonconfig").hasArg().desc("Write a daemon config for all accounts to this file").build());
+        options.addOption(Option.builder("domains").hasArg().desc("Number of domains (default 3)").build());
+        options.addOption(Option.builder("records").hasArg().desc("Number of A records per domain (default 5)").build());
+        options.addOption(Option.builder("latency").hasArg().desc("Latency per request (milliseconds)").build());
+        options.addOption(Option.builder("jitter").hasArg().desc("Random extra latency per request (milliseconds)").build());
+        options.addOption(Option.builder("errorrate").hasArg().desc("Fraction of requests that fail (0-1)").build());
+        options.addOption(Option.builder("sessiontimeout").hasArg().desc("Session timeout (milliseconds)").build());
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("FakePanelServer", options);
+            return;
+        }
+
+        String user = commandLine.getOptionValue("user", "test");
+        String password = commandLine.getOptionValue("password", "test");
+        int accounts = Integer.parseInt(commandLine.getOptionValue("accounts", "1"));
+        int domains = Integer.parseInt(commandLine.getOptionValue("domains", "3"));
+        int records = Integer.parseInt(commandLine.getOptionValue("records", "5"));
+
+        FakePanel panel = new FakePanel();
+        panel.setLatency(Long.parseLong(commandLine.getOptionValue("latency", "0")));
+        panel.setLatencyJitter(Long.parseLong(commandLine.getOptionValue("jitter", "0")));
+        panel.setErrorRate(Double.parseDouble(commandLine.getOptionValue("errorrate", "0")));
+        panel.setSessionTimeout(Long.parseLong(commandLine.getOptionValue("sessiontimeout", "0")));
+
+        StringBuilder domainList = new StringBuilder();
+        for (int i = 1; i <= domains; i++) {
+            domainList.append(i > 1 ? "," : "").append("domain").append(i).append(".example");
+        }
+
+        Properties daemonConfig = new Properties();
+
+        for (int a = 1; a <= accounts; a++) {
+            String accountUser = a == 1 ? user : user + a;
+
+            FakePanel.Account account = panel.addAccount(accountUser, password);
+
+            for (String domain : domainList.toString().split(",")) {
+                account.addDomain(domain, records, "192.0.2.1");
+            }
+
+            daemonConfig.setProperty("account." + accountUser + ".user", accountUser);
+            daemonConfig.setProperty("account." + accountUser + ".password", password);
+            daemonConfig.setProperty("account." + accountUser + ".domain", domainList.toString());
+            daemonConfig.setProperty("account." + accountUser + ".type", "A");
+        }
+
+        panel.start(Integer.parseInt(commandLine.getOptionValue("port", "8088")));
+
+        System.out.println("Base URL: " + panel.getBaseUrl());
+        System.out.println("Domains:  " + domainList);
+
+        if (commandLine.hasOption("daemonconfig")) {
+            daemonConfig.setProperty("interval", "600000");
+            daemonConfig.setProperty("url", "http://icanhazip.com/");
+
+            try (OutputStream out = new FileOutputStream(commandLine.getOptionValue("daemonconfig"))) {
+                daemonConfig.store(out, "Accounts of the fake panel at " + panel.getBaseUrl());
+            }
+
+            System.out.println("Daemon config written to " + commandLine.getOptionValue("daemonconfig"));
+        }
+    }
+}
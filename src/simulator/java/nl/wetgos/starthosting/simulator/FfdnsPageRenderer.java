@@ -0,0 +1,57 @@
+package nl.wetgos.starthosting.simulator;
+
+/**
+ * Renders ffdns pages in the layout the panel serves.
+ */
+class FfdnsPageRenderer {
+
+    static String render(FakePanel.Zone zone) {
+        StringBuilder page = header(zone.getDomain());
+
+        page.append("<table class=\"list\" cellspacing=\"0\">\n")
+                .append("<tr><th>Type</th><th>Naam</th><th>TTL</th><th>Inhoud</th><th>&nbsp;</th></tr>\n");
+
+        int row = 0;
+        for (FakePanel.Zone.Record record : zone.snapshot()) {
+            page.append("<tr class=\"dnsrecord ").append(row++ % 2 == 0 ? "even" : "odd").append("\">\n")
+                    .append("  <td>").append(escape(record.type)).append("</td>\n")
+                    .append("  <td>").append(escape(record.name)).append("</td>\n")
+                    .append("  <td>3600</td>\n")
+                    .append("  <td>").append(escape(record.content)).append("</td>\n")
+                    .append("  <td>");
+
+            if (record.id != null) {
+                page.append("<a href=\"?action=edit&amp;record=").append(record.id).append("\">wijzig</a> ")
+                        .append("<a href=\"?action=delete&amp;record=").append(record.id).append("\">verwijder</a>");
+            }
+
+            page.append("</td>\n</tr>\n");
+        }
+
+        page.append("</table>\n");
+
+        return footer(page);
+    }
+
+    static String renderError(String message) {
+        StringBuilder page = header("");
+
+        page.append("<p class=\"error\">").append(escape(message)).append("</p>\n");
+
+        return footer(page);
+    }
+
+    private static StringBuilder header(String domain) {
+        return new StringBuilder(4096)
+                .append("<!DOCTYPE html>\n<html>\n<head>\n<title>DNS beheer ").append(escape(domain)).append("</title>\n")
+                .append("</head>\n<body>\n<div class=\"content\">\n");
+    }
+
+    private static String footer(StringBuilder page) {
+        return page.append("</div>\n</body>\n</html>\n").toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,297 @@
+package nl.wetgos.starthosting.simulator;
+
+import nl.wetgos.starthosting.client.AsyncStartHostingClient;
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.client.StartHostingClientFactory;
+import nl.wetgos.starthosting.commands.ParallelDomainExecutor;
+import nl.wetgos.starthosting.commands.UpdatePlan;
+import nl.wetgos.starthosting.http.AsyncHttpTransport;
+import nl.wetgos.starthosting.http.HttpTransport;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays public IP changes across many accounts and domains against a {@link FakePanel}, and reports the update
+ * latency per domain and the number of panel requests per cycle.
+ * <p>
+ * With {@code -async} the accounts are driven by {@link AsyncStartHostingClient}s on a few I/O threads instead of a
+ * thread per session.
+ */
+public class LoadHarness {
+
+    private final FakePanel panel = new FakePanel();
+
+    private HttpTransport httpTransport;
+    private AsyncHttpTransport asyncHttpTransport;
+
+    private final List<StartHostingClientFactory> clientFactories = new ArrayList<>();
+    private final List<List<AsyncStartHostingClient>> asyncSessions = new ArrayList<>();
+    private final List<List<String>> accountDomains = new ArrayList<>();
+    private final List<FakePanel.Zone> zones = new ArrayList<>();
+
+    private final List<Long> allLatencies = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption(Option.builder("accounts").hasArg().desc("Number of accounts (default 10)").build());
+        options.addOption(Option.builder("domains").hasArg().desc("Number of domains per account (default 20)").build());
+        options.addOption(Option.builder("records").hasArg().desc("Number of A records per domain (default 10)").build());
+        options.addOption(Option.builder("cycles").hasArg().desc("Number of IP changes to replay (default 5)").build());
+        options.addOption(Option.builder("pause").hasArg().desc("Pause between IP changes (milliseconds, default 0)").build());
+        options.addOption(Option.builder("concurrency").hasArg().desc("Parallel domains per account (default 4)").build());
+        options.addOption(Option.builder("latency").hasArg().desc("Panel latency per request (milliseconds, default 20)").build());
+        options.addOption(Option.builder("jitter").hasArg().desc("Random extra panel latency (milliseconds, default 10)").build());
+        options.addOption(Option.builder("errorrate").hasArg().desc("Fraction of panel requests that fail (0-1)").build());
+        options.addOption(Option.builder("sessiontimeout").hasArg().desc("Panel session timeout (milliseconds)").build());
+        options.addOption(Option.builder("async").desc("Use the asynchronous client").build());
+        options.addOption(Option.builder("iothreads").hasArg().desc("I/O threads of the asynchronous client (default " + AsyncHttpTransport.DEFAULT_IO_THREADS + ")").build());
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("LoadHarness", options);
+            return;
+        }
+
+        new LoadHarness().run(commandLine);
+    }
+
+    private void run(CommandLine commandLine) throws Exception {
+        int accounts = Integer.parseInt(commandLine.getOptionValue("accounts", "10"));
+        int domains = Integer.parseInt(commandLine.getOptionValue("domains", "20"));
+        int records = Integer.parseInt(commandLine.getOptionValue("records", "10"));
+        int cycles = Integer.parseInt(commandLine.getOptionValue("cycles", "5"));
+        long pause = Long.parseLong(commandLine.getOptionValue("pause", "0"));
+        int concurrency = Integer.parseInt(commandLine.getOptionValue("concurrency", "4"));
+        boolean async = commandLine.hasOption("async");
+        int ioThreads = Integer.parseInt(commandLine.getOptionValue("iothreads", String.valueOf(AsyncHttpTransport.DEFAULT_IO_THREADS)));
+
+        panel.setLatency(Long.parseLong(commandLine.getOptionValue("latency", "20")));
+        panel.setLatencyJitter(Long.parseLong(commandLine.getOptionValue("jitter", "10")));
+        panel.setErrorRate(Double.parseDouble(commandLine.getOptionValue("errorrate", "0")));
+        panel.setSessionTimeout(Long.parseLong(commandLine.getOptionValue("sessiontimeout", "0")));
+        panel.start(0);
+
+        // every worker of every account talks to the same host
+        int connections = accounts * concurrency;
+        httpTransport = new HttpTransport(HttpTransport.DEFAULT_TIMEOUT, connections, connections);
+
+        if (async) {
+            asyncHttpTransport = new AsyncHttpTransport(HttpTransport.DEFAULT_TIMEOUT, connections, connections, ioThreads);
+        }
+
+        for (int a = 0; a < accounts; a++) {
+            String user = "account" + a;
+            FakePanel.Account account = panel.addAccount(user, "secret");
+
+            List<String> names = new ArrayList<>();
+            for (int d = 0; d < domains; d++) {
+                String domain = "domain" + d + ".account" + a + ".example";
+                zones.add(account.addDomain(domain, records, "192.0.2.1"));
+                names.add(domain);
+            }
+
+            StartHostingClientFactory clientFactory = new StartHostingClientFactory(panel.getBaseUrl(), user, "secret", httpTransport);
+            clientFactory.setMaxIdle(concurrency);
+
+            clientFactories.add(clientFactory);
+            accountDomains.add(names);
+
+            if (async) {
+                List<AsyncStartHostingClient> sessions = new ArrayList<>();
+                for (int i = 0; i < concurrency; i++) {
+                    sessions.add(new AsyncStartHostingClient(panel.getBaseUrl(), asyncHttpTransport));
+                }
+                asyncSessions.add(sessions);
+            }
+        }
+
+        System.out.printf("%d account(s) x %d domain(s) x %d record(s), %d parallel domain(s) per account, %s client%n",
+                accounts, domains, records, concurrency, async ? "asynchronous" : "blocking");
+
+        ExecutorService accountExecutor = Executors.newFixedThreadPool(accounts);
+
+        try {
+            for (int cycle = 1; cycle <= cycles; cycle++) {
+                runCycle(cycle, "198.51.100." + cycle, concurrency, accountExecutor);
+
+                if (pause > 0) {
+                    Thread.sleep(pause);
+                }
+            }
+        } finally {
+            accountExecutor.shutdownNow();
+            accountExecutor.awaitTermination(10, TimeUnit.SECONDS);
+
+            clientFactories.forEach(StartHostingClientFactory::close);
+            httpTransport.close();
+            if (asyncHttpTransport != null) {
+                asyncHttpTransport.close();
+            }
+            panel.stop();
+        }
+
+        Collections.sort(allLatencies);
+        System.out.printf("total: %d domain update(s), p50 %d ms, p99 %d ms%n",
+                allLatencies.size(), percentile(allLatencies, 50), percentile(allLatencies, 99));
+    }
+
+    private void runCycle(int cycle, String ip, int concurrency, ExecutorService accountExecutor) throws Exception {
+        long requests = panel.getCounters().getRequests().get();
+        long logins = panel.getCounters().getLogins().get();
+        long updates = panel.getCounters().getUpdates().get();
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        long start = System.nanoTime();
+
+        int failed = asyncSessions.isEmpty()
+                ? runBlocking(ip, concurrency, accountExecutor, start, latencies)
+                : runAsync(ip, start, latencies);
+
+        long duration = (System.nanoTime() - start) / 1000000;
+
+        int stale = 0;
+        for (FakePanel.Zone zone : zones) {
+            stale += zone.countDifferent("A", ip);
+        }
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        allLatencies.addAll(sorted);
+
+        System.out.printf("cycle %d (%s): %d ms, %d domain(s), %d failed, %d stale record(s), p50 %d ms, p99 %d ms, "
+                        + "%d request(s) (%d login(s), %d update(s)), connections %s%n",
+                cycle, ip, duration, sorted.size(), failed, stale, percentile(sorted, 50), percentile(sorted, 99),
+                panel.getCounters().getRequests().get() - requests,
+                panel.getCounters().getLogins().get() - logins,
+                panel.getCounters().getUpdates().get() - updates,
+                asyncHttpTransport != null ? asyncHttpTransport.getStatistics() : httpTransport.getStatistics());
+    }
+
+    private int runBlocking(String ip, int concurrency, ExecutorService accountExecutor, long start, List<Long> latencies) throws Exception {
+        List<Future<ParallelDomainExecutor.Summary>> futures = new ArrayList<>();
+
+        for (int a = 0; a < clientFactories.size(); a++) {
+            ParallelDomainExecutor executor = new ParallelDomainExecutor(clientFactories.get(a), concurrency);
+            List<String> domains = accountDomains.get(a);
+
+            futures.add(accountExecutor.submit(() -> executor.execute(domains, (client, domain) -> {
+                client.changeDomain(domain);
+
+                UpdatePlan.create(domain, client.getDNSRecords(), "A", null, ip).apply(client);
+
+                latencies.add((System.nanoTime() - start) / 1000000);
+            })));
+        }
+
+        int failed = 0;
+        for (Future<ParallelDomainExecutor.Summary> future : futures) {
+            failed += future.get().getFailed();
+        }
+
+        return failed;
+    }
+
+    private int runAsync(String ip, long start, List<Long> latencies) {
+        AtomicInteger failed = new AtomicInteger();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int a = 0; a < asyncSessions.size(); a++) {
+            String user = "account" + a;
+            Queue<String> domains = new ConcurrentLinkedQueue<>(accountDomains.get(a));
+
+            List<CompletableFuture<Void>> sessions = new ArrayList<>();
+
+            for (AsyncStartHostingClient session : asyncSessions.get(a)) {
+                CompletableFuture<Void> loggedIn = session.isLoggedIn()
+                        ? CompletableFuture.completedFuture(null)
+                        : session.login(user, "secret");
+
+                // a session that cannot log in leaves its domains to the others
+                sessions.add(loggedIn
+                        .thenCompose(ignored -> updateNext(session, domains, ip, start, latencies, failed))
+                        .exceptionally(e -> null));
+            }
+
+            // domains left behind when every session failed to log in
+            futures.add(CompletableFuture.allOf(sessions.toArray(new CompletableFuture<?>[0]))
+                    .thenRun(() -> failed.addAndGet(drain(domains))));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        return failed.get();
+    }
+
+    /**
+     * Updates the domains of the queue one after another on a session, without blocking a thread.
+     */
+    private CompletableFuture<Void> updateNext(AsyncStartHostingClient session, Queue<String> domains, String ip,
+                                               long start, List<Long> latencies, AtomicInteger failed) {
+        String domain = domains.poll();
+
+        if (domain == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> updated = session.changeDomain(domain)
+                .thenCompose(ignored -> session.getDNSRecords())
+                .thenCompose(records -> {
+                    CompletableFuture<List<DNSRecord>> last = CompletableFuture.completedFuture(records);
+
+                    for (UpdatePlan.Change change : UpdatePlan.create(domain, records, "A", null, ip).getChanges()) {
+                        last = last.thenCompose(ignored -> session.updateDNSRecord(change.getNewRecord()));
+                    }
+
+                    return last;
+                })
+                .handle((records, e) -> {
+                    if (e != null) {
+                        failed.incrementAndGet();
+                    } else {
+                        latencies.add((System.nanoTime() - start) / 1000000);
+                    }
+                    return null;
+                });
+
+        return updated.thenCompose(ignored -> updateNext(session, domains, ip, start, latencies, failed));
+    }
+
+    private static int drain(Queue<String> queue) {
+        int count = 0;
+        while (queue.poll() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+
+        return sorted.get(Math.max(0, index));
+    }
+}
@@ -0,0 +1,63 @@
+package nl.wetgos.starthosting;
+
+import nl.wetgos.starthosting.commands.dynamic.LeaseElection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StartHostingToolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shutdownReleasesLease() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("lease");
+        LeaseElection election = new LeaseElection(file, 1000);
+
+        CountDownLatch elected = new CountDownLatch(1);
+
+        // waits like the dynamic and daemon commands until it is interrupted
+        Thread command = new Thread(() -> {
+            try {
+                election.start(new LeaseElection.Listener() {
+                    @Override
+                    public void elected(boolean takeover) {
+                        elected.countDown();
+                    }
+
+                    @Override
+                    public void revoked() {
+                    }
+                });
+
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                // stop
+            } finally {
+                election.close();
+            }
+        }, "command");
+        command.start();
+
+        assertTrue(elected.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean closed = new AtomicBoolean();
+
+        StartHostingTool.createShutdownHook(command, () -> closed.set(!command.isAlive())).run();
+
+        assertFalse(command.isAlive());
+        assertTrue("closed after the command stopped", closed.get());
+        assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim().endsWith(" released"));
+    }
+}
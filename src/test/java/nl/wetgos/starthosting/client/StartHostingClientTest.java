@@ -0,0 +1,36 @@
+package nl.wetgos.starthosting.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StartHostingClientTest {
+
+    @Test
+    public void sameAddress() {
+        assertTrue(StartHostingClient.isSameContent("AAAA", "2001:db8::1", "2001:DB8:0:0:0:0:0:1"));
+        assertTrue(StartHostingClient.isSameContent("A", "192.0.2.1", " 192.0.2.1 "));
+        assertFalse(StartHostingClient.isSameContent("A", "192.0.2.1", "192.0.2.10"));
+        assertFalse(StartHostingClient.isSameContent("AAAA", "2001:db8::1", "2001:db8::2"));
+    }
+
+    @Test
+    public void sameText() {
+        assertTrue(StartHostingClient.isSameContent("TXT", "v=spf1 a mx -all", "\"v=spf1 a mx -all\""));
+        assertFalse(StartHostingClient.isSameContent("TXT", "v=spf1 a mx -all", "\"V=SPF1 A MX -ALL\""));
+    }
+
+    @Test
+    public void sameName() {
+        assertTrue(StartHostingClient.isSameContent("CNAME", "www.example.com.", "WWW.example.com"));
+        assertTrue(StartHostingClient.isSameContent("MX", "10 mail.example.com", "10 Mail.Example.com."));
+        assertFalse(StartHostingClient.isSameContent("CNAME", "www.example.com", "ftp.example.com"));
+    }
+
+    @Test
+    public void missingContent() {
+        assertTrue(StartHostingClient.isSameContent("A", null, null));
+        assertFalse(StartHostingClient.isSameContent("A", "192.0.2.1", null));
+    }
+}
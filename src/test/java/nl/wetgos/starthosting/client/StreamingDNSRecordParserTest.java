@@ -0,0 +1,111 @@
+package nl.wetgos.starthosting.client;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingDNSRecordParserTest {
+
+    private final DNSRecordParser streaming = new StreamingDNSRecordParser();
+    private final DNSRecordParser jsoup = new JsoupDNSRecordParser();
+
+    @Test
+    public void table() throws IOException {
+        List<DNSRecord> records = assertSameRecords("ffdns-table.html", "example.com");
+
+        assertEquals(12, records.size());
+        assertEquals(new DNSRecord("100000", "A", "", "192.0.2.1"), records.get(0));
+        assertEquals(new DNSRecord("100005", "TXT", "host5", "\"v=spf1 a mx -all\""), records.get(5));
+        assertEquals(new DNSRecord(null, "A", "host9", "192.0.2.10"), records.get(9));
+    }
+
+    @Test
+    public void paragraphs() throws IOException {
+        List<DNSRecord> records = assertSameRecords("ffdns-paragraphs.html", "example.com");
+
+        assertEquals(6, records.size());
+        assertEquals(new DNSRecord("200001", "A", "", "192.0.2.1"), records.get(0));
+        assertEquals(new DNSRecord("200002", "AAAA", "www", "2001:DB8::1"), records.get(1));
+        assertEquals(new DNSRecord("200006", "A", "list", "192.0.2.9"), records.get(5));
+    }
+
+    @Test
+    public void markup() throws IOException {
+        List<DNSRecord> records = assertSameRecords("ffdns-markup.html", "example.net");
+
+        assertEquals(4, records.size());
+        // only the own text of a cell counts, so the type in a span is lost by both parsers
+        assertEquals(new DNSRecord("300002", "", "host1", "198.51.100.2"), records.get(1));
+        assertEquals(new DNSRecord(null, "SRV", "_sip._tcp", "10 60 5060 sip.example.net weight 60"), records.get(3));
+    }
+
+    @Test
+    public void impliedParagraphEnd() throws IOException {
+        String page = "<div class=\"dnsrecord\"><p>A<p>www.example.org<p>60<p>192.0.2.7<p>"
+                + "<a href=\"?record=7\">edit</a></div>";
+
+        List<DNSRecord> records = assertSameRecords(page.getBytes(StandardCharsets.UTF_8), "example.org");
+
+        assertEquals(Arrays.asList(new DNSRecord("7", "A", "www", "192.0.2.7")), records);
+    }
+
+    @Test
+    public void rawTextInCell() throws IOException {
+        String page = "<table><tr class=\"dnsrecord\"><td>A</td><td><script>var a=1;</script>x.example.com</td>"
+                + "<td>60</td><td><textarea>1.2.3.4</textarea>q</td></tr></table>";
+
+        List<DNSRecord> records = assertSameRecords(page.getBytes(StandardCharsets.UTF_8), "example.com");
+
+        assertEquals(Arrays.asList(new DNSRecord(null, "A", "x", "q")), records);
+    }
+
+    @Test
+    public void impliedRowEnd() throws IOException {
+        String page = "<p class=\"dnsrecord\"><span>A</span><span>a.example.org</span><span>60</span>"
+                + "<span>192.0.2.1</span><p class=\"dnsrecord\"><span>A</span><span>b.example.org</span>"
+                + "<span>60</span><span>192.0.2.2</span>"
+                + "<ul><li class=\"dnsrecord\"><span>A</span><span>c.example.org</span><span>60</span>"
+                + "<span>192.0.2.3</span><li class=\"dnsrecord\"><span>A</span><span>d.example.org</span>"
+                + "<span>60</span><span>192.0.2.4</span></ul>";
+
+        List<DNSRecord> records = assertSameRecords(page.getBytes(StandardCharsets.UTF_8), "example.org");
+
+        assertEquals(Arrays.asList(
+                new DNSRecord(null, "A", "a", "192.0.2.1"),
+                new DNSRecord(null, "A", "b", "192.0.2.2"),
+                new DNSRecord(null, "A", "c", "192.0.2.3"),
+                new DNSRecord(null, "A", "d", "192.0.2.4")), records);
+    }
+
+    private List<DNSRecord> assertSameRecords(String resource, String domain) throws IOException {
+        return assertSameRecords(read(resource), domain);
+    }
+
+    private List<DNSRecord> assertSameRecords(byte[] page, String domain) throws IOException {
+        List<DNSRecord> expected = jsoup.parse(new ByteArrayInputStream(page), domain);
+
+        assertEquals(expected, streaming.parse(new ByteArrayInputStream(page), domain));
+
+        return expected;
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        try (InputStream in = StreamingDNSRecordParserTest.class.getResourceAsStream(resource)) {
+            byte[] buffer = new byte[64 * 1024];
+            int length = 0;
+
+            for (int read; (read = in.read(buffer, length, buffer.length - length)) > 0; ) {
+                length += read;
+            }
+
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+}
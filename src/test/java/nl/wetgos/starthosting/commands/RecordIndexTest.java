@@ -0,0 +1,48 @@
+package nl.wetgos.starthosting.commands;
+
+import nl.wetgos.starthosting.client.DNSRecord;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecordIndexTest {
+
+    private static final DNSRecord APEX = new DNSRecord("1", "A", "", "192.0.2.1");
+    private static final DNSRecord WWW = new DNSRecord("2", "A", "www", "192.0.2.1");
+    private static final DNSRecord WWW6 = new DNSRecord("3", "AAAA", "WWW", "2001:db8::1");
+    private static final DNSRecord WILDCARD = new DNSRecord("4", "A", "*", "192.0.2.1");
+    private static final DNSRecord HOST1 = new DNSRecord("5", "A", "host1", "192.0.2.5");
+    private static final DNSRecord HOST2 = new DNSRecord("6", "A", "host2", "192.0.2.6");
+    private static final DNSRecord TEXT = new DNSRecord(null, "TXT", "", "v=spf1 -all");
+
+    private final RecordIndex index = new RecordIndex(Arrays.asList(APEX, WWW, WWW6, WILDCARD, HOST1, HOST2, TEXT));
+
+    @Test
+    public void exact() {
+        assertEquals(Arrays.asList(WWW, WWW6), index.select(RecordSelector.exact(null, "www")));
+        assertEquals(Collections.singletonList(APEX), index.select(RecordSelector.exact("a", "@")));
+        assertEquals(Collections.singletonList(WILDCARD), index.select(RecordSelector.exact("A", "*")));
+        assertEquals(Collections.emptyList(), index.select(RecordSelector.exact("MX", null)));
+    }
+
+    @Test
+    public void compiled() {
+        assertEquals(Arrays.asList(APEX, WWW, WWW6), index.select(RecordSelector.compile("A,AAAA", "@,www")));
+        assertEquals(Collections.singletonList(WILDCARD), index.select(RecordSelector.compile(null, "*")));
+        assertEquals(Arrays.asList(HOST1, HOST2), index.select(RecordSelector.compile("A", "glob:host?")));
+        assertEquals(Arrays.asList(WWW, WWW6, HOST2), index.select(RecordSelector.compile(null, "www,/host[2-9]/")));
+    }
+
+    @Test
+    public void any() {
+        List<DNSRecord> all = Arrays.asList(APEX, WWW, WWW6, WILDCARD, HOST1, HOST2, TEXT);
+
+        assertEquals(all, index.select(RecordSelector.ALL));
+        assertEquals(all, index.select(RecordSelector.compile(null, "glob:*")));
+        assertEquals(Arrays.asList(APEX, TEXT), index.select(RecordSelector.compile(" ", "@")));
+    }
+}
@@ -0,0 +1,74 @@
+package nl.wetgos.starthosting.commands;
+
+import nl.wetgos.starthosting.client.DNSRecord;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordSelectorTest {
+
+    @Test
+    public void splitNames() {
+        assertEquals(Arrays.asList("@", "www", "glob:*.dev"), RecordSelector.splitNames(" @, www ,,glob:*.dev"));
+        assertEquals(Arrays.asList("/^host[0-9]{1,3}$/", "mail"), RecordSelector.splitNames("/^host[0-9]{1,3}$/,mail"));
+        assertEquals(Collections.singletonList("/a,b"), RecordSelector.splitNames("/a,b"));
+        assertEquals(Collections.emptyList(), RecordSelector.splitNames(" , "));
+    }
+
+    @Test
+    public void globToRegex() {
+        assertEquals(".*\\Q.dev\\E", RecordSelector.globToRegex("*.dev"));
+        assertEquals("\\Qhost\\E.", RecordSelector.globToRegex("host?"));
+        assertEquals("\\Qa.b\\E", RecordSelector.globToRegex("a.b"));
+        assertEquals(".*", RecordSelector.globToRegex("*"));
+    }
+
+    @Test
+    public void wildcardRecords() {
+        RecordSelector selector = RecordSelector.compile(null, "*,*.dev");
+
+        assertTrue(selector.matches(record("A", "*")));
+        assertTrue(selector.matches(record("A", "*.DEV")));
+        assertFalse(selector.matches(record("A", "www")));
+        assertFalse(selector.matches(record("A", "api.dev")));
+    }
+
+    @Test
+    public void globs() {
+        RecordSelector selector = RecordSelector.compile("a", "glob:*.dev,GLOB:host?");
+
+        assertTrue(selector.matches(record("A", "api.dev")));
+        assertTrue(selector.matches(record("A", "*.dev")));
+        assertTrue(selector.matches(record("A", "Host1")));
+        assertFalse(selector.matches(record("A", "host10")));
+        assertFalse(selector.matches(record("AAAA", "api.dev")));
+    }
+
+    @Test
+    public void regularExpressions() {
+        RecordSelector selector = RecordSelector.compile(null, "/^host[0-9]{1,2}$/,@");
+
+        assertTrue(selector.matches(record("TXT", "host12")));
+        assertTrue(selector.matches(record("A", "")));
+        assertFalse(selector.matches(record("A", "host123")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ambiguousGlob() {
+        RecordSelector.compile(null, "www,host*");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ambiguousWildcard() {
+        RecordSelector.compile(null, "*.*.dev");
+    }
+
+    private static DNSRecord record(String type, String name) {
+        return new DNSRecord("1", type, name, "192.0.2.1");
+    }
+}
@@ -0,0 +1,362 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DNSPublicIPAddressProviderTest {
+
+    private static final int TYPE_A = 1;
+    private static final int TYPE_CNAME = 5;
+    private static final int TYPE_TXT = 16;
+    private static final int TYPE_AAAA = 28;
+
+    private static final int RCODE_NXDOMAIN = 3;
+    private static final int FLAG_TRUNCATED = 0x0200;
+
+    private Responder responder;
+
+    @Before
+    public void start() throws IOException {
+        responder = new Responder();
+    }
+
+    @After
+    public void stop() throws IOException {
+        responder.close();
+    }
+
+    @Test
+    public void a() {
+        responder.answer(query -> Collections.singletonList(response(query, 0, record(TYPE_A, 192, 0, 2, 1))));
+
+        assertEquals("192.0.2.1", provider("type=A").getPublicIPAddress());
+    }
+
+    @Test
+    public void aaaa() {
+        byte[] address = new byte[16];
+        address[0] = 0x20;
+        address[1] = 0x01;
+        address[2] = 0x0d;
+        address[3] = (byte) 0xb8;
+        address[15] = 1;
+
+        // the CNAME before the address is skipped
+        responder.answer(query -> Collections.singletonList(response(query, 0,
+                record(TYPE_CNAME, 0xc0, 0x0c), record(TYPE_AAAA, address))));
+
+        assertEquals("2001:db8::1", provider("type=AAAA").getPublicIPAddress());
+    }
+
+    @Test
+    public void txt() {
+        byte[] text = "203.0.113.5".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[text.length + 1];
+        data[0] = (byte) text.length;
+        System.arraycopy(text, 0, data, 1, text.length);
+
+        responder.answer(query -> Collections.singletonList(response(query, 0, record(TYPE_TXT, data))));
+
+        assertEquals("203.0.113.5", provider("type=TXT").getPublicIPAddress());
+    }
+
+    @Test
+    public void mismatchedId() {
+        responder.answer(query -> {
+            byte[] stale = response(query, 0, record(TYPE_A, 198, 51, 100, 1));
+            stale[1]++;
+
+            return Arrays.asList(stale, response(query, 0, record(TYPE_A, 192, 0, 2, 1)));
+        });
+
+        assertEquals("192.0.2.1", provider("type=A").getPublicIPAddress());
+    }
+
+    @Test
+    public void retryAfterDrop() {
+        responder.answer(query -> Collections.emptyList());
+        responder.answer(query -> Collections.singletonList(response(query, 0, record(TYPE_A, 192, 0, 2, 1))));
+
+        assertEquals("192.0.2.1", provider("timeout=200&retries=1").getPublicIPAddress());
+        assertEquals(2, responder.queries.get());
+    }
+
+    @Test
+    public void timeout() {
+        responder.answer(query -> Collections.emptyList());
+
+        try {
+            provider("timeout=100&retries=1").getPublicIPAddress();
+            fail("Expected a timeout");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+
+        assertEquals(2, responder.queries.get());
+    }
+
+    @Test
+    public void nxdomain() {
+        responder.answer(query -> Collections.singletonList(response(query, RCODE_NXDOMAIN)));
+
+        try {
+            provider("type=A").getPublicIPAddress();
+            fail("Expected NXDOMAIN to be rejected");
+        } catch (IllegalStateException e) {
+            assertEquals("DNS response code 3 for myip.example", e.getMessage());
+        }
+    }
+
+    @Test
+    public void truncated() {
+        responder.answer(query -> Collections.singletonList(response(query, FLAG_TRUNCATED)));
+
+        try {
+            provider("type=A").getPublicIPAddress();
+            fail("Expected a truncated response to be rejected");
+        } catch (IllegalStateException e) {
+            assertEquals("DNS response is truncated", e.getMessage());
+        }
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        CountDownLatch received = new CountDownLatch(1);
+
+        responder.answer(query -> {
+            received.countDown();
+            return Collections.emptyList();
+        });
+
+        DNSPublicIPAddressProvider provider = provider("timeout=10000&retries=3");
+
+        Thread canceller = new Thread(() -> {
+            try {
+                if (received.await(5, TimeUnit.SECONDS)) {
+                    provider.cancel();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        canceller.start();
+
+        long start = System.nanoTime();
+
+        try {
+            provider.getPublicIPAddress();
+            fail("Expected the lookup to be cancelled");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        }
+
+        canceller.join();
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(1, responder.queries.get());
+    }
+
+    @Test
+    public void interrupt() throws InterruptedException {
+        CountDownLatch received = new CountDownLatch(1);
+
+        responder.answer(query -> {
+            received.countDown();
+            return Collections.emptyList();
+        });
+
+        DNSPublicIPAddressProvider provider = provider("timeout=10000&retries=3");
+        Thread lookup = Thread.currentThread();
+
+        Thread interrupter = new Thread(() -> {
+            try {
+                if (received.await(5, TimeUnit.SECONDS)) {
+                    lookup.interrupt();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        interrupter.start();
+
+        long start = System.nanoTime();
+
+        try {
+            provider.getPublicIPAddress();
+            fail("Expected the lookup to be cancelled");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        } finally {
+            interrupter.join();
+            Thread.interrupted();
+        }
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+        assertEquals(1, responder.queries.get());
+    }
+
+    @Test
+    public void interruptBeforeLookup() {
+        responder.answer(query -> Collections.singletonList(response(query, 0, record(TYPE_A, 192, 0, 2, 1))));
+
+        DNSPublicIPAddressProvider provider = provider("type=A");
+
+        Thread.currentThread().interrupt();
+
+        try {
+            provider.getPublicIPAddress();
+            fail("Expected the lookup to be cancelled");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(0, responder.queries.get());
+
+        // the next lookup is not affected
+        assertEquals("192.0.2.1", provider.getPublicIPAddress());
+    }
+
+    private DNSPublicIPAddressProvider provider(String parameters) {
+        return new DNSPublicIPAddressProvider("dns://127.0.0.1:" + responder.getPort() + "/myip.example?" + parameters);
+    }
+
+    /**
+     * Creates a response to a query with the given flags and answer records.
+     */
+    private static byte[] response(byte[] query, int flags, byte[]... answers) {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        // ID, flags, the question of the query and the answers
+        response.write(query[0]);
+        response.write(query[1]);
+        writeShort(response, 0x8180 | flags);
+        writeShort(response, 1);
+        writeShort(response, answers.length);
+        writeShort(response, 0);
+        writeShort(response, 0);
+        response.write(query, 12, query.length - 12);
+
+        for (byte[] answer : answers) {
+            response.write(answer, 0, answer.length);
+        }
+
+        return response.toByteArray();
+    }
+
+    private static byte[] record(int type, int... data) {
+        byte[] bytes = new byte[data.length];
+        for (int i = 0; i < data.length; i++) {
+            bytes[i] = (byte) data[i];
+        }
+        return record(type, bytes);
+    }
+
+    private static byte[] record(int type, byte[] data) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+        // name compressed to the question, type, class IN, TTL of 60 seconds and the data
+        writeShort(record, 0xc00c);
+        writeShort(record, type);
+        writeShort(record, 1);
+        writeShort(record, 0);
+        writeShort(record, 60);
+        writeShort(record, data.length);
+        record.write(data, 0, data.length);
+
+        return record.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    /**
+     * Resolver on an ephemeral port that answers each query with the next handler, the last one repeatedly.
+     */
+    private static class Responder {
+
+        private final DatagramChannel channel = DatagramChannel.open();
+        private final List<Handler> handlers = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger queries = new AtomicInteger();
+        private final Thread thread;
+
+        Responder() throws IOException {
+            channel.bind(new InetSocketAddress("127.0.0.1", 0));
+
+            thread = new Thread(this::run, "dns-responder");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void answer(Handler handler) {
+            handlers.add(handler);
+        }
+
+        int getPort() {
+            return ((InetSocketAddress) channel.socket().getLocalSocketAddress()).getPort();
+        }
+
+        private void run() {
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+
+            try {
+                while (true) {
+                    buffer.clear();
+                    SocketAddress client = channel.receive(buffer);
+                    buffer.flip();
+
+                    byte[] query = new byte[buffer.remaining()];
+                    buffer.get(query);
+
+                    int index = queries.getAndIncrement();
+                    Handler handler = handlers.get(Math.min(index, handlers.size() - 1));
+
+                    for (byte[] response : handler.handle(query)) {
+                        channel.send(ByteBuffer.wrap(response), client);
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                // stopped
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+
+        List<byte[]> handle(byte[] query);
+
+    }
+}
@@ -0,0 +1,219 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LeaseElectionTest {
+
+    private static final long TTL = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    private final List<LeaseElection> elections = new ArrayList<>();
+
+    @Before
+    public void createFile() {
+        file = folder.getRoot().toPath().resolve("lease");
+    }
+
+    @After
+    public void close() {
+        elections.forEach(LeaseElection::close);
+    }
+
+    @Test
+    public void acquireFreeLease() throws Exception {
+        Events a = new Events();
+        LeaseElection election = start("a", a);
+
+        assertEquals("elected false", a.next());
+        assertTrue(election.isLeader());
+        assertTrue(read().startsWith("a "));
+    }
+
+    @Test
+    public void takeoverAfterExpiry() throws Exception {
+        write("crashed 7");
+
+        Events b = new Events();
+        long start = System.nanoTime();
+        LeaseElection election = start("b", b);
+
+        assertEquals("elected true", b.next());
+        assertTrue(election.isLeader());
+
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("took over after " + waited + " ms", waited >= TTL && waited <= TTL * 5 / 4 + TTL);
+    }
+
+    @Test
+    public void followerWaitsForLeader() throws Exception {
+        Events a = new Events();
+        LeaseElection leader = start("a", a);
+        assertEquals("elected false", a.next());
+
+        Events b = new Events();
+        LeaseElection follower = start("b", b);
+
+        // the leader renews the lease, so the follower never takes over
+        assertNull(b.next(TTL * 3));
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+    }
+
+    @Test
+    public void stepDownOnForeignOwner() throws Exception {
+        Events a = new Events();
+        LeaseElection election = start("a", a);
+        assertEquals("elected false", a.next());
+
+        write("other 1");
+
+        assertEquals("revoked", a.next());
+        assertFalse(election.isLeader());
+
+        // the other owner does not renew, so the lease is taken over again after the time to live
+        assertEquals("elected true", a.next());
+    }
+
+    @Test
+    public void handoverAfterRelease() throws Exception {
+        // long enough to tell a handover from a takeover after expiry
+        long ttl = TTL * 5;
+
+        Events a = new Events();
+        LeaseElection leader = start("a", ttl, a);
+        assertEquals("elected false", a.next());
+
+        Events b = new Events();
+        LeaseElection follower = start("b", ttl, b);
+        assertNull(b.next(ttl / 2));
+
+        long start = System.nanoTime();
+        leader.close();
+
+        assertEquals("revoked", a.next());
+
+        // the released lease is free, so the follower does not wait for the time to live
+        assertEquals("elected true", b.next());
+        assertTrue(follower.isLeader());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < ttl / 2);
+    }
+
+    @Test
+    public void stuckLeaderIsNotLeader() throws Exception {
+        CountDownLatch stuck = new CountDownLatch(1);
+        Events a = new Events() {
+            @Override
+            public void elected(boolean takeover) {
+                super.elected(takeover);
+
+                // blocks the election thread, so the lease is not renewed
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        LeaseElection election = start("a", a);
+        assertEquals("elected false", a.next());
+
+        try {
+            Thread.sleep(TTL / 2 + TTL / 4);
+
+            assertFalse(election.isLeader());
+        } finally {
+            stuck.countDown();
+        }
+    }
+
+    private LeaseElection start(String owner, LeaseElection.Listener listener) {
+        return start(owner, TTL, listener);
+    }
+
+    private LeaseElection start(String owner, long ttl, LeaseElection.Listener listener) {
+        LeaseElection election = new LeaseElection(file, ttl, owner);
+        elections.add(election);
+
+        election.start(listener);
+
+        return election;
+    }
+
+    private String read() throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Writes the lease as another instance would, under the file lock.
+     */
+    private void write(String lease) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            while (true) {
+                try {
+                    if (channel.tryLock() != null) {
+                        break;
+                    }
+                } catch (OverlappingFileLockException e) {
+                    // held by an election of this test
+                }
+
+                Thread.sleep(1);
+            }
+
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap((lease + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private static class Events implements LeaseElection.Listener {
+
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void elected(boolean takeover) {
+            events.add("elected " + takeover);
+        }
+
+        @Override
+        public void revoked() {
+            events.add("revoked");
+        }
+
+        String next() throws InterruptedException {
+            return next(TTL * 3);
+        }
+
+        String next(long timeout) throws InterruptedException {
+            return events.poll(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+}
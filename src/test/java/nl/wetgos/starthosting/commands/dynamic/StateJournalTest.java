@@ -0,0 +1,174 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import nl.wetgos.starthosting.client.DNSRecord;
+import nl.wetgos.starthosting.commands.RecordSelector;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateJournalTest {
+
+    private static final RecordSelector SELECTOR = RecordSelector.compile("A", null);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("state.journal");
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            journal.setPublicIPAddress("uplink", "192.0.2.1");
+            journal.setPublicIPAddress("uplink", "192.0.2.2");
+            journal.setApplied("example.com", SELECTOR, Arrays.asList(
+                    new DNSRecord("1", "A", "", "192.0.2.2"),
+                    new DNSRecord("2", "A", "www", "192.0.2.2"),
+                    new DNSRecord(null, "A", "virtual", "192.0.2.9")));
+        }
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            assertEquals("192.0.2.2", journal.getPublicIPAddress("uplink"));
+            assertEquals(values("1", "192.0.2.2", "2", "192.0.2.2"), journal.getDomainState("example.com").getValues());
+            assertNull(journal.getDomainState("example.org"));
+        }
+    }
+
+    @Test
+    public void truncatedLastLine() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("state.journal");
+
+        Files.write(file, ("ip\t1\tuplink\t192.0.2.1\n"
+                + "bogus\n"
+                + "ip\t2\tuplink\t192.0.2.2").getBytes(StandardCharsets.UTF_8));
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            assertEquals("192.0.2.1", journal.getPublicIPAddress("uplink"));
+        }
+
+        // the journal was rewritten without the ignored lines
+        assertEquals(Collections.singletonList("ip\t1\tuplink\t192.0.2.1"), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void escaping() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("state.journal");
+        String value = "\"v=spf1\ta\\mx\r\n-all\"";
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            journal.setPublicIPAddress("http://a/\tip", "2001:db8::1");
+            journal.setApplied("example.com", SELECTOR,
+                    Collections.singletonList(new DNSRecord("1\t2", "TXT", "", value)));
+        }
+
+        assertEquals(2, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            assertEquals("2001:db8::1", journal.getPublicIPAddress("http://a/\tip"));
+            assertEquals(values("1\t2", value), journal.getDomainState("example.com").getValues());
+        }
+    }
+
+    @Test
+    public void compaction() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("state.journal");
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            for (int i = 0; i < 1500; i++) {
+                journal.setPublicIPAddress("uplink", "192.0.2." + (i % 2));
+            }
+
+            assertTrue(Files.readAllLines(file, StandardCharsets.UTF_8).size() < 1000);
+        }
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            assertEquals("192.0.2.1", journal.getPublicIPAddress("uplink"));
+            assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        }
+    }
+
+    @Test
+    public void upToDate() throws IOException {
+        try (StateJournal journal = StateJournal.open(folder.getRoot().toPath().resolve("state.journal"))) {
+            StateJournal account = journal.scope("account1");
+
+            assertFalse(account.isUpToDate("example.com", SELECTOR, "192.0.2.1"));
+
+            account.setApplied("example.com", SELECTOR, Arrays.asList(
+                    new DNSRecord("1", "A", "", "192.0.2.1"),
+                    new DNSRecord("2", "A", "www", "192.0.2.1")));
+
+            assertTrue(account.isUpToDate("example.com", SELECTOR, "192.0.2.1"));
+            assertFalse(account.isUpToDate("example.com", SELECTOR, "192.0.2.2"));
+            assertFalse(journal.scope("account2").isUpToDate("example.com", SELECTOR, "192.0.2.1"));
+
+            account.setApplied("example.com", SELECTOR, Arrays.asList(
+                    new DNSRecord("1", "A", "", "192.0.2.1"),
+                    new DNSRecord("2", "A", "www", "192.0.2.3")));
+
+            assertFalse(account.isUpToDate("example.com", SELECTOR, "192.0.2.1"));
+
+            account.setApplied("example.com", SELECTOR, Collections.<DNSRecord>emptyList());
+
+            assertFalse(account.isUpToDate("example.com", SELECTOR, "192.0.2.1"));
+
+            journal.forget();
+
+            assertNull(account.getDomainState("example.com"));
+        }
+    }
+
+    @Test
+    public void selectorChanged() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("state.journal");
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            journal.setApplied("example.com", SELECTOR, Arrays.asList(
+                    new DNSRecord("1", "A", "", "192.0.2.1"),
+                    new DNSRecord("2", "A", "www", "192.0.2.1")));
+        }
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            assertTrue(journal.isUpToDate("example.com", RecordSelector.compile("A", null), "192.0.2.1"));
+            // a selector that chooses other records may find records that were never updated
+            assertFalse(journal.isUpToDate("example.com", RecordSelector.compile("A", "www"), "192.0.2.1"));
+            assertFalse(journal.isUpToDate("example.com", RecordSelector.ALL, "192.0.2.1"));
+        }
+    }
+
+    @Test
+    public void withoutSelector() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("state.journal");
+
+        Files.write(file, "domain\t1\texample.com\t1\t192.0.2.1\n".getBytes(StandardCharsets.UTF_8));
+
+        try (StateJournal journal = StateJournal.open(file)) {
+            assertEquals(values("1", "192.0.2.1"), journal.getDomainState("example.com").getValues());
+            assertNull(journal.getDomainState("example.com").getSelector());
+            assertFalse(journal.isUpToDate("example.com", SELECTOR, "192.0.2.1"));
+        }
+    }
+
+    private static Map<String, String> values(String... idsAndValues) {
+        Map<String, String> values = new LinkedHashMap<>();
+
+        for (int i = 0; i < idsAndValues.length; i += 2) {
+            values.put(idsAndValues[i], idsAndValues[i + 1]);
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,54 @@
+package nl.wetgos.starthosting.commands.dynamic;
+
+import nl.wetgos.starthosting.http.HttpTransport;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class URLPublicIPAddressProviderTest {
+
+    private final HttpTransport transport = new HttpTransport();
+    private final URLPublicIPAddressProvider provider = new URLPublicIPAddressProvider("http://localhost/", transport);
+
+    @After
+    public void close() {
+        transport.close();
+    }
+
+    @Test
+    public void canonicalAddress() throws IOException {
+        assertEquals("192.0.2.1", read(" 192.0.2.1\r\n"));
+        assertEquals("2001:db8::1", read("2001:DB8:0:0:0:0:0:1\n"));
+
+        String address = read("2001:db8::1");
+        assertSame(address, read("2001:0db8::0001\n"));
+    }
+
+    @Test
+    public void highBytesAreNotWhitespace() throws IOException {
+        byte[] response = {(byte) 0xa0, '1', '9', '2', '.', '0', '.', '2', '.', '1', (byte) 0x85};
+
+        try {
+            provider.read(new ByteArrayInputStream(response));
+            fail("Expected the response to be rejected");
+        } catch (IllegalStateException e) {
+            assertEquals("Response is not an IP address", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void html() throws IOException {
+        read("<html><body>Service Unavailable</body></html>");
+    }
+
+    private String read(String response) throws IOException {
+        return provider.read(new ByteArrayInputStream(response.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,45 @@
+package nl.wetgos.starthosting.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationMetricsTest {
+
+    @Test
+    public void percentiles() {
+        OperationMetrics metrics = new OperationMetrics("test", null);
+
+        for (int i = 0; i < 99; i++) {
+            record(metrics, 7);
+        }
+        record(metrics, 700);
+
+        assertEquals(10, metrics.getP50Millis());
+        assertEquals(10, metrics.getP99Millis());
+        assertEquals(99, metrics.getCumulativeCount(1));
+    }
+
+    @Test
+    public void overflow() {
+        OperationMetrics metrics = new OperationMetrics("test", null);
+
+        record(metrics, 1);
+        record(metrics, 45000);
+
+        long max = metrics.getMaxMillis();
+
+        assertTrue(max >= 45000);
+        assertEquals(5, metrics.getP50Millis());
+        assertEquals(max, metrics.getP99Millis());
+        assertEquals(1, metrics.getCumulativeCount(OperationMetrics.BUCKETS.length - 1));
+        assertEquals(2, metrics.getCumulativeCount(OperationMetrics.BUCKETS.length));
+    }
+
+    private static void record(OperationMetrics metrics, long millis) {
+        metrics.record(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis), true);
+    }
+}